@@ -0,0 +1,109 @@
+package org.reactome.server.tools.indexer;
+
+import com.martiansoftware.jsap.*;
+import org.apache.solr.client.solrj.SolrClient;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.util.DeadLetterFile;
+import org.reactome.server.tools.indexer.util.DumpLoader;
+import org.reactome.server.tools.indexer.util.SolrBatchSender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.reactome.server.tools.indexer.util.SolrUtility.closeSolrServer;
+import static org.reactome.server.tools.indexer.util.SolrUtility.getConcurrentSolrClient;
+import static org.reactome.server.tools.indexer.util.SolrUtility.getSolrClient;
+
+/**
+ * Loads the documents dumped by the indexer (Main --dump) into SolR, without the graph database.
+ * Every collection in the dump is loaded by its own thread.
+ */
+public class DumpLoaderMain {
+    private static final String DEF_SOLR_URL = "http://localhost:8983/solr/";
+    private static final String DEF_DEAD_LETTER = "loader.deadletter.ndjson";
+
+    public static void main(String[] args) throws JSAPException {
+        SimpleJSAP jsap = new SimpleJSAP(DumpLoaderMain.class.getName(), "Loads the documents dumped by the indexer into Solr.",
+                new Parameter[]{
+                        new FlaggedOption("dump", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.NO_SHORTFLAG, "dump", "Directory written by the indexer with --dump"),
+                        new FlaggedOption("solrUrl", JSAP.STRING_PARSER, DEF_SOLR_URL, JSAP.REQUIRED, 'e', "solrUrl", "Url of the running Solr server"),
+                        new FlaggedOption("solrUser", JSAP.STRING_PARSER, "admin", JSAP.NOT_REQUIRED, 'f', "solrUser", "The Solr user"),
+                        new FlaggedOption("solrPw", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, 'g', "solrPw", "The Solr password"),
+                        new FlaggedOption("collections", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "collections", "Loads the dumped collections into other ones, e.g. reactome=reactome_test,target=target_test"),
+                        new FlaggedOption("batchSize", JSAP.INTEGER_PARSER, String.valueOf(DumpLoader.DEFAULT_BATCH_SIZE), JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "batchSize", "Documents sent to Solr per request"),
+                        new FlaggedOption("solrThreads", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "solrThreads", "Threads sending updates to Solr in the background. 0 sends them synchronously"),
+                        new FlaggedOption("solrQueueSize", JSAP.INTEGER_PARSER, "10", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "solrQueueSize", "Update requests waiting to be sent to Solr (with solrThreads)"),
+                        new FlaggedOption("deadLetter", JSAP.STRING_PARSER, DEF_DEAD_LETTER, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "deadLetter", "NDJSON file where the documents rejected by Solr are written"),
+                }
+        );
+
+        JSAPResult config = jsap.parse(args);
+        if (jsap.messagePrinted()) System.exit(1);
+
+        Path dump = Paths.get(config.getString("dump"));
+        Map<String, String> renames = new HashMap<>();
+        String collections = config.getString("collections");
+        if (collections != null) {
+            for (String rename : collections.split(",")) {
+                String[] parts = rename.split("=", 2);
+                if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                    System.err.println("Invalid collection mapping '" + rename + "', use <dumped>=<collection>");
+                    System.exit(1);
+                }
+                renames.put(parts[0].trim(), parts[1].trim());
+            }
+        }
+
+        int solrThreads = config.getInt("solrThreads");
+        SolrClient solrClient = solrThreads > 0 ?
+                getConcurrentSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"), config.getInt("solrQueueSize"), solrThreads) :
+                getSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"));
+        DeadLetterFile deadLetterFile = new DeadLetterFile(Paths.get(config.getString("deadLetter")));
+        SolrBatchSender batchSender = new SolrBatchSender(deadLetterFile);
+        DumpLoader loader = new DumpLoader(solrClient, batchSender, config.getInt("batchSize"));
+
+        boolean ok = true;
+        ExecutorService executor = null;
+        try {
+            List<String> dumped = DumpLoader.getCollections(dump);
+            if (dumped.isEmpty()) throw new IndexerException("Nothing to load in " + dump);
+            executor = Executors.newFixedThreadPool(dumped.size());
+            Map<String, Future<Long>> loads = new LinkedHashMap<>();
+            for (String collection : dumped) {
+                String target = renames.getOrDefault(collection, collection);
+                loads.put(target, executor.submit(() -> loader.load(dump, collection, target)));
+            }
+            for (Map.Entry<String, Future<Long>> load : loads.entrySet()) {
+                try {
+                    System.out.println("[" + load.getKey() + "] " + load.getValue().get() + " documents loaded");
+                } catch (ExecutionException e) {
+                    System.err.println("[" + load.getKey() + "] Could not be loaded: " + e.getCause().getMessage());
+                    ok = false;
+                }
+            }
+            batchSender.report();
+            if (batchSender.getRejected() > 0) {
+                System.err.println(batchSender.getRejected() + " documents were rejected, see " + deadLetterFile.getPath());
+                ok = false;
+            }
+        } catch (IndexerException e) {
+            System.err.println(e.getMessage());
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        } finally {
+            if (executor != null) executor.shutdownNow();
+            try {
+                deadLetterFile.close();
+            } catch (IOException e) {
+                System.err.println("Could not close " + deadLetterFile.getPath() + ": " + e.getMessage());
+            }
+            closeSolrServer(solrClient);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -2,6 +2,7 @@ package org.reactome.server.tools.indexer;
 
 import com.martiansoftware.jsap.*;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
 import org.reactome.server.graph.service.DatabaseObjectService;
 import org.reactome.server.graph.service.GeneralService;
 import org.reactome.server.graph.service.SchemaService;
@@ -13,15 +14,37 @@ import org.reactome.server.tools.indexer.icon.exporter.IconsExporter;
 import org.reactome.server.tools.indexer.icon.impl.IconIndexer;
 import org.reactome.server.tools.indexer.impl.Indexer;
 import org.reactome.server.tools.indexer.target.impl.TargetIndexer;
+import org.reactome.server.tools.indexer.util.BlueGreenDeployment;
+import org.reactome.server.tools.indexer.util.CommitPolicy;
+import org.reactome.server.tools.indexer.util.DeadLetterFile;
+import org.reactome.server.tools.indexer.util.DocumentFingerprints;
+import org.reactome.server.tools.indexer.util.DumpSolrClient;
 import org.reactome.server.tools.indexer.util.MailUtil;
+import org.reactome.server.tools.indexer.util.Neo4jCachePolicy;
+import org.reactome.server.tools.indexer.util.OfflineSolrClient;
 import org.reactome.server.tools.indexer.util.SiteMapUtil;
+import org.reactome.server.tools.indexer.util.SolrBatchSender;
+import org.reactome.server.tools.indexer.util.StageScheduler;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.reactome.server.tools.indexer.util.SolrUtility.closeSolrServer;
+import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
+import static org.reactome.server.tools.indexer.util.SolrUtility.getCloudSolrClient;
+import static org.reactome.server.tools.indexer.util.SolrUtility.getConcurrentSolrClient;
+import static org.reactome.server.tools.indexer.util.SolrUtility.getShardLeaderSolrClient;
 import static org.reactome.server.tools.indexer.util.SolrUtility.getSolrClient;
 
 /**
@@ -34,6 +57,13 @@ public class Main {
     private static final String DEF_MAIL_SMTP = "smtp.oicr.on.ca";
     private static final String DEF_SOLR_URL = "http://localhost:8983/solr/";
     private static final String DEF_SOLR_COLLECTION = "reactome";
+    private static final String DEF_THREADS = "4";
+    private static final String DEF_GRACE_PERIOD = "300";
+    private static final String DEF_CHECKPOINT = "indexer.checkpoint";
+    private static final String DEF_SOLR_QUEUE_SIZE = "10";
+    private static final String DEF_SOLR_CONF = "solr-conf/reactome";
+    private static final String DEF_DEAD_LETTER = "indexer.deadletter.ndjson";
+    private static final int REPLAY_BATCH_SIZE = 1000;
     private static final String MAIL_SUBJECT_SUCCESS = "[Search Indexer] The Solr indexer has been created";
     private static final String MAIL_SUBJECT_ERROR = "[SearchIndexer] The Solr indexer has thrown exception";
 
@@ -57,11 +87,32 @@ public class Main {
                         new FlaggedOption("mailDest", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'k', "mailDest", "Mail Destination"),
                         new FlaggedOption("ebeyexml", JSAP.BOOLEAN_PARSER, "true", JSAP.NOT_REQUIRED, 'l', "ebeyexml", "XML output file for the EBeye."),
                         new FlaggedOption("ebeyecovidxml", JSAP.BOOLEAN_PARSER, "true", JSAP.NOT_REQUIRED, 'm', "ebeyecovidxml", "XML output file for the EBeye COVID19 Portal."),
+                        new FlaggedOption("ebeyeGzip", JSAP.BOOLEAN_PARSER, "false", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "ebeyeGzip", "Compresses the EBeye XML files on the fly (ebeye.xml.gz and ebeyecovid.xml.gz)"),
                         new FlaggedOption("sitemap", JSAP.BOOLEAN_PARSER, "true", JSAP.NOT_REQUIRED, 'n', "sitemap", "Generates sitemap."),
                         new FlaggedOption("target", JSAP.BOOLEAN_PARSER, "true", JSAP.NOT_REQUIRED, 'p', "target", "Generates Swissprot-based target Solr core."),
                         new FlaggedOption("iconsDir", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'q', "iconsDir", "The directory where all ICONS (R-ICO-*) reside"),
                         new FlaggedOption("ehldDir", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'r', "ehldDir", "The directory where all EHLDs reside"),
                         new FlaggedOption("deleted", JSAP.BOOLEAN_PARSER, "true", JSAP.NOT_REQUIRED, 's', "deleted", "Generates Deleted id replacement."),
+                        new FlaggedOption("threads", JSAP.INTEGER_PARSER, DEF_THREADS, JSAP.NOT_REQUIRED, 't', "threads", "Number of threads building the Solr documents"),
+                        new FlaggedOption("commitPolicy", JSAP.STRING_PARSER, CommitPolicy.DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "commitPolicy", "When documents are committed: end, batch, within:<ms>, soft:<seconds>, hard:<documents> or hard:<seconds>s"),
+                        new FlaggedOption("cachePolicy", JSAP.STRING_PARSER, Neo4jCachePolicy.DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "cachePolicy", "When the graph database cache is cleared: heap:<percent> once the old generation stays above it after a GC, or fixed:<documents> (and after every stage)"),
+                        new FlaggedOption("fingerprints", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fingerprints", "File keeping the document fingerprints between runs. When given, only new or changed documents are indexed and the ones not present anymore are deleted"),
+                        new FlaggedOption("blueGreen", JSAP.BOOLEAN_PARSER, "false", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "blueGreen", "Builds into a new timestamped collection and points the solrCollection alias to it once validated (SolrCloud only)"),
+                        new FlaggedOption("configSet", JSAP.STRING_PARSER, DEF_SOLR_COLLECTION, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "configSet", "ConfigSet of the collection created in a blue/green build"),
+                        new FlaggedOption("gracePeriod", JSAP.LONG_PARSER, DEF_GRACE_PERIOD, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "gracePeriod", "Seconds before the previous collection is deleted in a blue/green build. Negative to keep it"),
+                        new FlaggedOption("checkpoint", JSAP.STRING_PARSER, DEF_CHECKPOINT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "checkpoint", "File where the progress is saved after every batch sent to Solr"),
+                        new FlaggedOption("solrThreads", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "solrThreads", "Threads sending updates to Solr in the background while documents are built, a document rejected by Solr then fails the run instead of being written to the dead-letter file. 0 sends them synchronously"),
+                        new FlaggedOption("solrQueueSize", JSAP.INTEGER_PARSER, DEF_SOLR_QUEUE_SIZE, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "solrQueueSize", "Update requests waiting to be sent to Solr before indexing blocks (with solrThreads)"),
+                        new FlaggedOption("deadLetter", JSAP.STRING_PARSER, DEF_DEAD_LETTER, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "deadLetter", "NDJSON file where the documents rejected by Solr are written"),
+                        new FlaggedOption("replay", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "replay", "Sends the documents of a dead-letter file to Solr again and exits. The ones still rejected are written to <file>.failed"),
+                        new FlaggedOption("dump", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "dump", "Writes the documents to this directory instead of sending them to Solr, to be loaded later by DumpLoaderMain"),
+                        new FlaggedOption("dumpChunkSize", JSAP.INTEGER_PARSER, String.valueOf(DumpSolrClient.DEFAULT_CHUNK_SIZE), JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "dumpChunkSize", "Updates per dump file"),
+                        new FlaggedOption("offline", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "offline", "Builds the solrCollection core in this directory with an embedded Solr instead of sending the documents to the Solr server"),
+                        new FlaggedOption("offlinePartitions", JSAP.INTEGER_PARSER, DEF_THREADS, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "offlinePartitions", "Partitions indexed in parallel and merged at the end (with offline)"),
+                        new FlaggedOption("solrConf", JSAP.STRING_PARSER, DEF_SOLR_CONF, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "solrConf", "Directory with the schema and solrconfig of the core built offline"),
+                        new FlaggedOption("zkHost", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "zkHost", "ZooKeeper ensemble of the SolrCloud cluster, e.g. zk1:2181,zk2:2181/solr. Implies solrCloud"),
+                        new Switch("solrCloud", JSAP.NO_SHORTFLAG, "solrCloud", "Reads the SolrCloud cluster state (from zkHost or solrUrl) and sends the updates straight to the shard leaders, queued per leader with solrThreads"),
+                        new Switch("resume", JSAP.NO_SHORTFLAG, "resume", "Carries on from the checkpoint of a previous run that did not finish, without cleaning the collection"),
                 }
         );
 
@@ -69,7 +120,31 @@ public class Main {
         if (jsap.messagePrinted()) System.exit(1);
 
         //  Reactome Solr properties for solr connection ** Collection (core) has to be passed
-        SolrClient solrClient = getSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"));
+        String dump = config.getString("dump");
+        String offline = config.getString("offline");
+        if (dump != null && offline != null) {
+            System.err.println("The documents are either dumped or indexed offline, not both");
+            System.exit(1);
+        }
+        if ((dump != null || offline != null) && (config.getBoolean("solrCloud") || config.getString("zkHost") != null)) {
+            System.err.println("Dumped or offline builds do not send the documents to Solr, they cannot be combined with solrCloud or zkHost");
+            System.exit(1);
+        }
+        if (offline != null && (config.getBoolean("resume") || config.getBoolean("blueGreen") || config.getString("fingerprints") != null || config.getString("replay") != null)) {
+            System.err.println("An offline build starts from an empty core, it cannot be combined with resume, blueGreen, fingerprints or replay");
+            System.exit(1);
+        }
+        if (config.getInt("solrThreads") > 0 && (config.userSpecified("deadLetter") || config.getString("replay") != null)) {
+            System.err.println("Updates sent in the background (solrThreads) are neither retried nor written to a dead-letter file, they cannot be combined with deadLetter or replay");
+            System.exit(1);
+        }
+        SolrClient solrClient = createSolrClient(config);
+        String replay = config.getString("replay");
+        if (replay != null) {
+            boolean replayed = replayDeadLetters(solrClient, Paths.get(replay));
+            closeSolrServer(solrClient);
+            System.exit(replayed ? 0 : 1);
+        }
         ReactomeGraphCore.initialise(config.getString("neo4jHost") + ":" + config.getString("neo4jPort"), config.getString("neo4jUser"), config.getString("neo4jPw"), config.getString("neo4jName"), IndexerNeo4jConfig.class);
 
         String solrCollection = config.getString("solrCollection"); // for reactome normal search
@@ -80,29 +155,96 @@ public class Main {
         boolean siteMap = config.getBoolean("sitemap");
         boolean ebeyexml = config.getBoolean("ebeyexml");
         boolean ebeyecovidxml = config.getBoolean("ebeyecovidxml");
-        boolean target = config.getBoolean("target");
+        boolean ebeyeGzip = config.getBoolean("ebeyeGzip");
+        boolean remote = dump == null && offline == null;
+        boolean target = remote && config.getBoolean("target");
         boolean deleted = config.getBoolean("deleted");
         String iconsDir = config.getString("iconsDir");
         String ehldDir = config.getString("ehldDir");
+        boolean icons = remote && iconsDir != null && ehldDir != null;
+        int threads = config.getInt("threads");
+        String commitPolicy = config.getString("commitPolicy");
+        String fingerprints = config.getString("fingerprints");
+        boolean blueGreen = config.getBoolean("blueGreen");
+        boolean resume = config.getBoolean("resume");
+        Neo4jCachePolicy cachePolicy;
+        try {
+            CommitPolicy.parse(commitPolicy);
+            cachePolicy = Neo4jCachePolicy.parse(config.getString("cachePolicy"));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (blueGreen && resume) {
+            System.err.println("A blue/green build creates a new collection, it cannot resume a previous run");
+            System.exit(1);
+        }
+        if (blueGreen && fingerprints != null) {
+            System.err.println("A blue/green build starts from an empty collection, it cannot be combined with fingerprints");
+            System.exit(1);
+        }
+        if (blueGreen && dump != null) {
+            System.err.println("A blue/green build needs Solr, it cannot be dumped");
+            System.exit(1);
+        }
+        if (!remote && (config.getBoolean("target") || (iconsDir != null && ehldDir != null))) {
+            // Both look up the documents already indexed in Solr
+            System.out.println("Targets and icons are only indexed in a Solr server, run TargetMain and IconsMain once the documents are there");
+        }
+
 
+        DeadLetterFile deadLetterFile = new DeadLetterFile(Paths.get(config.getString("deadLetter")));
+        SolrBatchSender batchSender = new SolrBatchSender(deadLetterFile);
 
+        BlueGreenDeployment deployment = null;
         try {
+            if (blueGreen) {
+                deployment = new BlueGreenDeployment(solrClient, solrCollection, config.getString("configSet"), config.getLong("gracePeriod"));
+                solrCollection = deployment.createCollection();
+            }
+            final String collection = solrCollection;
+
             Indexer indexer = ReactomeGraphCore.getService(Indexer.class);
             indexer.setSolrClient(solrClient);
-            indexer.setSolrCollection(solrCollection);
+            indexer.setSolrCollection(collection);
             indexer.setEbeyeXml(ebeyexml);
             indexer.setEbeyeCovidXml(ebeyecovidxml);
+            indexer.setEbeyeGzip(ebeyeGzip);
+            indexer.setBuilderThreads(threads);
+            indexer.setCommitPolicy(CommitPolicy.parse(commitPolicy));
+            indexer.setBatchSender(batchSender);
+            indexer.setCachePolicy(cachePolicy);
+            indexer.setCheckpointFile(new File(config.getString("checkpoint")));
+            indexer.setResume(resume);
+            if (fingerprints != null) indexer.setFingerprints(DocumentFingerprints.load(Paths.get(fingerprints)));
 
-            int entriesCount = indexer.index();
-
-            if (iconsDir != null && ehldDir != null) {
-                entriesCount += doIconIndexer(solrClient, solrCollection, iconsDir, ehldDir);
-                doIconsMappingFiles(solrClient, solrCollection);
+            // The indexer cleans the collection, everything else writing into it has to wait for it
+            AtomicInteger entries = new AtomicInteger();
+            StageScheduler scheduler = new StageScheduler();
+            scheduler.add("index", () -> entries.addAndGet(indexer.index()));
+            if (icons) {
+                scheduler.add("icons", () -> entries.addAndGet(doIconIndexer(solrClient, collection, iconsDir, ehldDir, commitPolicy, batchSender)), "index");
+                scheduler.add("iconsMapping", () -> doIconsMappingFiles(solrClient, collection), "icons");
             }
+            if (target) scheduler.add("target", () -> doTargetIndexer(solrClient, collection, commitPolicy, batchSender), "index");
+            if (deleted) scheduler.add("deleted", () -> doDeletedIndexing(solrClient, collection, commitPolicy, batchSender, cachePolicy), "index");
+            if (siteMap) scheduler.add("sitemap", Main::generateSitemap);
 
-            if (target) doTargetIndexer(solrClient, solrCollection);
-            if (deleted) doDeletedIndexing(solrClient, solrCollection);
-            if (siteMap) generateSitemap();
+            AtomicReference<String> previousCollection = new AtomicReference<>();
+            if (deployment != null) {
+                BlueGreenDeployment blueGreenDeployment = deployment;
+                String[] writers = Stream.of("index", "icons", "deleted").filter(scheduler::contains).toArray(String[]::new);
+                scheduler.add("swap", () -> {
+                    blueGreenDeployment.validate();
+                    previousCollection.set(blueGreenDeployment.swap());
+                }, writers);
+            }
+            scheduler.run();
+            if (solrClient instanceof OfflineSolrClient) ((OfflineSolrClient) solrClient).merge();
+            int entriesCount = entries.get();
+            batchSender.report();
+            cachePolicy.report();
 
             if (sendmail) {
                 MailUtil mailUtil = MailUtil.getInstance(smtpServer, smtpPort);
@@ -114,6 +256,8 @@ public class Main {
                 // Send an notification by the end of indexing.
                 mailUtil.send(FROM, mailDest.get(), MAIL_SUBJECT_SUCCESS, "The Solr Indexer has written successfully " + entriesCount + " documents within: " + hour + "hour(s) " + minutes + "minute(s) " + seconds + "second(s) ");
             }
+
+            if (deployment != null) deployment.retire(previousCollection.get());
         } catch (IndexerException e) {
             if (sendmail) {
                 MailUtil mailUtil = MailUtil.getInstance(smtpServer, smtpPort);
@@ -134,25 +278,63 @@ public class Main {
                 mailUtil.send(FROM, mailDest.get(), MAIL_SUBJECT_ERROR, body.toString());
             }
         } finally {
+            // A new collection that never made it behind the alias would be left orphaned
+            if (deployment != null) deployment.discard();
+            cachePolicy.close();
+            closeDeadLetterFile(deadLetterFile);
             closeSolrServer(solrClient);
             System.exit(0);
         }
     }
 
+    /**
+     * @return a client writing to the dump directory or building the core offline if requested, otherwise to the
+     * Solr server, or straight to the shard leaders in cloud mode
+     */
+    private static SolrClient createSolrClient(JSAPResult config) {
+        String dump = config.getString("dump");
+        String offline = config.getString("offline");
+        try {
+            if (dump != null) {
+                return new DumpSolrClient(Paths.get(dump), config.getInt("dumpChunkSize"), config.getBoolean("resume"));
+            }
+            if (offline != null) {
+                return new OfflineSolrClient(Paths.get(config.getString("solrConf")), Paths.get(offline), config.getString("solrCollection"), config.getInt("offlinePartitions"));
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        int solrThreads = config.getInt("solrThreads");
+        String zkHost = config.getString("zkHost");
+        if (config.getBoolean("solrCloud") || zkHost != null) {
+            return solrThreads > 0 ?
+                    getShardLeaderSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"), zkHost, config.getInt("solrQueueSize"), solrThreads) :
+                    getCloudSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"), zkHost);
+        }
+        return solrThreads > 0 ?
+                getConcurrentSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"), config.getInt("solrQueueSize"), solrThreads) :
+                getSolrClient(config.getString("solrUser"), config.getString("solrPw"), config.getString("solrUrl"));
+    }
+
     private static void generateSitemap() {
         SiteMapUtil smg = new SiteMapUtil(".");
         smg.generate();
     }
 
-    private static void doTargetIndexer(SolrClient solrClient, String solrCollection) throws IndexerException {
+    private static void doTargetIndexer(SolrClient solrClient, String solrCollection, String commitPolicy, SolrBatchSender batchSender) throws IndexerException {
         TargetIndexer targetIndexer = new TargetIndexer(solrClient, solrCollection);
+        targetIndexer.setCommitPolicy(CommitPolicy.parse(commitPolicy));
+        targetIndexer.setBatchSender(batchSender);
         targetIndexer.index();
     }
 
-    private static Integer doIconIndexer(SolrClient solrClient, String solrCollection, String iconsLib, String ehldDir) throws IndexerException {
+    private static Integer doIconIndexer(SolrClient solrClient, String solrCollection, String iconsLib, String ehldDir, String commitPolicy, SolrBatchSender batchSender) throws IndexerException {
         IconIndexer iconIndexer = ReactomeGraphCore.getService(IconIndexer.class);
         iconIndexer.setSolrClient(solrClient);
         iconIndexer.setSolrCollection(solrCollection);
+        iconIndexer.setCommitPolicy(CommitPolicy.parse(commitPolicy));
+        iconIndexer.setBatchSender(batchSender);
         iconIndexer.setIconsDir(iconsLib);
         iconIndexer.setEhldsDir(ehldDir);
         return iconIndexer.index();
@@ -163,10 +345,54 @@ public class Main {
         tsvWriter.write(".");
     }
 
-    private static Integer doDeletedIndexing(SolrClient solrClient, String solrCollection) throws IndexerException {
+    private static Integer doDeletedIndexing(SolrClient solrClient, String solrCollection, String commitPolicy, SolrBatchSender batchSender, Neo4jCachePolicy cachePolicy) throws IndexerException {
         DeletedIndexer indexer = ReactomeGraphCore.getService(DeletedIndexer.class);
         indexer.setSolrClient(solrClient);
         indexer.setSolrCollection(solrCollection);
+        indexer.setCommitPolicy(CommitPolicy.parse(commitPolicy));
+        indexer.setBatchSender(batchSender);
+        indexer.setCachePolicy(cachePolicy);
         return indexer.index();
     }
+
+    /**
+     * Sends the documents in a dead-letter file again, committing every collection afterwards
+     *
+     * @return true if all of them were added
+     */
+    private static boolean replayDeadLetters(SolrClient solrClient, Path file) {
+        Path failed = file.resolveSibling(file.getFileName() + ".failed");
+        DeadLetterFile deadLetterFile = new DeadLetterFile(failed);
+        SolrBatchSender batchSender = new SolrBatchSender(deadLetterFile);
+        try {
+            Map<String, List<SolrInputDocument>> documents = DeadLetterFile.read(file);
+            for (Map.Entry<String, List<SolrInputDocument>> entry : documents.entrySet()) {
+                List<SolrInputDocument> collectionDocuments = entry.getValue();
+                for (int i = 0; i < collectionDocuments.size(); i += REPLAY_BATCH_SIZE) {
+                    batchSender.send(solrClient, entry.getKey(), collectionDocuments.subList(i, Math.min(i + REPLAY_BATCH_SIZE, collectionDocuments.size())), -1);
+                }
+                commitSolrServer(entry.getKey(), solrClient);
+                System.out.println("[" + entry.getKey() + "] " + collectionDocuments.size() + " documents replayed from " + file);
+            }
+            batchSender.report();
+        } catch (IndexerException e) {
+            System.err.println(e.getMessage());
+            return false;
+        } finally {
+            closeDeadLetterFile(deadLetterFile);
+        }
+        if (batchSender.getRejected() > 0) {
+            System.err.println(batchSender.getRejected() + " documents were rejected again, see " + failed);
+            return false;
+        }
+        return true;
+    }
+
+    private static void closeDeadLetterFile(DeadLetterFile deadLetterFile) {
+        try {
+            deadLetterFile.close();
+        } catch (IOException e) {
+            System.err.println("Could not close " + deadLetterFile.getPath() + ": " + e.getMessage());
+        }
+    }
 }
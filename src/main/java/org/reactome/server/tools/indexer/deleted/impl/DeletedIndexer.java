@@ -3,18 +3,20 @@ package org.reactome.server.tools.indexer.deleted.impl;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.common.SolrInputDocument;
 import org.reactome.server.graph.domain.model.Deleted;
-import org.reactome.server.graph.service.DatabaseObjectService;
 import org.reactome.server.graph.service.SchemaService;
 import org.reactome.server.tools.indexer.deleted.model.DeletedDocument;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.reactome.server.tools.indexer.impl.AbstractIndexer;
+import org.reactome.server.tools.indexer.impl.DatabaseObjectBatchLoader;
+import org.reactome.server.tools.indexer.util.SolrDocumentBinder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import static org.reactome.server.tools.indexer.util.SolrUtility.cleanSolrIndex;
 
@@ -26,7 +28,10 @@ public class DeletedIndexer extends AbstractIndexer<DeletedDocument> {
 
     private DeletedDocumentBuilder builder;
     private SchemaService schemaService;
-    private DatabaseObjectService databaseObjectService;
+    private DatabaseObjectBatchLoader batchLoader;
+
+    private static final int CHUNK_SIZE = 500;
+    private static final List<String> RELATIONSHIPS = List.of("deletedInstance", "reason", "replacementInstances", "created");
 
 
     public int index() throws IndexerException {
@@ -40,10 +45,14 @@ public class DeletedIndexer extends AbstractIndexer<DeletedDocument> {
 
         int numberOfDeletedTreated = 0;
 
-        Collection<Long> dbIds = schemaService.getDbIdsByClass(Deleted.class);
+        List<Long> dbIds = new ArrayList<>(schemaService.getDbIdsByClass(Deleted.class));
         setTotal(dbIds.size());
+        Map<Long, Deleted> chunk = Map.of();
         for (Long dbId : dbIds) {
-            Deleted deleted = databaseObjectService.findById(dbId);
+            if (numberOfDeletedTreated % CHUNK_SIZE == 0) {
+                chunk = batchLoader.load(dbIds.subList(numberOfDeletedTreated, Math.min(numberOfDeletedTreated + CHUNK_SIZE, dbIds.size())), RELATIONSHIPS);
+            }
+            Deleted deleted = chunk.containsKey(dbId) ? chunk.get(dbId) : batchLoader.findById(dbId);
             if (deleted != null) {
                 List<DeletedDocument> documents = builder.createDocuments(deleted);
                 batch.addAll(documents);
@@ -62,7 +71,7 @@ public class DeletedIndexer extends AbstractIndexer<DeletedDocument> {
 
 
             if (numberOfDeletedTreated % 100 == 0) updateProgressBar(numberOfDeletedTreated);
-            if (numberOfDeletedTreated % 10000 == 0) cleanNeo4jCache();
+            cleanNeo4jCache();
         }
 
         if (!batch.isEmpty()) {
@@ -71,6 +80,8 @@ public class DeletedIndexer extends AbstractIndexer<DeletedDocument> {
             totalDocuments += batch.size();
         }
 
+        commitPending();
+
         if (!missingDocuments.isEmpty())
             log.info("\nMissing documents for:\n\t{}", StringUtils.join(missingDocuments, "\n\t"));
 
@@ -78,7 +89,8 @@ public class DeletedIndexer extends AbstractIndexer<DeletedDocument> {
 
     }
 
-
-
-
+    @Override
+    protected SolrInputDocument toSolrInputDocument(DeletedDocument document) {
+        return SolrDocumentBinder.toSolrInputDocument(document);
+    }
 }
@@ -3,18 +3,19 @@ package org.reactome.server.tools.indexer.icon.impl;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 import lombok.extern.log4j.Log4j2;
+import org.apache.solr.common.SolrInputDocument;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.reactome.server.tools.indexer.icon.model.Icon;
 import org.reactome.server.tools.indexer.icon.model.IconDocument;
 import org.reactome.server.tools.indexer.icon.parser.MetadataParser;
 import org.reactome.server.tools.indexer.impl.AbstractIndexer;
+import org.reactome.server.tools.indexer.util.SolrDocumentBinder;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.reactome.server.tools.indexer.util.SolrUtility.cleanSolrIndex;
-import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
 
 /**
  * @author Guilherme S Viteri <gviteri@ebi.ac.uk>
@@ -38,7 +39,12 @@ public class IconIndexer extends AbstractIndexer<IconDocument> {
         IconDocumentBuilder iconDocumentBuilder = new IconDocumentBuilder(solrCollection, solrClient);
         icons.forEach(icon -> collection.add(iconDocumentBuilder.createIconSolrDocument(icon)));
         addDocumentsToSolrServer(collection);
-        commitSolrServer(solrCollection, solrClient);
+        commitPending();
         return collection.size();
     }
+
+    @Override
+    protected SolrInputDocument toSolrInputDocument(IconDocument document) {
+        return SolrDocumentBinder.toSolrInputDocument(document);
+    }
 }
@@ -4,15 +4,20 @@ import lombok.*;
 import lombok.experimental.SuperBuilder;
 import lombok.extern.log4j.Log4j2;
 import org.apache.solr.client.solrj.SolrClient;
-import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
+import org.apache.solr.common.SolrInputDocument;
 import org.reactome.server.graph.service.GeneralService;
 import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.util.CommitPolicy;
+import org.reactome.server.tools.indexer.util.Neo4jCachePolicy;
+import org.reactome.server.tools.indexer.util.ShardLeaderSolrClient;
+import org.reactome.server.tools.indexer.util.SolrBatchSender;
+import org.reactome.server.tools.indexer.util.SolrDocumentBinder;
 import org.reactome.server.tools.indexer.util.SolrUtility;
+import org.reactome.server.tools.indexer.util.TrackingUpdateSolrClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -29,38 +34,52 @@ public abstract class AbstractIndexer<Document> {
     protected String solrCollection;
     @Setter
     protected long total;
+    @Setter
+    protected CommitPolicy commitPolicy = CommitPolicy.parse(CommitPolicy.DEFAULT);
+    @Setter
+    protected SolrBatchSender batchSender = new SolrBatchSender(null);
+    @Setter
+    protected Neo4jCachePolicy cachePolicy = Neo4jCachePolicy.fixed();
 
     public abstract int index() throws IndexerException;
 
     /**
      * Safely adding Document Bean to Solr Server
      *
-     * @param documents List of Documents that will be added to Solr
-     *                  <p>
-     *                  REMOTE_SOLR_EXCEPTION is a Runtime Exception
+     * @param documents List of Documents that will be added to Solr. The ones Solr rejects are isolated and
+     *                  written to the dead-letter file by the {@link SolrBatchSender}
      */
     protected void addDocumentsToSolrServer(List<Document> documents) {
         if (documents != null && !documents.isEmpty()) {
+            List<SolrInputDocument> inputDocuments = new ArrayList<>(documents.size());
+            for (Document document : documents) {
+                inputDocuments.add(toSolrInputDocument(document));
+            }
+            int rejected = batchSender.send(solrClient, solrCollection, inputDocuments, commitPolicy.getCommitWithin(), this::onRejected);
+            log.debug("{} Documents successfully added to SolR", documents.size() - rejected);
             try {
-                solrClient.addBeans(solrCollection, documents);
-                solrClient.commit(solrCollection);
-                log.debug("{} Documents successfully added to SolR", documents.size());
-            } catch (IOException | SolrServerException | BaseHttpSolrClient.RemoteSolrException e) {
-                for (Document document : documents) {
-                    try {
-                        solrClient.addBean(solrCollection, document);
-                        log.debug("A single document was added to Solr");
-                    } catch (IOException | SolrServerException | BaseHttpSolrClient.RemoteSolrException e1) {
-                        log.error("Could not add document", e);
-                    }
-                }
-                log.error("Could not add document", e);
+                commitPolicy.afterAdd(solrClient, solrCollection, documents.size());
+            } catch (IndexerException e) {
+                log.error("Could not commit documents", e);
             }
         } else {
             log.error("Solr Documents are null or empty");
         }
     }
 
+    /**
+     * Invoked for every document SolR did not accept, once the {@link SolrBatchSender} has dead-lettered it
+     */
+    protected void onRejected(SolrInputDocument document) {
+    }
+
+    /**
+     * Reflective by default (SolrJ DocumentObjectBinder), indexers override it with a {@link SolrDocumentBinder}
+     */
+    protected SolrInputDocument toSolrInputDocument(Document document) {
+        return solrClient.getBinder().toSolrInputDocument(document);
+    }
+
     /**
      * Simple method that prints a progress bar to command line
      *
@@ -85,7 +104,28 @@ public abstract class AbstractIndexer<Document> {
 
 
 
+    /**
+     * Commits whatever the commit policy has left pending. Invoke it once the indexer is done.
+     *
+     * @throws IndexerException also when updates sent in the background by a {@link TrackingUpdateSolrClient} or a
+     *                          {@link ShardLeaderSolrClient} failed
+     */
+    protected void commitPending() throws IndexerException {
+        commitPolicy.finish(solrClient, solrCollection);
+        SolrUtility.checkErrors(solrClient);
+    }
+
+    /**
+     * Invoked after every document, clears the graph database cache when the {@link Neo4jCachePolicy} asks for it
+     */
     protected void cleanNeo4jCache() {
-        generalService.clearCache();
+        if (cachePolicy.afterDocument()) generalService.clearCache();
+    }
+
+    /**
+     * Invoked once a stage is done, clears the graph database cache when the {@link Neo4jCachePolicy} asks for it
+     */
+    protected void cleanNeo4jCacheAfterStage() {
+        if (cachePolicy.afterStage()) generalService.clearCache();
     }
 }
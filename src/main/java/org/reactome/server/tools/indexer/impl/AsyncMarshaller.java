@@ -0,0 +1,182 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a {@link Marshaller} on its own writer thread, fed through a bounded queue, so the thread building the
+ * documents does not wait for the disk.
+ * <p>
+ * The entries are formatted on the calling thread, so a document that cannot be written fails there as it did when
+ * written inline, and the writer thread only encodes, compresses and writes them. There is a single writer per file
+ * and the queue is FIFO, hence the entries are written in the order they were submitted. {@link #position()} and
+ * {@link #writeFooter(int)} wait for everything queued before them. A failure of the writer is thrown by the next
+ * call.
+ * <p>
+ * The queue depth and the time spent waiting for room in the queue are logged by {@link #report()}: waiting
+ * means the disk is the bottleneck.
+ */
+class AsyncMarshaller {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    static final int DEFAULT_CAPACITY = 5000;
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static final Task STOP = () -> {};
+
+    private final Marshaller marshaller;
+    private final Marshaller formatter = Marshaller.formatter();
+    private final String name;
+    private final int capacity;
+    private final BlockingQueue<Task> queue;
+    private final Thread writer;
+    private volatile Exception failure;
+    private boolean closed = false;
+
+    private long entries = 0;
+    private long submitted = 0;
+    private int maxDepth = 0;
+    private long depthSum = 0;
+    private long fullCount = 0;
+    private long blockedNanos = 0;
+
+    AsyncMarshaller(Marshaller marshaller, String name) {
+        this(marshaller, name, DEFAULT_CAPACITY);
+    }
+
+    AsyncMarshaller(Marshaller marshaller, String name, int capacity) {
+        this.marshaller = marshaller;
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::consume, "ebeye-writer-" + name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    void writeHeader(int releaseNumber) throws IndexerException {
+        submit(() -> marshaller.writeHeader(releaseNumber));
+    }
+
+    /**
+     * @throws RuntimeException if the document cannot be written, nothing is queued then
+     */
+    void writeEntry(IndexDocument document) throws IndexerException {
+        String entry = formatter.formatEntry(document);
+        entries++;
+        submit(() -> marshaller.writeFormattedEntry(entry));
+    }
+
+    /**
+     * Waits for the entries queued so far to be written
+     *
+     * @return length of the file, to resume from this point
+     */
+    long position() throws IOException, IndexerException {
+        if (closed) return marshaller.position();
+        CompletableFuture<Long> position = new CompletableFuture<>();
+        submit(() -> {
+            try {
+                position.complete(marshaller.position());
+            } catch (IOException e) {
+                position.completeExceptionally(e);
+                throw e;
+            }
+        });
+        while (true) {
+            try {
+                return position.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                checkFailure(); // the writer skips everything after a failure
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IndexerException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IndexerException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Writes the footer once everything queued before has been written, and stops the writer thread
+     */
+    void writeFooter(int entriesCount) throws IndexerException {
+        if (closed) return;
+        submit(() -> marshaller.writeFooter(entriesCount));
+        submit(STOP);
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException(e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Logs the queue depth and how long the indexing thread waited for the writer
+     */
+    void report() {
+        logger.info(String.format("EBeye writer %s: %d entries, queue depth avg %.1f max %d of %d, full %d times, waited %dms",
+                name, entries, submitted == 0 ? 0.0 : (double) depthSum / submitted, maxDepth, capacity, fullCount, blockedNanos / 1_000_000));
+    }
+
+    private void submit(Task task) throws IndexerException {
+        checkFailure();
+        if (closed) return;
+        int depth = queue.size();
+        submitted++;
+        depthSum += depth;
+        if (depth > maxDepth) maxDepth = depth;
+        try {
+            if (!queue.offer(task)) {
+                fullCount++;
+                long start = System.nanoTime();
+                queue.put(task);
+                blockedNanos += System.nanoTime() - start;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException(e);
+        }
+    }
+
+    private void checkFailure() throws IndexerException {
+        if (failure == null) return;
+        if (failure instanceof IndexerException) throw (IndexerException) failure;
+        throw new IndexerException(failure);
+    }
+
+    private void consume() {
+        try {
+            while (true) {
+                Task task = queue.take();
+                if (task == STOP) return;
+                if (failure != null) continue; // keep draining so the producer is never blocked
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("An error occurred when writing " + name + ", nothing else will be written to it", e);
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
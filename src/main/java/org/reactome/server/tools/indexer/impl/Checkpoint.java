@@ -0,0 +1,91 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of an indexing run, saved after every batch sent to SolR so a run can be resumed after a crash.
+ * <p>
+ * The stage is the position of the step in {@link Indexer#index()} and position is the number of dbIds
+ * (sorted) of that stage already sent to SolR. The EBeye offsets are the length of the xml files at that point,
+ * anything written after them is discarded when resuming.
+ */
+class Checkpoint {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private final File file;
+
+    int stage;
+    int position;
+    int entriesCount;
+    int covidEntriesCount;
+    long ebeyeOffset;
+    long ebeyeCovidOffset;
+
+    Checkpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the checkpoint saved in the given file or null if there is none
+     */
+    static Checkpoint load(File file) throws IndexerException {
+        if (!file.exists()) return null;
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            properties.load(reader);
+            Checkpoint checkpoint = new Checkpoint(file);
+            checkpoint.stage = Integer.parseInt(properties.getProperty("stage"));
+            checkpoint.position = Integer.parseInt(properties.getProperty("position"));
+            checkpoint.entriesCount = Integer.parseInt(properties.getProperty("entriesCount"));
+            checkpoint.covidEntriesCount = Integer.parseInt(properties.getProperty("covidEntriesCount"));
+            checkpoint.ebeyeOffset = Long.parseLong(properties.getProperty("ebeyeOffset"));
+            checkpoint.ebeyeCovidOffset = Long.parseLong(properties.getProperty("ebeyeCovidOffset"));
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            throw new IndexerException("Could not read the checkpoint from " + file, e);
+        }
+    }
+
+    /**
+     * Writes the checkpoint replacing the previous one, so a crash while saving keeps the old one
+     */
+    void save() throws IndexerException {
+        Properties properties = new Properties();
+        properties.setProperty("stage", String.valueOf(stage));
+        properties.setProperty("position", String.valueOf(position));
+        properties.setProperty("entriesCount", String.valueOf(entriesCount));
+        properties.setProperty("covidEntriesCount", String.valueOf(covidEntriesCount));
+        properties.setProperty("ebeyeOffset", String.valueOf(ebeyeOffset));
+        properties.setProperty("ebeyeCovidOffset", String.valueOf(ebeyeCovidOffset));
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            properties.store(writer, "Search indexer checkpoint");
+        } catch (IOException e) {
+            throw new IndexerException("Could not write the checkpoint to " + tmp, e);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IndexerException("Could not replace the checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * Removes the checkpoint once the run is done
+     */
+    void delete() {
+        if (file.exists() && !file.delete()) logger.warn("Could not delete the checkpoint " + file);
+    }
+
+    @Override
+    public String toString() {
+        return "stage " + stage + ", position " + position + ", " + entriesCount + " entries";
+    }
+}
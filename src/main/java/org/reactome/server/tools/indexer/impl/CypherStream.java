@@ -0,0 +1,57 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Runs a read query straight on the driver and streams its records, fetched from the server as they are consumed,
+ * so the memory used does not depend on the number of rows. No entity is hydrated.
+ */
+@Service
+class CypherStream {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private Driver driver;
+    private DatabaseSelectionProvider databaseSelectionProvider;
+
+    /**
+     * The stream holds a session open, close it once consumed (try-with-resources).
+     *
+     * @param mapper turns every record into a row
+     */
+    <T> Stream<T> stream(String query, Function<Record, T> mapper) {
+        SessionConfig.Builder config = SessionConfig.builder().withDefaultAccessMode(AccessMode.READ).withFetchSize(FETCH_SIZE);
+        String database = databaseSelectionProvider.getDatabaseSelection().getValue();
+        if (database != null) config.withDatabase(database);
+
+        Session session = driver.session(config.build());
+        try {
+            Result result = session.run(query);
+            return result.stream().map(mapper).onClose(session::close);
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    @Autowired
+    public void setDriver(Driver driver) {
+        this.driver = driver;
+    }
+
+    @Autowired
+    public void setDatabaseSelectionProvider(DatabaseSelectionProvider databaseSelectionProvider) {
+        this.databaseSelectionProvider = databaseSelectionProvider;
+    }
+}
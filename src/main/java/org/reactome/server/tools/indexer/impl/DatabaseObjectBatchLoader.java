@@ -0,0 +1,115 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads a whole chunk of DatabaseObjects, together with the given outgoing relationships, in one query.
+ * <p>
+ * Relationships that are not requested (or fail to be mapped) are still resolved on demand by the
+ * LazyFetchAspect, so the loaded objects can be used as if they came from {@link DatabaseObjectService#findById}.
+ * A chunk can also be kept for the current thread, so code handling one object at a time can pick it from there.
+ */
+@Service
+public class DatabaseObjectBatchLoader {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    /**
+     * Relationships read by most of the document builders
+     */
+    public static final List<String> DOCUMENT_RELATIONSHIPS = List.of(
+            "species", "compartment", "summation", "literatureReference", "crossReference", "referenceEntity", "disease");
+
+    //language=cypher
+    private static final String QUERY = "" +
+            "UNWIND $dbIds AS id " +
+            "MATCH (n:DatabaseObject{dbId:id}) " +
+            "OPTIONAL MATCH (n)-[r]->(m:DatabaseObject) " +
+            "WHERE type(r) IN $relationships " +
+            "RETURN n, collect(r), collect(m)";
+
+    private AdvancedDatabaseObjectService advancedDatabaseObjectService;
+    private DatabaseObjectService databaseObjectService;
+
+    private final ThreadLocal<Map<Long, DatabaseObject>> chunk = ThreadLocal.withInitial(HashMap::new);
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @param dbIds         objects to be loaded
+     * @param relationships outgoing relationships to be hydrated along with the objects
+     * @return the loaded objects by dbId. Identifiers not found in the graph are not present.
+     */
+    public <T extends DatabaseObject> Map<Long, T> load(Collection<Long> dbIds, Collection<String> relationships) {
+        Map<Long, T> rtn = new HashMap<>(dbIds.size() * 2);
+        if (dbIds.isEmpty()) return rtn;
+        try {
+            @SuppressWarnings("unchecked")
+            Collection<T> objects = (Collection<T>) advancedDatabaseObjectService.getCustomQueryResults(DatabaseObject.class, QUERY,
+                    Map.of("dbIds", dbIds, "relationships", relationships));
+            queries.incrementAndGet();
+            for (T object : objects) {
+                rtn.put(object.getDbId(), object);
+            }
+            loaded.addAndGet(rtn.size());
+        } catch (CustomQueryException e) {
+            logger.error("Could not load a chunk of " + dbIds.size() + " objects, they will be loaded one by one", e);
+        }
+        return rtn;
+    }
+
+    /**
+     * Loads the given objects and keeps them for the current thread, replacing the previous chunk.
+     */
+    public void prefetch(Collection<Long> dbIds, Collection<String> relationships) {
+        Map<Long, DatabaseObject> current = chunk.get();
+        current.clear();
+        current.putAll(load(dbIds, relationships));
+    }
+
+    /**
+     * @return the object from the chunk of the current thread or, if not there, straight from the graph
+     */
+    public <T extends DatabaseObject> T findById(Long dbId) {
+        @SuppressWarnings("unchecked")
+        T rtn = (T) chunk.get().get(dbId);
+        if (rtn != null) return rtn;
+        fallbacks.incrementAndGet();
+        return databaseObjectService.findById(dbId);
+    }
+
+    /**
+     * Removes the chunk of the current thread
+     */
+    public void clear() {
+        chunk.remove();
+    }
+
+    /**
+     * Logs how many objects were loaded in chunks
+     */
+    public void report() {
+        logger.info(String.format("Batch loader: %d objects loaded in %d queries, %d loaded one by one",
+                loaded.get(), queries.get(), fallbacks.get()));
+    }
+
+    @Autowired
+    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
+    }
+
+    @Autowired
+    public void setDatabaseObjectService(DatabaseObjectService databaseObjectService) {
+        this.databaseObjectService = databaseObjectService;
+    }
+}
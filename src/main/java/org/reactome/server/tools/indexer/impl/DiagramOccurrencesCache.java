@@ -0,0 +1,242 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.ReferenceEntity;
+import org.reactome.server.graph.domain.result.DiagramOccurrences;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.DiagramService;
+import org.reactome.server.graph.service.InteractionsService;
+import org.reactome.server.tools.indexer.model.DiagramOccurrence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Diagram occurrences of a whole chunk of objects loaded with a single query per kind of occurrence.
+ * <p>
+ * Each builder thread prefetches the chunk it is about to process, so the cache is kept per thread and only
+ * holds one chunk at a time. Objects that were not prefetched are resolved by the graph services as before.
+ * <p>
+ * The documents keep the order of the occurrences in their diagrams and occurrences fields, so the order of the
+ * graph services is kept as it is. The prefetched occurrences are sorted by diagram, DiagramOccurrencesCacheTest
+ * checks that is the order of {@link DiagramService} and {@link InteractionsService}.
+ */
+@Service
+class DiagramOccurrencesCache {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final String PARTICIPANT_RELATIONSHIPS = "input|output|catalystActivity|physicalEntity|entityFunctionalStatus|diseaseEntity|regulatedBy|regulator|hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker";
+
+    // Diagrams containing x, directly (inDiagram) or through subpathways with their own diagram (occurrences)
+    //language=cypher
+    private static final String DIAGRAMS = "" +
+            "MATCH path=(d:Pathway{hasDiagram:true})-[:hasEvent|" + PARTICIPANT_RELATIONSHIPS + "*]->(x) " +
+            "WITH key, d, x, [n IN tail(nodes(path)) WHERE (n:Pathway) AND n.hasDiagram | n.stId] AS subpathways " +
+            "WITH key, d, " +
+            "     collect(DISTINCT CASE WHEN size(subpathways) = 0 THEN null ELSE subpathways[0] END) AS occurrences, " +
+            "     sum(CASE WHEN size(subpathways) = 0 THEN 1 ELSE 0 END) > 0 AS inDiagram, " +
+            "     collect(DISTINCT CASE WHEN size(subpathways) = 0 THEN x.stId ELSE null END) AS interactsWith ";
+
+    // Diagrams containing the entities interacting with the ReferenceEntity re
+    //language=cypher
+    private static final String INTERACTORS = "" +
+            "MATCH (re)<-[:interactor]-(:Interaction)-[:interactor]->(:ReferenceEntity)<-[:referenceEntity]-(x:PhysicalEntity) " +
+            DIAGRAMS;
+
+    //language=cypher
+    private static final String OBJECTS_QUERY = "" +
+            "UNWIND $dbIds AS key " +
+            "MATCH (x:DatabaseObject{dbId:key}) " +
+            DIAGRAMS +
+            "RETURN key AS dbId, d.stId AS diagramStId, inDiagram, occurrences " +
+            "ORDER BY dbId, diagramStId";
+
+    //language=cypher
+    private static final String OBJECTS_INTERACTORS_QUERY = "" +
+            "UNWIND $dbIds AS key " +
+            "MATCH (:PhysicalEntity{dbId:key})-[:referenceEntity]->(re:ReferenceEntity) " +
+            INTERACTORS +
+            "RETURN key AS dbId, d.stId AS diagramStId, inDiagram, occurrences, interactsWith " +
+            "ORDER BY dbId, diagramStId";
+
+    //language=cypher
+    private static final String REFERENCE_ENTITIES_QUERY = "" +
+            "UNWIND $dbIds AS key " +
+            "MATCH (:ReferenceEntity{dbId:key})<-[:referenceEntity]-(x:PhysicalEntity) " +
+            DIAGRAMS +
+            "RETURN key AS dbId, d.stId AS diagramStId, inDiagram, occurrences " +
+            "ORDER BY dbId, diagramStId";
+
+    //language=cypher
+    private static final String REFERENCE_ENTITIES_INTERACTORS_QUERY = "" +
+            "UNWIND $dbIds AS key " +
+            "MATCH (re:ReferenceEntity{dbId:key}) " +
+            INTERACTORS +
+            "RETURN key AS dbId, d.stId AS diagramStId, inDiagram, occurrences, interactsWith " +
+            "ORDER BY dbId, diagramStId";
+
+    // Interactors are not referenced by any PhysicalEntity, they are only in the diagrams of their partners
+    //language=cypher
+    private static final String INTERACTORS_QUERY = "" +
+            "UNWIND $identifiers AS key " +
+            "MATCH (re:ReferenceEntity) " +
+            "WHERE re.variantIdentifier = key OR (re.variantIdentifier IS NULL AND re.identifier = key) " +
+            INTERACTORS +
+            "RETURN key AS identifier, d.stId AS diagramStId, inDiagram, occurrences, interactsWith " +
+            "ORDER BY identifier, diagramStId";
+
+    private static final Comparator<DiagramOccurrence> BY_DIAGRAM = Comparator.comparing(DiagramOccurrence::getDiagramStId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private AdvancedDatabaseObjectService advancedDatabaseObjectService;
+    private DiagramService diagramService;
+    private InteractionsService interactionsService;
+
+    private final ThreadLocal<Map<Object, List<DiagramOccurrence>>> chunk = ThreadLocal.withInitial(HashMap::new);
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Loads the diagram occurrences of the given objects for the current thread, replacing the previous chunk.
+     *
+     * @param referenceEntities true if the dbIds belong to ReferenceEntities
+     */
+    void prefetch(List<Long> dbIds, boolean referenceEntities) {
+        Map<Object, List<DiagramOccurrence>> current = chunk.get();
+        current.clear();
+        if (dbIds.isEmpty()) return;
+        Map<String, Object> params = Map.of("dbIds", dbIds);
+        try {
+            Map<Object, Map<String, DiagramOccurrence>> occurrences = new HashMap<>();
+            for (DiagramOccurrence row : query(referenceEntities ? REFERENCE_ENTITIES_QUERY : OBJECTS_QUERY, params)) {
+                DiagramOccurrence occurrence = get(occurrences, row.getDbId(), row.getDiagramStId());
+                occurrence.setInDiagram(row.isInDiagram());
+                occurrence.setOccurrences(row.getOccurrences());
+            }
+            for (DiagramOccurrence row : query(referenceEntities ? REFERENCE_ENTITIES_INTERACTORS_QUERY : OBJECTS_INTERACTORS_QUERY, params)) {
+                DiagramOccurrence occurrence = get(occurrences, row.getDbId(), row.getDiagramStId());
+                occurrence.setInDiagramFromInteractor(row.isInDiagram());
+                occurrence.setOccurrencesInteractor(row.getOccurrences());
+                occurrence.setInteractsWith(row.getInteractsWith());
+            }
+            for (Long dbId : dbIds) current.put(dbId, toList(occurrences.get(dbId)));
+            prefetched.addAndGet(dbIds.size());
+        } catch (CustomQueryException e) {
+            logger.error("Could not prefetch diagram occurrences, falling back to one query per object", e);
+            current.clear();
+        }
+    }
+
+    /**
+     * Loads the diagram occurrences of the given interactors (identifier or variantIdentifier) for the current thread.
+     */
+    void prefetchInteractors(List<String> identifiers) {
+        Map<Object, List<DiagramOccurrence>> current = chunk.get();
+        current.clear();
+        if (identifiers.isEmpty()) return;
+        try {
+            Map<Object, Map<String, DiagramOccurrence>> occurrences = new HashMap<>();
+            for (DiagramOccurrence row : query(INTERACTORS_QUERY, Map.of("identifiers", identifiers))) {
+                DiagramOccurrence occurrence = get(occurrences, row.getIdentifier(), row.getDiagramStId());
+                occurrence.setInDiagram(row.isInDiagram());
+                occurrence.setOccurrences(row.getOccurrences());
+                occurrence.setInteractsWith(row.getInteractsWith());
+            }
+            for (String identifier : identifiers) current.put(identifier, toList(occurrences.get(identifier)));
+            prefetched.addAndGet(identifiers.size());
+        } catch (CustomQueryException e) {
+            logger.error("Could not prefetch interactor diagram occurrences, falling back to one query per interactor", e);
+            current.clear();
+        }
+    }
+
+    /**
+     * Removes the chunk of the current thread
+     */
+    void clear() {
+        chunk.remove();
+    }
+
+    List<DiagramOccurrence> getDiagramOccurrences(DatabaseObject databaseObject) {
+        List<DiagramOccurrence> rtn = chunk.get().get(databaseObject.getDbId());
+        if (rtn == null) return getDiagramOccurrencesFromService(databaseObject);
+        served.incrementAndGet();
+        return rtn;
+    }
+
+    List<DiagramOccurrence> getInteractorDiagramOccurrences(String identifier) {
+        List<DiagramOccurrence> rtn = chunk.get().get(identifier);
+        if (rtn == null) return getInteractorDiagramOccurrencesFromService(identifier);
+        served.incrementAndGet();
+        return rtn;
+    }
+
+    private List<DiagramOccurrence> getDiagramOccurrencesFromService(DatabaseObject databaseObject) {
+        Collection<DiagramOccurrences> dgoc = databaseObject instanceof ReferenceEntity ?
+                diagramService.getDiagramOccurrencesOfReferenceEntity(databaseObject.getDbId()) :
+                diagramService.getDiagramOccurrences(databaseObject.getStId());
+        return toDiagramOccurrence(dgoc);
+    }
+
+    private List<DiagramOccurrence> getInteractorDiagramOccurrencesFromService(String identifier) {
+        return toDiagramOccurrence(interactionsService.getDiagramOccurrences(identifier));
+    }
+
+    /**
+     * Logs how many lookups were served from the prefetched chunks
+     */
+    void report() {
+        logger.info(String.format("Diagram occurrences: %d prefetched in %d queries, %d lookups served from prefetch",
+                prefetched.get(), queries.get(), served.get()));
+    }
+
+    private Collection<DiagramOccurrence> query(String query, Map<String, Object> params) throws CustomQueryException {
+        Collection<DiagramOccurrence> rtn = advancedDatabaseObjectService.getCustomQueryResults(DiagramOccurrence.class, query, params);
+        queries.incrementAndGet();
+        return rtn;
+    }
+
+    private static DiagramOccurrence get(Map<Object, Map<String, DiagramOccurrence>> occurrences, Object key, String diagramStId) {
+        return occurrences.computeIfAbsent(key, k -> new HashMap<>()).computeIfAbsent(diagramStId, d -> {
+            DiagramOccurrence occurrence = new DiagramOccurrence();
+            occurrence.setDiagramStId(d);
+            return occurrence;
+        });
+    }
+
+    /**
+     * The rows of both queries come sorted by diagram, merging them keeps that order
+     */
+    private static List<DiagramOccurrence> toList(Map<String, DiagramOccurrence> occurrences) {
+        if (occurrences == null) return new ArrayList<>();
+        List<DiagramOccurrence> rtn = new ArrayList<>(occurrences.values());
+        rtn.sort(BY_DIAGRAM);
+        return rtn;
+    }
+
+    private static List<DiagramOccurrence> toDiagramOccurrence(Collection<DiagramOccurrences> dgoc) {
+        if (dgoc == null) return new ArrayList<>();
+        return dgoc.stream().map(DiagramOccurrence::new).collect(Collectors.toList());
+    }
+
+    @Autowired
+    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
+    }
+
+    @Autowired
+    public void setDiagramService(DiagramService diagramService) {
+        this.diagramService = diagramService;
+    }
+
+    @Autowired
+    public void setInteractionsService(InteractionsService interactionsService) {
+        this.interactionsService = interactionsService;
+    }
+}
@@ -2,17 +2,16 @@ package org.reactome.server.tools.indexer.impl;
 
 import org.apache.commons.lang3.StringUtils;
 import org.reactome.server.graph.domain.model.*;
-import org.reactome.server.graph.domain.result.DiagramOccurrences;
 import org.reactome.server.graph.exception.CustomQueryException;
 import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
-import org.reactome.server.graph.service.DatabaseObjectService;
-import org.reactome.server.graph.service.DiagramService;
-import org.reactome.server.graph.service.PathwaysService;
 import org.reactome.server.tools.indexer.model.CrossReference;
+import org.reactome.server.tools.indexer.model.DiagramOccurrence;
 import org.reactome.server.tools.indexer.model.DocumentAndImport;
 import org.reactome.server.tools.indexer.model.IndexDocument;
-import org.reactome.server.tools.indexer.model.SpeciesResult;
+import org.reactome.server.tools.indexer.util.Accessor;
+import org.reactome.server.tools.indexer.util.KeywordTagger;
 import org.reactome.server.tools.indexer.util.MapSet;
+import org.reactome.server.tools.indexer.util.StringPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,8 +23,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -43,23 +40,26 @@ class DocumentBuilder {
     private static final String SARS_DOID_MAPPING = "sars_doid_mapping.csv";
     public static final Pattern DB_ID_PATTERN = Pattern.compile("(?<db>\\w+).*:(?<id>.+)");
     public static final Pattern SPACE_PATTERN = Pattern.compile("\\s");
+    // Not all the classes having species share a common interface
+    private static final Accessor SPECIES = new Accessor("getSpecies");
 
-    private DatabaseObjectService databaseObjectService;
     private AdvancedDatabaseObjectService advancedDatabaseObjectService;
-    private DiagramService diagramService;
-    private PathwaysService pathwaysService;
+    private PathwayHierarchy pathwayHierarchy;
+    private DatabaseObjectBatchLoader batchLoader;
+    private DiagramOccurrencesCache diagramOccurrencesCache;
+    private FireworksSpeciesCache fireworksSpeciesCache;
 
-    private final Map<Long, Set<String>> simpleEntitiesAndDrugSpecies = new HashMap<>();
     private final Collection<String> covid19enties = new ArrayList<>();
 
-    private final List<String> keywords;
+    private final KeywordTagger keywords;
     private final List<String> SARSDoid;
 
     public DocumentBuilder() {
-        keywords = loadFile(CONTROLLED_VOCABULARY);
-        if (keywords == null) {
+        List<String> vocabulary = loadFile(CONTROLLED_VOCABULARY);
+        if (vocabulary == null) {
             logger.error("No keywords available");
         }
+        keywords = vocabulary == null ? null : new KeywordTagger(vocabulary);
 
         SARSDoid = loadFile(SARS_DOID_MAPPING);
         if (SARSDoid == null) {
@@ -67,30 +67,58 @@ class DocumentBuilder {
         }
     }
 
-    @Transactional
-    public DocumentAndImport createSolrDocument(Long dbId) {
-        synchronized (simpleEntitiesAndDrugSpecies) {
-            if (simpleEntitiesAndDrugSpecies.isEmpty()) cacheSimpleEntityAndDrugSpecies();
+    /**
+     * Loads the caches shared by all the documents. Documents can be created without calling it,
+     * but then the first one pays for it.
+     */
+    public void preload() {
+        fireworksSpeciesCache.load();
+        pathwayHierarchy.load();
+        synchronized (covid19enties) {
+            if (covid19enties.isEmpty()) cacheCovid19Entities();
         }
+    }
+
+    /**
+     * Loads in one go data needed by the documents of the given chunk. Subsequent calls to
+     * {@link #createSolrDocument(Long)} on the same thread will use it.
+     *
+     * @param clazz schema class of the given dbIds
+     */
+    void prefetch(List<Long> dbIds, Class<? extends DatabaseObject> clazz) {
+        batchLoader.prefetch(dbIds, DatabaseObjectBatchLoader.DOCUMENT_RELATIONSHIPS);
+        diagramOccurrencesCache.prefetch(dbIds, ReferenceEntity.class.isAssignableFrom(clazz));
+    }
+
+    /**
+     * Logs the statistics of the caches used while building the documents
+     */
+    void report() {
+        batchLoader.report();
+        diagramOccurrencesCache.report();
+        fireworksSpeciesCache.report();
+    }
 
+    @Transactional
+    public DocumentAndImport createSolrDocument(Long dbId) {
         synchronized (covid19enties) {
             if (covid19enties.isEmpty()) cacheCovid19Entities();
         }
 
         IndexDocument document = new IndexDocument();
         /*
-         * Query the Graph and load only Primitives and no Relations attributes.
-         * Lazy-loading will load them on demand.
+         * Taken from the prefetched chunk, hydrated with the commonly used relationships, or loaded with only
+         * Primitives. Lazy-loading will load the rest of the Relations attributes on demand.
          */
-        DatabaseObject databaseObject = databaseObjectService.findById(dbId);
+        DatabaseObject databaseObject = batchLoader.findById(dbId);
 
         // Setting common attributes
         document.setDbId(databaseObject.getDbId().toString());
         document.setStId(databaseObject.getStId());
         document.setOldStId(databaseObject.getOldStId());
 
-        document.setType(getType(databaseObject));
-        document.setExactType(databaseObject.getSchemaClass());
+        document.setType(StringPool.TYPE.get(getType(databaseObject)));
+        document.setExactType(StringPool.TYPE.get(databaseObject.getSchemaClass()));
         document.setIsReferenceSummary(databaseObject instanceof ReferenceEntity);
 
 
@@ -149,7 +177,7 @@ class DocumentBuilder {
             if (event instanceof ReactionLikeEvent) {
                 ReactionLikeEvent reactionLikeEvent = (ReactionLikeEvent) event;
                 setCatalystActivities(document, reactionLikeEvent.getCatalystActivity());
-                document.setExactType(reactionLikeEvent.getCategory());
+                document.setExactType(StringPool.TYPE.get(reactionLikeEvent.getCategory()));
             }
 
             if (event instanceof Pathway) {
@@ -159,10 +187,7 @@ class DocumentBuilder {
         }
 
         setFireworksSpecies(document, databaseObject);
-        setDiagramOccurrences(document, databaseObject instanceof ReferenceEntity ?
-                diagramService.getDiagramOccurrencesOfReferenceEntity(databaseObject.getDbId()) :
-                diagramService.getDiagramOccurrences(databaseObject.getStId())
-        );
+        setDiagramOccurrences(document, diagramOccurrencesCache.getDiagramOccurrences(databaseObject));
         setLowerLevelPathways(document, databaseObject);
         // Keyword uses the document.getName. Name is set in the document by calling setNameAndSynonyms
         setKeywords(document);
@@ -207,26 +232,6 @@ class DocumentBuilder {
         }
     }
 
-    private void cacheSimpleEntityAndDrugSpecies() {
-        //language=cypher
-        String query = "" +
-                "MATCH (n)<-[:regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output|proteinMarker|RNAMarker|hasModifiedResidue|modification*]-(:ReactionLikeEvent)-[:species]->(s:Species) " +
-                "WHERE (n:SimpleEntity) OR (n:Drug) " +
-                "WITH n, collect(DISTINCT s.displayName) AS species " +
-                "RETURN n.dbId AS dbId, species;";
-        try {
-            System.out.println(query);
-            Collection<SpeciesResult> speciesResultList = advancedDatabaseObjectService.getCustomQueryResults(SpeciesResult.class, query);
-
-            for (SpeciesResult speciesResult : speciesResultList) {
-                simpleEntitiesAndDrugSpecies.put(speciesResult.getDbId(), new HashSet<>(speciesResult.getSpecies()));
-            }
-        } catch (CustomQueryException e) {
-            logger.error("Could not cache fireworks species");
-        }
-        logger.info("Caching SimpleEntity Species is done");
-    }
-
     private void cacheCovid19Entities() {
         logger.info("Caching COVID19 Entities");
         //language=cypher
@@ -254,67 +259,38 @@ class DocumentBuilder {
     private void setFireworksSpecies(IndexDocument document, DatabaseObject databaseObject) {
         Set<String> fireworksSpecies = new HashSet<>();
         if ((databaseObject instanceof SimpleEntity || databaseObject instanceof Drug)) {
-            fireworksSpecies = simpleEntitiesAndDrugSpecies.getOrDefault(databaseObject.getDbId(), fireworksSpecies);
+            fireworksSpecies.addAll(fireworksSpeciesCache.getSimpleEntityOrDrugSpecies(databaseObject.getDbId()));
             if (fireworksSpecies.isEmpty()) {
-                logger.warn("No species could be associated for drug or chemical {} (dbId:{}). Please revisit cacheSimpleEntityAndDrugSpecies() to cover the query", databaseObject.getDisplayName(), databaseObject.getDbId());
+                logger.warn("No species could be associated for drug or chemical {} (dbId:{}). Please revisit FireworksSpeciesCache to cover the query", databaseObject.getDisplayName(), databaseObject.getDbId());
             }
         } else {
-            //noinspection Duplicates
-            try {
-                Method getSpecies = databaseObject.getClass().getMethod("getSpecies");
-                Object species = getSpecies.invoke(databaseObject);
-                // some cases like DefinedSet it has species as an attribute but it does not have value in it.
-                if (species != null) {
-                    if (species instanceof Collection) {
-                        //noinspection Convert2streamapi,unchecked
-                        for (Taxon t : (Collection<? extends Taxon>) species) {
-                            fireworksSpecies.add(t.getDisplayName());
-                        }
-                    } else {
-                        Taxon t = (Taxon) species;
+            Object species = SPECIES.get(databaseObject);
+            // some cases like DefinedSet it has species as an attribute but it does not have value in it.
+            if (species != null) {
+                if (species instanceof Collection) {
+                    //noinspection Convert2streamapi,unchecked
+                    for (Taxon t : (Collection<? extends Taxon>) species) {
                         fireworksSpecies.add(t.getDisplayName());
                     }
+                } else {
+                    Taxon t = (Taxon) species;
+                    fireworksSpecies.add(t.getDisplayName());
                 }
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-                //Nothing here
             }
         }
 
         // Regulation and Other Entities may not have (fireworks)species and solr won't be able to find them
         // in the Fireworks (filter query fireworksSpecies)
-        if (fireworksSpecies == null || fireworksSpecies.isEmpty()) {
-            fireworksSpecies = new HashSet<>(List.of("Entries without species"));
+        if (fireworksSpecies.isEmpty()) {
+            fireworksSpecies.add(StringPool.NO_SPECIES);
         }
 
-        if (databaseObject instanceof PhysicalEntity) {
-            //language=cypher
-            String query = "" +
-                    "MATCH (s:Species)<-[:species]-(rle:ReactionLikeEvent), " +
-                    "     (rle)-[:regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output|proteinMarker|RNAMarker*]->(pe:PhysicalEntity) " +
-                    "WHERE pe.dbId = $dbId " +
-                    "RETURN DISTINCT s.displayName AS identifier";
-
-            try {
-                fireworksSpecies.addAll(advancedDatabaseObjectService.getCustomQueryResults(String.class, query, Map.of("dbId", databaseObject.getDbId())));
-            } catch (CustomQueryException e) {
-                logger.error("Failed to index first pathway species to fill fireworkSpecies of {}", databaseObject.getDbId());
-            }
-        } else if (databaseObject instanceof ReferenceEntity) {
-            //language=cypher
-            String query = "" +
-                    "MATCH (s:Species)<-[:species]-(rle:ReactionLikeEvent), " +
-                    "     (rle)-[:regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output|proteinMarker|RNAMarker|referenceEntity*]->(re:ReferenceEntity) " +
-                    "WHERE re.dbId = $dbId " +
-                    "RETURN DISTINCT s.displayName AS identifier";
-
-            try {
-                fireworksSpecies.addAll(advancedDatabaseObjectService.getCustomQueryResults(String.class, query, Map.of("dbId", databaseObject.getDbId())));
-            } catch (CustomQueryException e) {
-                logger.error("Failed to index first pathway species to fill fireworkSpecies of {}", databaseObject.getDbId());
-            }
+        // Species of the reactions where the entity takes part, pre-computed for all of them
+        if (databaseObject instanceof PhysicalEntity || databaseObject instanceof ReferenceEntity) {
+            fireworksSpecies.addAll(fireworksSpeciesCache.getReactionSpecies(databaseObject.getDbId()));
         }
 
-        document.setFireworksSpecies(fireworksSpecies);
+        document.setFireworksSpecies(StringPool.SPECIES.get(fireworksSpecies));
     }
 
     private void setNameAndSynonyms(IndexDocument document, DatabaseObject databaseObject, List<String> name) {
@@ -420,7 +396,7 @@ class DocumentBuilder {
         diseasesId.addAll(diseases.stream().map(d -> "doid:" + d.getIdentifier()).collect(Collectors.toList()));
 
         document.setDiseaseId(diseasesId);
-        document.setDiseaseName(diseases.stream().flatMap(e -> e.getName().stream()).collect(Collectors.toList()));
+        document.setDiseaseName(StringPool.DISEASE.get(diseases.stream().flatMap(e -> e.getName().stream()).collect(Collectors.toList())));
         // TODO: Create a report for those diseases which synonym is null
         document.setDiseaseSynonyms(diseases.stream().filter(f -> f.getSynonym() != null).flatMap(e -> e.getSynonym().stream()).collect(Collectors.toList()));
         document.setIsDisease(true);
@@ -429,8 +405,8 @@ class DocumentBuilder {
     private void setCompartment(IndexDocument document, List<? extends Compartment> compartments) {
         if (compartments == null || compartments.isEmpty()) return;
 
-        document.setCompartmentName(compartments.stream().map(DatabaseObject::getDisplayName).collect(Collectors.toList()));
-        document.setCompartmentAccession(compartments.stream().map(Compartment::getAccession).collect(Collectors.toList()));
+        document.setCompartmentName(StringPool.COMPARTMENT.get(compartments.stream().map(DatabaseObject::getDisplayName).collect(Collectors.toList())));
+        document.setCompartmentAccession(StringPool.COMPARTMENT.get(compartments.stream().map(Compartment::getAccession).collect(Collectors.toList())));
     }
 
     private void setCrossReference(IndexDocument document, List<DatabaseIdentifier> crossReferences) {
@@ -486,13 +462,13 @@ class DocumentBuilder {
             EntitySet entitySet = (EntitySet) databaseObject;
             speciesCollection = entitySet.getSpecies();
             if (entitySet.getRelatedSpecies() != null && !entitySet.getRelatedSpecies().isEmpty()) {
-                document.setRelatedSpecies(entitySet.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList()));
+                document.setRelatedSpecies(StringPool.SPECIES.get(entitySet.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList())));
             }
         } else if (databaseObject instanceof Complex) {
             Complex complex = (Complex) databaseObject;
             speciesCollection = complex.getSpecies();
             if (complex.getRelatedSpecies() != null && !complex.getRelatedSpecies().isEmpty()) {
-                document.setRelatedSpecies(complex.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList()));
+                document.setRelatedSpecies(StringPool.SPECIES.get(complex.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList())));
             }
         } else if (databaseObject instanceof SimpleEntity) {
             SimpleEntity simpleEntity = (SimpleEntity) databaseObject;
@@ -510,17 +486,17 @@ class DocumentBuilder {
             Event event = (Event) databaseObject;
             speciesCollection = event.getSpecies();
             if (event.getRelatedSpecies() != null && !event.getRelatedSpecies().isEmpty()) {
-                document.setRelatedSpecies(event.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList()));
+                document.setRelatedSpecies(StringPool.SPECIES.get(event.getRelatedSpecies().stream().map(Species::getDisplayName).collect(Collectors.toList())));
             }
         }
 
         if (speciesCollection == null || speciesCollection.isEmpty()) {
-            document.setSpecies(Collections.singletonList("Entries without species"));
+            document.setSpecies(StringPool.SPECIES.singleton(StringPool.NO_SPECIES));
             return;
         }
 
         List<String> allSpecies = speciesCollection.stream().map(Taxon::getDisplayName).collect(Collectors.toList());
-        document.setSpecies(allSpecies);
+        document.setSpecies(StringPool.SPECIES.get(allSpecies));
 
         document.setTaxId(speciesCollection.stream().map(Taxon::getTaxId).collect(Collectors.toList()));
     }
@@ -553,8 +529,8 @@ class DocumentBuilder {
             }
 
             // Setting TYPE and EXACT TYPE for the given PhysicalEntity
-            document.setType(getReferenceTypes(referenceEntity));
-            document.setExactType(referenceEntity.getSchemaClass());
+            document.setType(StringPool.TYPE.get(getReferenceTypes(referenceEntity)));
+            document.setExactType(StringPool.TYPE.get(referenceEntity.getSchemaClass()));
 
             if (referenceEntity.getName() != null && !referenceEntity.getName().isEmpty()) {
                 setReferenceNameAndSynonyms(document, referenceEntity, referenceEntity.getName());
@@ -567,7 +543,7 @@ class DocumentBuilder {
 
             if (identifier != null) {
                 document.setReferenceIdentifiers(getReferenceIdentifiers(List.of(referenceEntity)));
-                document.setDatabaseName(referenceEntity.getReferenceDatabase().getDisplayName());
+                document.setDatabaseName(StringPool.DATABASE_NAME.get(referenceEntity.getReferenceDatabase().getDisplayName()));
 
                 String url = referenceEntity.getReferenceDatabase().getAccessUrl();
                 if (StringUtils.isNotEmpty(url)) {
@@ -714,14 +690,14 @@ class DocumentBuilder {
         }
     }
 
-    private void setDiagramOccurrences(IndexDocument document, Collection<DiagramOccurrences> dgoc) {
+    private void setDiagramOccurrences(IndexDocument document, Collection<DiagramOccurrence> dgoc) {
         if (dgoc == null || dgoc.isEmpty()) return;
 
         List<String> diagrams = new ArrayList<>();
         List<String> diagramsInteractor = new ArrayList<>();
         List<String> occurrences = new ArrayList<>();
         List<String> occurrencesInteractor = new ArrayList<>();
-        for (DiagramOccurrences diagramOccurrence : dgoc) {
+        for (DiagramOccurrence diagramOccurrence : dgoc) {
             if (diagramOccurrence.isInDiagram() || !diagramOccurrence.getOccurrences().isEmpty()) {
                 diagrams.add(diagramOccurrence.getDiagramStId());
 
@@ -762,10 +738,10 @@ class DocumentBuilder {
     }
 
     private void setLowerLevelPathways(IndexDocument document, DatabaseObject databaseObject) {
-        Collection<Pathway> pathways = pathwaysService.getLowerLevelPathwaysIncludingEncapsulation(databaseObject.getDbId());
-        if (pathways == null || pathways.isEmpty()) return;
+        List<String> llps = pathwayHierarchy.getLowerLevelPathways(databaseObject.getDbId());
+        if (llps.isEmpty()) return;
 
-        document.setLlps(pathways.stream().map(DatabaseObject::getStId).collect(Collectors.toList()));
+        document.setLlps(llps);
     }
 
     /**
@@ -777,7 +753,7 @@ class DocumentBuilder {
         if (keywords == null) return;
 
         // TODO: Flo says the way it is implemented is not nice. Right we check into a static file with defined vocabulary. Would be nice if we check which reactions are in a bind reaction e.g and then add it as keyword.
-        document.setKeywords(keywords.stream().filter(keyword -> document.getName().toLowerCase().contains(keyword.toLowerCase())).collect(Collectors.toList()));
+        document.setKeywords(keywords.tag(document.getName()));
     }
 
     /**
@@ -805,22 +781,27 @@ class DocumentBuilder {
     }
 
     @Autowired
-    public void setDatabaseObjectService(DatabaseObjectService databaseObjectService) {
-        this.databaseObjectService = databaseObjectService;
+    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
     }
 
     @Autowired
-    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
-        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
+    public void setBatchLoader(DatabaseObjectBatchLoader batchLoader) {
+        this.batchLoader = batchLoader;
+    }
+
+    @Autowired
+    public void setDiagramOccurrencesCache(DiagramOccurrencesCache diagramOccurrencesCache) {
+        this.diagramOccurrencesCache = diagramOccurrencesCache;
     }
 
     @Autowired
-    public void setDiagramService(DiagramService diagramService) {
-        this.diagramService = diagramService;
+    public void setPathwayHierarchy(PathwayHierarchy pathwayHierarchy) {
+        this.pathwayHierarchy = pathwayHierarchy;
     }
 
     @Autowired
-    public void setPathwaysService(PathwaysService pathwaysService) {
-        this.pathwaysService = pathwaysService;
+    public void setFireworksSpeciesCache(FireworksSpeciesCache fireworksSpeciesCache) {
+        this.fireworksSpeciesCache = fireworksSpeciesCache;
     }
 }
@@ -0,0 +1,220 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.model.DocumentAndImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Producer/consumer pipeline building SolR documents on a pool of worker threads.
+ * <p>
+ * The dbIds are split in chunks that are placed in a bounded queue. Builder workers take the chunks,
+ * create the documents and hand them over to a second bounded queue. The calling thread is the writer
+ * stage: it receives the chunks back in their original order, so everything downstream (SolR batches,
+ * EBeye files, counters, progress bar) is still executed by one single thread.
+ * <p>
+ * A chunk is only handed to the workers once there is room for it, so at most {@link #getMaxInFlight()} chunks are
+ * queued, being built or waiting for their turn at the same time, whatever the order the workers finish them in.
+ */
+class DocumentPipeline {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final Chunk POISON = new Chunk(-1, Collections.emptyList());
+
+    private final Function<Long, DocumentAndImport> builder;
+    private final Consumer<List<Long>> prefetch;
+    private final int threads;
+    private final int chunkSize;
+    private final int queueSize;
+    private final int maxInFlight;
+    // Held (read) by the workers while building a chunk, (write) by whenIdle
+    private final ReadWriteLock building = new ReentrantReadWriteLock(true);
+
+    DocumentPipeline(Function<Long, DocumentAndImport> builder, int threads, int chunkSize) {
+        this(builder, chunk -> {}, threads, chunkSize);
+    }
+
+    /**
+     * @param builder   creates the document of a given dbId. It is invoked concurrently.
+     * @param prefetch  invoked by the worker with the whole chunk before its documents are created
+     * @param threads   number of builder workers
+     * @param chunkSize number of dbIds handed to a worker at once
+     */
+    DocumentPipeline(Function<Long, DocumentAndImport> builder, Consumer<List<Long>> prefetch, int threads, int chunkSize) {
+        this.builder = builder;
+        this.prefetch = prefetch;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.queueSize = this.threads * 2;
+        // Both queues full, every worker busy and some room to reorder the chunks
+        this.maxInFlight = this.queueSize * 2 + this.threads * 2;
+    }
+
+    /**
+     * Builds the documents of the given dbIds and passes them, in the same order as they were given, to the writer.
+     *
+     * @param dbIds  the identifiers to be processed
+     * @param writer consumes the built documents. Always called from the calling thread.
+     */
+    void run(List<Long> dbIds, Writer writer) throws IndexerException {
+        final int totalChunks = (dbIds.size() + chunkSize - 1) / chunkSize;
+        if (totalChunks == 0) return;
+
+        BlockingQueue<Chunk> pending = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Chunk> built = new ArrayBlockingQueue<>(queueSize);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1, new WorkerThreadFactory());
+        try {
+            executor.submit(() -> produce(dbIds, totalChunks, pending, inFlight, failure));
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> build(pending, built, failure));
+            }
+
+            // Chunks may arrive out of order, keep them until it is their turn
+            Map<Integer, Chunk> arrived = new HashMap<>();
+            int next = 0;
+            while (next < totalChunks) {
+                Chunk chunk = arrived.remove(next);
+                if (chunk == null) {
+                    Chunk received = built.poll(1, TimeUnit.SECONDS);
+                    if (received != null) {
+                        arrived.put(received.index, received);
+                    } else if (failure.get() != null) {
+                        throw new IndexerException("A document builder worker has failed", failure.get());
+                    }
+                    continue;
+                }
+                for (Result result : chunk.results) {
+                    writer.write(result);
+                }
+                inFlight.release();
+                next++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexerException("Interrupted while waiting for documents to be built", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the given action while none of the workers is building a chunk. The workers wait for it before building
+     * the next ones. Meant for the writer, e.g. to clear a cache the workers read from.
+     */
+    void whenIdle(Runnable action) {
+        building.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            building.writeLock().unlock();
+        }
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    private void produce(List<Long> dbIds, int totalChunks, BlockingQueue<Chunk> pending, Semaphore inFlight, AtomicReference<Throwable> failure) {
+        try {
+            for (int i = 0; i < totalChunks; i++) {
+                // The chunks written release their permit, the oldest one is always in flight so this cannot deadlock
+                inFlight.acquire();
+                int from = i * chunkSize;
+                pending.put(new Chunk(i, dbIds.subList(from, Math.min(from + chunkSize, dbIds.size()))));
+            }
+            for (int i = 0; i < threads; i++) {
+                pending.put(POISON);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    private void build(BlockingQueue<Chunk> pending, BlockingQueue<Chunk> built, AtomicReference<Throwable> failure) {
+        try {
+            Chunk chunk;
+            while ((chunk = pending.take()) != POISON) {
+                building.readLock().lockInterruptibly();
+                try {
+                    try {
+                        prefetch.accept(chunk.dbIds);
+                    } catch (Exception e) {
+                        logger.error("Could not prefetch the data of chunk " + chunk.index, e);
+                    }
+                    for (Long dbId : chunk.dbIds) {
+                        try {
+                            chunk.results.add(new Result(dbId, builder.apply(dbId), null));
+                        } catch (Exception e) {
+                            chunk.results.add(new Result(dbId, null, e));
+                        }
+                    }
+                } finally {
+                    building.readLock().unlock();
+                }
+                // Not holding the lock, the writer may be waiting in whenIdle instead of taking the chunks
+                built.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            logger.error("Document builder worker has died", t);
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    /**
+     * Writer stage of the pipeline, receives the documents in order.
+     */
+    interface Writer {
+        void write(Result result) throws IndexerException;
+    }
+
+    static class Result {
+        final Long dbId;
+        final DocumentAndImport documentAndImport;
+        final Exception error;
+
+        Result(Long dbId, DocumentAndImport documentAndImport, Exception error) {
+            this.dbId = dbId;
+            this.documentAndImport = documentAndImport;
+            this.error = error;
+        }
+    }
+
+    private static class Chunk {
+        final int index;
+        final List<Long> dbIds;
+        final List<Result> results;
+
+        Chunk(int index, List<Long> dbIds) {
+            this.index = index;
+            this.dbIds = dbIds;
+            this.results = new ArrayList<>(dbIds.size());
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "document-builder-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.tools.indexer.model.SpeciesResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Species of the ReactionLikeEvents where PhysicalEntities and ReferenceEntities take part.
+ * <p>
+ * Instead of traversing the graph for every document, the closure is computed once per species
+ * with a couple of aggregate queries and kept in memory. Most of the entities share the same
+ * combination of species, so the sets are shared across entries.
+ * <p>
+ * If any of the queries fails, the part of the cache it belongs to is not used at all (a partial closure would
+ * silently miss species) and those species are queried per document instead.
+ */
+@Service
+class FireworksSpeciesCache {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    // Rough size of a HashMap entry holding a Long key (node + boxed key + table slot)
+    private static final long ENTRY_BYTES = 56;
+
+    private static final String PARTICIPANT_RELATIONSHIPS = "regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output|proteinMarker|RNAMarker";
+
+    //language=cypher
+    private static final String SIMPLE_ENTITY_SPECIES = "" +
+            "MATCH (n)<-[:" + PARTICIPANT_RELATIONSHIPS + "|hasModifiedResidue|modification*]-(:ReactionLikeEvent)-[:species]->(s:Species) " +
+            "WHERE ((n:SimpleEntity) OR (n:Drug)) ";
+
+    //language=cypher
+    private static final String PHYSICAL_ENTITY_SPECIES = "" +
+            "MATCH (s:Species)<-[:species]-(rle:ReactionLikeEvent), " +
+            "      (rle)-[:" + PARTICIPANT_RELATIONSHIPS + "*]->(pe:PhysicalEntity) ";
+
+    //language=cypher
+    private static final String REFERENCE_ENTITY_SPECIES = "" +
+            "MATCH (s:Species)<-[:species]-(rle:ReactionLikeEvent), " +
+            "      (rle)-[:" + PARTICIPANT_RELATIONSHIPS + "*]->()-[:referenceEntity]->(re:ReferenceEntity) ";
+
+    private AdvancedDatabaseObjectService advancedDatabaseObjectService;
+
+    private final Map<Long, Set<String>> simpleEntitiesAndDrugSpecies = new HashMap<>();
+    private final Map<Long, Set<String>> reactionSpecies = new HashMap<>();
+    private volatile boolean loaded = false;
+    private volatile boolean simpleEntitiesCached = false;
+    private volatile boolean reactionsCached = false;
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Loads the species of all SimpleEntities, Drugs, PhysicalEntities and ReferenceEntities.
+     * It is safe to call it more than once, the queries are only executed the first time.
+     */
+    synchronized void load() {
+        if (loaded) return;
+        long start = System.currentTimeMillis();
+        cacheSimpleEntityAndDrugSpecies();
+        cacheReactionSpecies();
+        loaded = true;
+        logger.info("Fireworks species have been cached in " + (System.currentTimeMillis() - start) + "ms. " + getFootprint());
+    }
+
+    /**
+     * Logs how many documents had to query their species because the cache could not be loaded
+     */
+    void report() {
+        if (fallbacks.get() > 0) logger.info("Fireworks species queried per document " + fallbacks.get() + " times");
+    }
+
+    /**
+     * @return species of the ReactionLikeEvents a SimpleEntity or Drug takes part in. Empty if none.
+     */
+    Set<String> getSimpleEntityOrDrugSpecies(Long dbId) {
+        if (!loaded) load();
+        if (!simpleEntitiesCached) return query(SIMPLE_ENTITY_SPECIES + "AND n.dbId = $dbId RETURN DISTINCT s.displayName", dbId);
+        return simpleEntitiesAndDrugSpecies.getOrDefault(dbId, Collections.emptySet());
+    }
+
+    /**
+     * @return species of the ReactionLikeEvents a PhysicalEntity or ReferenceEntity takes part in. Empty if none.
+     */
+    Set<String> getReactionSpecies(Long dbId) {
+        if (!loaded) load();
+        if (!reactionsCached) {
+            return query("" +
+                    PHYSICAL_ENTITY_SPECIES + "WHERE pe.dbId = $dbId RETURN DISTINCT s.displayName AS species " +
+                    "UNION " +
+                    REFERENCE_ENTITY_SPECIES + "WHERE re.dbId = $dbId RETURN DISTINCT s.displayName AS species", dbId);
+        }
+        return reactionSpecies.getOrDefault(dbId, Collections.emptySet());
+    }
+
+    private Set<String> query(String query, Long dbId) {
+        fallbacks.incrementAndGet();
+        try {
+            return new HashSet<>(advancedDatabaseObjectService.getCustomQueryResults(String.class, query, Map.of("dbId", dbId)));
+        } catch (CustomQueryException e) {
+            logger.error("Failed to query the fireworks species of {}", dbId);
+            return Collections.emptySet();
+        }
+    }
+
+    private void cacheSimpleEntityAndDrugSpecies() {
+        //language=cypher
+        String query = "" +
+                SIMPLE_ENTITY_SPECIES +
+                "WITH n, collect(DISTINCT s.displayName) AS species " +
+                "RETURN n.dbId AS dbId, species;";
+        Map<Set<String>, Set<String>> shared = new HashMap<>();
+        try {
+            Collection<SpeciesResult> speciesResultList = advancedDatabaseObjectService.getCustomQueryResults(SpeciesResult.class, query);
+            for (SpeciesResult speciesResult : speciesResultList) {
+                Set<String> species = Set.copyOf(speciesResult.getSpecies());
+                simpleEntitiesAndDrugSpecies.put(speciesResult.getDbId(), shared.computeIfAbsent(species, s -> s));
+            }
+            simpleEntitiesCached = true;
+            logger.info("Caching SimpleEntity Species is done");
+        } catch (CustomQueryException e) {
+            logger.error("Could not cache the fireworks species of SimpleEntities and Drugs, they will be queried per document", e);
+            simpleEntitiesAndDrugSpecies.clear();
+        }
+    }
+
+    /**
+     * One query per species and entity kind, instead of one per document.
+     */
+    private void cacheReactionSpecies() {
+        //language=cypher
+        String speciesQuery = "" +
+                "MATCH (s:Species)<-[:species]-(:ReactionLikeEvent) " +
+                "RETURN DISTINCT s.displayName";
+        String physicalEntityQuery = PHYSICAL_ENTITY_SPECIES + "WHERE s.displayName = $species RETURN DISTINCT pe.dbId";
+        String referenceEntityQuery = REFERENCE_ENTITY_SPECIES + "WHERE s.displayName = $species RETURN DISTINCT re.dbId";
+
+        Map<Long, Set<String>> closure = new HashMap<>();
+        try {
+            Collection<String> allSpecies = advancedDatabaseObjectService.getCustomQueryResults(String.class, speciesQuery);
+            for (String species : allSpecies) {
+                Map<String, Object> params = Map.of("species", species);
+                for (Long dbId : advancedDatabaseObjectService.getCustomQueryResults(Long.class, physicalEntityQuery, params)) {
+                    closure.computeIfAbsent(dbId, k -> new HashSet<>(2)).add(species);
+                }
+                for (Long dbId : advancedDatabaseObjectService.getCustomQueryResults(Long.class, referenceEntityQuery, params)) {
+                    closure.computeIfAbsent(dbId, k -> new HashSet<>(2)).add(species);
+                }
+                logger.info("Fireworks species for " + species + " have been cached");
+            }
+        } catch (CustomQueryException e) {
+            // The species queried so far are only part of the closure
+            logger.error("Could not cache the fireworks species of PhysicalEntities and ReferenceEntities, they will be queried per document", e);
+            return;
+        }
+
+        // Swap the working sets by immutable shared ones
+        Map<Set<String>, Set<String>> shared = new HashMap<>();
+        closure.forEach((dbId, species) -> reactionSpecies.put(dbId, shared.computeIfAbsent(Set.copyOf(species), s -> s)));
+        reactionsCached = true;
+    }
+
+    private String getFootprint() {
+        Set<Set<String>> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(simpleEntitiesAndDrugSpecies.values());
+        distinct.addAll(reactionSpecies.values());
+        long setBytes = distinct.stream().mapToLong(s -> 16 + 8L * s.size()).sum();
+        long bytes = (simpleEntitiesAndDrugSpecies.size() + reactionSpecies.size()) * ENTRY_BYTES + setBytes;
+        return String.format("%d SimpleEntities/Drugs, %d PhysicalEntities/ReferenceEntities, %d distinct species combinations, ~%.1f MB",
+                simpleEntitiesAndDrugSpecies.size(), reactionSpecies.size(), distinct.size(), bytes / (1024.0 * 1024.0));
+    }
+
+    @Autowired
+    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
+    }
+}
@@ -2,13 +2,18 @@ package org.reactome.server.tools.indexer.impl;
 
 import lombok.NoArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
 import org.reactome.server.graph.domain.model.*;
-import org.reactome.server.graph.domain.result.PersonAuthorReviewer;
-import org.reactome.server.graph.exception.CustomQueryException;
 import org.reactome.server.graph.service.*;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.reactome.server.tools.indexer.model.DocumentAndImport;
 import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.model.InteractorRow;
+import org.reactome.server.tools.indexer.model.PersonRow;
+import org.reactome.server.tools.indexer.util.DocumentFingerprints;
+import org.reactome.server.tools.indexer.util.SolrDocumentBinder;
+import org.reactome.server.tools.indexer.util.StringPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,11 +22,13 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.reactome.server.tools.indexer.util.SolrUtility.checkErrors;
 import static org.reactome.server.tools.indexer.util.SolrUtility.cleanSolrIndex;
-import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
 
 /**
  * This class is responsible for establishing connection to Solr
@@ -45,21 +52,44 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
 
     private SchemaService schemaService;
     private AdvancedDatabaseObjectService advancedDatabaseObjectService;
-    private PersonService personService;
+    private PersonExtractor personExtractor;
 
     // Creating SolR Document querying the Graph in Transactional execution
     private DocumentBuilder documentBuilder;
     private InteractorDocumentBuilder interactorDocumentBuilder;
     private PersonDocumentBuilder personDocumentBuilder;
+    private InteractorExtractor interactorExtractor;
 
-    private Marshaller marshaller;
-    private Marshaller covidMarshaller;
+    private AsyncMarshaller marshaller;
+    private AsyncMarshaller covidMarshaller;
 
     private Boolean ebeyeXml = false;
     private Boolean ebeyeCovidXml = false;
+    private boolean ebeyeGzip = false;
     private int releaseNumber;
     private int covidEntriesCount;
 
+    private int builderThreads = 1;
+    private int chunkSize = 100;
+
+    // Number of documents sent to SolR at once
+    private static final int ADD_INTERVAL = 1000;
+
+    private static final int STAGE_PHYSICAL_ENTITIES = 0;
+    private static final int STAGE_EVENTS = 1;
+    private static final int STAGE_REFERENCE_ENTITIES = 2;
+    private static final int STAGE_INTERACTORS = 3;
+    private static final int STAGE_PEOPLE = 4;
+
+    // Progress saved after every batch, so a run that did not finish can be resumed
+    private File checkpointFile;
+    private boolean resume = false;
+    private Checkpoint checkpoint;
+
+    // Incremental mode, only documents that changed since the previous run are sent to SolR
+    private DocumentFingerprints fingerprints;
+    private int unchangedCount;
+
     public int index() throws IndexerException {
         long start = System.currentTimeMillis();
         int entriesCount = 0;
@@ -68,36 +98,79 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         queryReleaseNumber();
 
         try {
-            initialiseXmlOutputFiles();
+            Checkpoint resumeFrom = resume && checkpointFile != null ? Checkpoint.load(checkpointFile) : null;
+            checkpoint = checkpointFile != null ? new Checkpoint(checkpointFile) : null;
+            int stage = STAGE_PHYSICAL_ENTITIES;
+            int position = 0;
+            if (resumeFrom != null) {
+                logger.info("Resuming the previous run from " + resumeFrom);
+                stage = resumeFrom.stage;
+                position = resumeFrom.position;
+                entriesCount = resumeFrom.entriesCount;
+                covidEntriesCount = resumeFrom.covidEntriesCount;
+            } else if (resume) {
+                logger.info("There is no checkpoint to resume from, starting from scratch");
+            }
+
+            initialiseXmlOutputFiles(resumeFrom);
 
-            cleanSolrIndex(solrCollection, solrClient);
+            if (resumeFrom != null) {
+                logger.info("Resuming, the SolR collection is not cleaned");
+            } else if (fingerprints == null || fingerprints.isEmpty()) {
+                cleanSolrIndex(solrCollection, solrClient);
+            } else {
+                logger.info("Incremental indexing, only new or changed documents are sent to SolR");
+            }
 //            cleanSolrIndex(solrCollection, solrClient, "isReferenceSummary:true");
 
-            entriesCount += indexBySchemaClass(PhysicalEntity.class, entriesCount);
-            commitSolrServer(solrCollection, solrClient);
-            cleanNeo4jCache();
+            logger.info("Preloading caches shared by all documents");
+            documentBuilder.preload();
+
+            if (stage <= STAGE_PHYSICAL_ENTITIES) {
+                entriesCount += indexBySchemaClass(PhysicalEntity.class, STAGE_PHYSICAL_ENTITIES, stage == STAGE_PHYSICAL_ENTITIES ? position : 0, entriesCount, true);
+                saveCheckpoint(STAGE_EVENTS, 0, entriesCount);
+                cleanNeo4jCacheAfterStage();
+            }
 
-            entriesCount += indexBySchemaClass(Event.class, entriesCount);
-            commitSolrServer(solrCollection, solrClient);
-            cleanNeo4jCache();
+            if (stage <= STAGE_EVENTS) {
+                entriesCount += indexBySchemaClass(Event.class, STAGE_EVENTS, stage == STAGE_EVENTS ? position : 0, entriesCount, true);
+                cleanNeo4jCacheAfterStage();
 
-            finaliseXmlOutputFiles(entriesCount, covidEntriesCount);
+                finaliseXmlOutputFiles(entriesCount, covidEntriesCount);
+                saveCheckpoint(STAGE_REFERENCE_ENTITIES, 0, entriesCount);
+            }
 
-            entriesCount += indexBySchemaClass(ReferenceEntity.class, entriesCount, false);
-            commitSolrServer(solrCollection, solrClient);
-            cleanNeo4jCache();
+            if (stage <= STAGE_REFERENCE_ENTITIES) {
+                entriesCount += indexBySchemaClass(ReferenceEntity.class, STAGE_REFERENCE_ENTITIES, stage == STAGE_REFERENCE_ENTITIES ? position : 0, entriesCount, false);
+                saveCheckpoint(STAGE_INTERACTORS, 0, entriesCount);
+                cleanNeo4jCacheAfterStage();
+            }
 
-            logger.info("Started importing Interactors data to SolR");
-            entriesCount += indexInteractors();
-            commitSolrServer(solrCollection, solrClient);
-            logger.info("Entries total: " + entriesCount);
-            cleanNeo4jCache();
+            if (stage <= STAGE_INTERACTORS) {
+                logger.info("Started importing Interactors data to SolR");
+                entriesCount += indexInteractors();
+                logger.info("Entries total: " + entriesCount);
+                saveCheckpoint(STAGE_PEOPLE, 0, entriesCount);
+                cleanNeo4jCacheAfterStage();
+            }
 
             logger.info("Started importing Person records to SolR");
             entriesCount += indexPeople();
-            commitSolrServer(solrCollection, solrClient);
             logger.info("Entries total: " + entriesCount);
-            cleanNeo4jCache();
+            cleanNeo4jCacheAfterStage();
+
+            // The fingerprints of the documents sent before resuming are lost, the previous ones are kept
+            if (resumeFrom == null) deleteRemovedDocuments();
+            commitPending();
+            if (fingerprints != null && resumeFrom == null) {
+                fingerprints.save();
+                logger.info(unchangedCount + " documents have not changed since the previous run");
+            }
+            if (checkpoint != null) checkpoint.delete();
+
+            documentBuilder.report();
+            interactorDocumentBuilder.report();
+            StringPool.report();
 
             long end = System.currentTimeMillis() - start;
             logger.info("Full indexing took " + end + " .ms");
@@ -112,22 +185,41 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         }
     }
 
-    private void initialiseXmlOutputFiles() throws IndexerException {
+    /**
+     * @param resumeFrom checkpoint of the run being resumed, null to start new files
+     */
+    private void initialiseXmlOutputFiles(Checkpoint resumeFrom) throws IndexerException {
+        // The files were completed before the checkpoint
+        if (resumeFrom != null && resumeFrom.stage > STAGE_EVENTS) return;
+
         if (ebeyeXml) {
-            marshaller = new Marshaller(new File("ebeye.xml"), EBEYE_NAME, EBEYE_DESCRIPTION);
-            marshaller.writeHeader(releaseNumber);
+            if (resumeFrom != null) {
+                marshaller = new AsyncMarshaller(new Marshaller(getXmlFile("ebeye.xml"), EBEYE_NAME, EBEYE_DESCRIPTION, resumeFrom.ebeyeOffset), "ebeye.xml");
+            } else {
+                marshaller = new AsyncMarshaller(new Marshaller(getXmlFile("ebeye.xml"), EBEYE_NAME, EBEYE_DESCRIPTION), "ebeye.xml");
+                marshaller.writeHeader(releaseNumber);
+            }
         }
 
         if (ebeyeCovidXml) {
-            covidMarshaller = new Marshaller(new File("ebeyecovid.xml"), EBEYE_NAME, EBEYE_DESCRIPTION);
-            covidMarshaller.writeHeader(releaseNumber);
+            if (resumeFrom != null) {
+                covidMarshaller = new AsyncMarshaller(new Marshaller(getXmlFile("ebeyecovid.xml"), EBEYE_NAME, EBEYE_DESCRIPTION, resumeFrom.ebeyeCovidOffset), "ebeyecovid.xml");
+            } else {
+                covidMarshaller = new AsyncMarshaller(new Marshaller(getXmlFile("ebeyecovid.xml"), EBEYE_NAME, EBEYE_DESCRIPTION), "ebeyecovid.xml");
+                covidMarshaller.writeHeader(releaseNumber);
+            }
         }
     }
 
+    private File getXmlFile(String name) {
+        return new File(ebeyeGzip ? name + ".gz" : name);
+    }
+
     private void finaliseXmlOutputFiles(int entriesCount, int covidEntriesCount) {
         if (ebeyeXml) {
             try {
                 marshaller.writeFooter(entriesCount);
+                marshaller.report();
             } catch (IndexerException e) {
                 e.printStackTrace();
             }
@@ -136,6 +228,7 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         if (ebeyeCovidXml) {
             try {
                 covidMarshaller.writeFooter(covidEntriesCount);
+                covidMarshaller.report();
             } catch (IndexerException e) {
                 e.printStackTrace();
             }
@@ -143,29 +236,95 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
     }
 
 
-    private int indexBySchemaClass(Class<? extends DatabaseObject> clazz, int previousCount) throws IndexerException {
-        return indexBySchemaClass(clazz, previousCount, true);
-    }
-
     /**
-     * @param clazz class to be Indexed
+     * @param clazz         class to be Indexed
+     * @param stage         stage of the run, kept in the checkpoints
+     * @param startPosition number of dbIds (sorted) already indexed by a previous run
      * @return total of indexed items
      */
-    private int indexBySchemaClass(Class<? extends DatabaseObject> clazz, int previousCount, boolean includeEBEYE) throws IndexerException {
+    private int indexBySchemaClass(Class<? extends DatabaseObject> clazz, int stage, int startPosition, int previousCount, boolean includeEBEYE) throws IndexerException {
         long start = System.currentTimeMillis();
 
         logger.info("Getting all simple objects of class " + clazz.getSimpleName());
-        Collection<Long> allOfGivenClass = schemaService.getDbIdsByClass(clazz);
+        List<Long> allOfGivenClass = new ArrayList<>(schemaService.getDbIdsByClass(clazz));
         logger.info("[" + allOfGivenClass.size() + "] " + clazz.getSimpleName());
+        // Stable order, so the position in a checkpoint refers to the same dbIds when resuming
+        Collections.sort(allOfGivenClass);
+        if (startPosition > 0) logger.info("Skipping the first " + startPosition + " " + clazz.getSimpleName() + " indexed by the previous run");
 
-        final int addInterval = 1000;
-        int numberOfDocuments = 0;
-        int count = 0;
-        List<IndexDocument> allDocuments = new ArrayList<>();
-        List<Long> missingDocuments = new ArrayList<>();
-        for (Long dbId : allOfGivenClass) {
+        DocumentPipeline pipeline = new DocumentPipeline(documentBuilder::createSolrDocument, chunk -> documentBuilder.prefetch(chunk, clazz), builderThreads, chunkSize);
+        SchemaClassWriter writer = new SchemaClassWriter(clazz, stage, startPosition, previousCount, includeEBEYE, pipeline);
+        pipeline.run(allOfGivenClass.subList(Math.min(startPosition, allOfGivenClass.size()), allOfGivenClass.size()), writer);
+
+        // Add to Solr the remaining documents
+        if (!writer.allDocuments.isEmpty()) {
+            updateProgressBar((int) total);
+            addDocumentsToSolrServer(writer.allDocuments);
+        }
+
+        long end = System.currentTimeMillis() - start;
+        logger.info("Elapsed time for " + clazz.getSimpleName() + " is " + end + "ms.");
+
+        if (!writer.missingDocuments.isEmpty())
+            logger.info("\nMissing documents for:\n\t" + StringUtils.join(writer.missingDocuments, "\n\t"));
+
+        updateProgressBar(writer.count); // done
+
+        return writer.numberOfDocuments;
+    }
+
+    /**
+     * Writer stage of the {@link DocumentPipeline}. It runs on a single thread, so the batches sent to SolR,
+     * the EBeye files, the counters and the progress bar do not need any synchronisation.
+     */
+    private class SchemaClassWriter implements DocumentPipeline.Writer {
+        private final Class<? extends DatabaseObject> clazz;
+        private final int stage;
+        private final int startPosition;
+        private final int previousCount;
+        private final boolean includeEBEYE;
+        private final DocumentPipeline pipeline;
+
+        private final List<IndexDocument> allDocuments = new ArrayList<>();
+        private final List<Long> missingDocuments = new ArrayList<>();
+        private int numberOfDocuments = 0;
+        private int count = 0;
+        private int processed = 0;
+
+        SchemaClassWriter(Class<? extends DatabaseObject> clazz, int stage, int startPosition, int previousCount, boolean includeEBEYE, DocumentPipeline pipeline) {
+            this.clazz = clazz;
+            this.stage = stage;
+            this.startPosition = startPosition;
+            this.previousCount = previousCount;
+            this.includeEBEYE = includeEBEYE;
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void write(DocumentPipeline.Result result) throws IndexerException {
+            Long dbId = result.dbId;
+            processed++;
+            if (result.error != null) {
+                logger.error("An error occurred when trying to index " + clazz.getSimpleName() + " with dbId " + dbId, result.error);
+                missingDocuments.add(dbId);
+                keepFingerprint(dbId);
+            } else {
+                writeDocument(dbId, result.documentAndImport);
+            }
+            // Also when nothing has changed, so an incremental run resumes from here too
+            if (processed % ADD_INTERVAL == 0) {
+                if (!allDocuments.isEmpty()) {
+                    addDocumentsToSolrServer(allDocuments);
+                    allDocuments.clear();
+                    logger.info(numberOfDocuments + " " + clazz.getSimpleName() + " have now been added to SolR");
+                }
+                // The EBeye files are written as their buffers fill up, the checkpoint flushes them
+                saveCheckpoint(stage, startPosition + processed, previousCount + numberOfDocuments);
+            }
+        }
+
+        private void writeDocument(Long dbId, DocumentAndImport documentAndImport) {
             try {
-                DocumentAndImport documentAndImport = documentBuilder.createSolrDocument(dbId); // transactional
                 if (documentAndImport != null && documentAndImport.needsImport && documentAndImport.document != null) {
                     IndexDocument document = documentAndImport.document;
                     if (includeEBEYE) {
@@ -176,88 +335,65 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
                         }
                     }
 
-                    allDocuments.add(document);
+                    if (hasChanged(document)) allDocuments.add(document);
                 } else if (documentAndImport == null || documentAndImport.needsImport) {
                     missingDocuments.add(dbId);
                 }
 
                 numberOfDocuments++;
-                if (numberOfDocuments % addInterval == 0 && !allDocuments.isEmpty()) {
-                    addDocumentsToSolrServer(allDocuments);
-                    allDocuments.clear();
-
-                    closeXmlFiles();
-                    logger.info(numberOfDocuments + " " + clazz.getSimpleName() + " have now been added to SolR");
-                }
-
                 count = previousCount + numberOfDocuments;
                 if (count % 100 == 0) updateProgressBar(count);
-                if (numberOfDocuments % 10000 == 0) cleanNeo4jCache();
+                // The builder workers read through the same session cache, it is only cleared while none is building
+                if (cachePolicy.afterDocument()) pipeline.whenIdle(generalService::clearCache);
             } catch (Exception e) {
                 logger.error("An error occurred when trying to index " + clazz.getSimpleName() + " with dbId " + dbId, e);
                 missingDocuments.add(dbId);
-                e.printStackTrace();
+                keepFingerprint(dbId);
             }
         }
-
-        // Add to Solr the remaining documents
-        if (!allDocuments.isEmpty()) {
-            updateProgressBar((int) total);
-            addDocumentsToSolrServer(allDocuments);
-        }
-
-        long end = System.currentTimeMillis() - start;
-        logger.info("Elapsed time for " + clazz.getSimpleName() + " is " + end + "ms.");
-
-        if (!missingDocuments.isEmpty())
-            logger.info("\nMissing documents for:\n\t" + StringUtils.join(missingDocuments, "\n\t"));
-
-        updateProgressBar(count); // done
-
-        return numberOfDocuments;
     }
 
     /**
      * Save a document containing an interactor that IS NOT in Reactome and a List of Interactions
-     * with Reactome proteins
+     * with Reactome proteins. Interactors are streamed as flat rows, built and sent to SolR one chunk at a time.
      */
     private int indexInteractors() {
         logger.info("Start indexing interactors into Solr");
 
         int numberOfDocuments = 0;
-        List<IndexDocument> collection = new ArrayList<>();
+        List<IndexDocument> batch = new ArrayList<>(ADD_INTERVAL);
+        List<InteractorRow> chunk = new ArrayList<>(chunkSize);
 
         System.out.println("\n[Interactors] Started adding to SolR");
 
-        Collection<ReferenceEntity> interactors = getInteractors();
-
-        logger.info("Preparing SolR documents for Interactors [" + interactors.size() + "]");
-        total = interactors.size();
-        int preparingSolrDocuments = 0;
-        for (ReferenceEntity interactorRE : interactors) {
-            // Create index document based on interactor A and the summary based on Interactor B.
-            IndexDocument indexDocument = interactorDocumentBuilder.createInteractorSolrDocument(interactorRE);
-            collection.add(indexDocument);
-
-            numberOfDocuments++;
-
-            preparingSolrDocuments++;
-            if (preparingSolrDocuments % 1000 == 0) {
-                logger.info("  >> preparing interactors SolR Documents [" + preparingSolrDocuments + "]");
-            }
-            if (preparingSolrDocuments % 100 == 0) {
-                updateProgressBar(preparingSolrDocuments);
+        logger.info("Preparing SolR documents for Interactors");
+        // The total is unknown while streaming, hence the counter instead of the progress bar
+        try (Stream<InteractorRow> rows = interactorExtractor.stream()) {
+            Iterator<InteractorRow> it = rows.iterator();
+            while (it.hasNext()) {
+                chunk.add(it.next());
+                if (chunk.size() < chunkSize && it.hasNext()) continue;
+
+                interactorDocumentBuilder.prefetch(chunk);
+                for (InteractorRow interactor : chunk) {
+                    // Create index document based on interactor A and the summary based on Interactor B.
+                    IndexDocument indexDocument = interactorDocumentBuilder.createInteractorSolrDocument(interactor);
+                    if (hasChanged(indexDocument)) batch.add(indexDocument);
+                    numberOfDocuments++;
+                    if (batch.size() >= ADD_INTERVAL) flush(batch);
+                    if (numberOfDocuments % 1000 == 0) {
+                        logger.info("  >> preparing interactors SolR Documents [" + numberOfDocuments + "]");
+                        System.out.print("\r  " + numberOfDocuments + " interactors");
+                    }
+                    cleanNeo4jCache();
+                }
+                chunk.clear();
             }
         }
-
-        logger.info("  >> preparing interactors SolR Documents [" + preparingSolrDocuments + "]");
-
-        // Save the indexDocument into Solr.
-        addDocumentsToSolrServer(collection);
+        flush(batch);
 
         logger.info(numberOfDocuments + " Interactor(s) have now been added to SolR");
-
-        updateProgressBar(preparingSolrDocuments);
+        System.out.println("\r  " + numberOfDocuments + " interactors");
 
         return numberOfDocuments;
     }
@@ -266,55 +402,85 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         logger.info("Start indexing people into Solr");
 
         int numberOfDocuments = 0;
-        List<IndexDocument> collection = new ArrayList<>();
+        List<IndexDocument> batch = new ArrayList<>(ADD_INTERVAL);
 
         System.out.println("\n[People] Started adding to SolR");
 
-        Collection<PersonAuthorReviewer> personAuthorReviewers = personService.getAuthorsReviewers();
-
-        logger.info("Preparing SolR documents for people [" + personAuthorReviewers.size() + "]");
-        total = personAuthorReviewers.size();
-        int preparingSolrDocuments = 0;
-        for (PersonAuthorReviewer par : personAuthorReviewers) {
-            IndexDocument indexDocument = personDocumentBuilder.createPersonSolrDocument(par);
-            collection.add(indexDocument);
-            numberOfDocuments++;
-            preparingSolrDocuments++;
-            if (preparingSolrDocuments % 100 == 0) {
-                updateProgressBar(preparingSolrDocuments);
+        logger.info("Preparing SolR documents for people");
+        // The total is unknown while streaming, hence the counter instead of the progress bar
+        try (Stream<PersonRow> people = personExtractor.stream()) {
+            Iterator<PersonRow> it = people.iterator();
+            while (it.hasNext()) {
+                IndexDocument indexDocument = personDocumentBuilder.createPersonSolrDocument(it.next());
+                if (hasChanged(indexDocument)) batch.add(indexDocument);
+                numberOfDocuments++;
+                if (batch.size() >= ADD_INTERVAL) flush(batch);
+                if (numberOfDocuments % 100 == 0) {
+                    System.out.print("\r  " + numberOfDocuments + " people");
+                }
             }
         }
-        logger.info("  >> preparing person SolR Documents [" + preparingSolrDocuments + "]");
-        // Save the indexDocument into Solr.
-        addDocumentsToSolrServer(collection);
+        flush(batch);
         logger.info(numberOfDocuments + " people have now been added to SolR");
-        updateProgressBar(preparingSolrDocuments);
+        System.out.println("\r  " + numberOfDocuments + " people");
         return numberOfDocuments;
     }
 
+    @Override
+    protected SolrInputDocument toSolrInputDocument(IndexDocument document) {
+        return SolrDocumentBinder.toSolrInputDocument(document);
+    }
+
     /**
-     * Interactors (ReferenceEntities) that ARE NOT in Reactome but
-     * interact with proteins/chemicals that ARE in Reactome
+     * Sends the batch to SolR and empties it
+     */
+    private void flush(List<IndexDocument> batch) {
+        if (batch.isEmpty()) return;
+        addDocumentsToSolrServer(batch);
+        batch.clear();
+    }
+
+    /**
+     * Records the fingerprint of the document.
      *
-     * @return interactor
+     * @return true if the document has to be sent to SolR, always in a full indexing
      */
-    private Collection<ReferenceEntity> getInteractors() {
-        Collection<ReferenceEntity> rtn;
-        //language=Cypher
-        String query = "" +
-                "MATCH (in:ReferenceEntity)<-[:interactor]-(:Interaction)-[:interactor]->(re:ReferenceEntity) " +
-                "WHERE (:ReactionLikeEvent)-[:input|output|catalystActivity|physicalEntity|entityFunctionalStatus|diseaseEntity|regulatedBy|regulator|referenceEntity*]->(re) AND " +
-                "      NOT (:PhysicalEntity)-[:referenceEntity]->(in) " +
-                "RETURN DISTINCT in";
+    private boolean hasChanged(IndexDocument document) {
+        if (fingerprints == null) return true;
+        if (fingerprints.update(document.getDbId(), DocumentFingerprints.getContent(toSolrInputDocument(document)))) return true;
+        unchangedCount++;
+        return false;
+    }
 
+    /**
+     * SolR still has the previous version of the document (if any), it has to be sent again in the next run
+     */
+    @Override
+    protected void onRejected(SolrInputDocument document) {
+        if (fingerprints != null) fingerprints.reject(String.valueOf(document.getFieldValue("dbId")));
+    }
+
+    /**
+     * The document could not be built in this run, leave in SolR whatever was there
+     */
+    private void keepFingerprint(Long dbId) {
+        if (fingerprints != null) fingerprints.keep(dbId.toString());
+    }
+
+    /**
+     * Deletes from SolR the documents indexed in the previous run that are not present anymore
+     */
+    private void deleteRemovedDocuments() throws IndexerException {
+        if (fingerprints == null || fingerprints.isEmpty()) return;
+        List<String> removed = fingerprints.getRemoved();
+        logger.info("Deleting " + removed.size() + " documents not present anymore");
         try {
-            rtn = advancedDatabaseObjectService.getCustomQueryResults(ReferenceEntity.class, query, null);
-        } catch (CustomQueryException e) {
-            logger.error(e.getMessage(), e);
-            rtn = new ArrayList<>();
+            for (int i = 0; i < removed.size(); i += 1000) {
+                solrClient.deleteById(solrCollection, removed.subList(i, Math.min(i + 1000, removed.size())));
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("[" + solrCollection + "] Could not delete the documents not present anymore", e);
         }
-
-        return rtn;
     }
 
     /**
@@ -336,26 +502,27 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         }
     }
 
-    private void closeXmlFiles() {
-        if (ebeyeXml) {
-            try {
-                marshaller.flush();
-            } catch (IOException e) {
-                logger.error("An error occurred when trying to flush to XML", e);
-            }
-        }
-
-        if (ebeyeCovidXml) {
-            try {
-                covidMarshaller.flush();
-            } catch (IOException e) {
-                logger.error("An error occurred when trying to flush to XML", e);
-            }
+    /**
+     * Saves the progress, everything before this point has been sent to SolR and to the EBeye files
+     *
+     * @throws IndexerException if any update still queued by the SolR client fails, the checkpoint is not moved past it
+     */
+    private void saveCheckpoint(int stage, int position, int entriesCount) throws IndexerException {
+        if (checkpoint == null) return;
+        checkErrors(solrClient);
+        checkpoint.stage = stage;
+        checkpoint.position = position;
+        checkpoint.entriesCount = entriesCount;
+        checkpoint.covidEntriesCount = covidEntriesCount;
+        try {
+            checkpoint.ebeyeOffset = marshaller != null ? marshaller.position() : 0;
+            checkpoint.ebeyeCovidOffset = covidMarshaller != null ? covidMarshaller.position() : 0;
+            checkpoint.save();
+        } catch (IOException | IndexerException e) {
+            logger.error("Could not save the checkpoint", e);
         }
-
     }
 
-
     public Boolean getEbeyeXml() {
         return ebeyeXml;
     }
@@ -368,14 +535,56 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         this.ebeyeCovidXml = ebeyeCovidXml;
     }
 
+    /**
+     * @param ebeyeGzip true to compress the EBeye files on the fly (ebeye.xml.gz and ebeyecovid.xml.gz)
+     */
+    public void setEbeyeGzip(boolean ebeyeGzip) {
+        this.ebeyeGzip = ebeyeGzip;
+    }
+
+    /**
+     * @param builderThreads number of threads building documents concurrently
+     */
+    public void setBuilderThreads(int builderThreads) {
+        this.builderThreads = builderThreads;
+    }
+
+    /**
+     * @param chunkSize number of dbIds handed over to a builder thread at once
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param checkpointFile where the progress is saved after every batch sent to SolR
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @param resume true to carry on from the checkpoint left by a previous run, if any
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @param fingerprints fingerprints of the previous run. When set, only new or changed documents are indexed.
+     */
+    public void setFingerprints(DocumentFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
     @Autowired
     public void setSchemaService(SchemaService schemaService) {
         this.schemaService = schemaService;
     }
 
     @Autowired
-    public void setPersonService(PersonService personService) {
-        this.personService = personService;
+    public void setPersonExtractor(PersonExtractor personExtractor) {
+        this.personExtractor = personExtractor;
     }
 
     @Autowired
@@ -393,6 +602,11 @@ public class Indexer extends AbstractIndexer<IndexDocument> {
         this.interactorDocumentBuilder = interactorDocumentBuilder;
     }
 
+    @Autowired
+    public void setInteractorExtractor(InteractorExtractor interactorExtractor) {
+        this.interactorExtractor = interactorExtractor;
+    }
+
     @Autowired
     public void setPersonDocumentBuilder(PersonDocumentBuilder personDocumentBuilder) {
         this.personDocumentBuilder = personDocumentBuilder;
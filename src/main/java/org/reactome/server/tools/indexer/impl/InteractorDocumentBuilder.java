@@ -1,15 +1,13 @@
 package org.reactome.server.tools.indexer.impl;
 
 import org.apache.commons.lang3.StringUtils;
-import org.reactome.server.graph.domain.model.*;
-import org.reactome.server.graph.domain.result.DiagramOccurrences;
-import org.reactome.server.graph.service.InteractionsService;
+import org.reactome.server.tools.indexer.model.DiagramOccurrence;
 import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.model.InteractorRow;
+import org.reactome.server.tools.indexer.util.StringPool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -21,10 +19,32 @@ class InteractorDocumentBuilder {
 
     private static final String TYPE = "Interactor";
 
-    private InteractionsService interactionsService;
+    private InteractorPathwaysCache interactorPathwaysCache;
+    private DiagramOccurrencesCache diagramOccurrencesCache;
+
+    /**
+     * Loads in one go data needed by the documents of the given interactors. Subsequent calls to
+     * {@link #createInteractorSolrDocument(InteractorRow)} on the same thread will use it.
+     */
+    void prefetch(Collection<InteractorRow> interactors) {
+        diagramOccurrencesCache.prefetchInteractors(interactors.stream().map(InteractorRow::getMainIdentifier).collect(Collectors.toList()));
+        interactorPathwaysCache.prefetch(interactors.stream().collect(Collectors.groupingBy(
+                InteractorDocumentBuilder::getSpeciesName,
+                Collectors.mapping(InteractorRow::getMainIdentifier, Collectors.toList()))));
+    }
 
+    /**
+     * Logs how many lookups were served from the prefetched chunks
+     */
+    void report() {
+        interactorPathwaysCache.report();
+    }
 
-    IndexDocument createInteractorSolrDocument(ReferenceEntity interactor) {
+    /**
+     * Builds the document straight from the projected row, the only graph access left are the diagram
+     * occurrences (prefetched) and the lower level pathways.
+     */
+    IndexDocument createInteractorSolrDocument(InteractorRow interactor) {
         IndexDocument document = new IndexDocument();
         document.setDbId(interactor.getIdentifier()); // For interactors, dbId is the accession.
         document.setStId(interactor.getIdentifier()); // For interactors, stId is the accession.
@@ -33,8 +53,8 @@ class InteractorDocumentBuilder {
         document.setExactType(TYPE);
 
         document.setReferenceName(getReferenceName(interactor));
-        document.setReferenceGeneNames(getGeneName(interactor));
-        document.setReferenceSynonyms(getSecondaryIdentifier(interactor));
+        document.setReferenceGeneNames(interactor.getGeneNames());
+        document.setReferenceSynonyms(interactor.getSecondaryIdentifier() != null ? interactor.getSecondaryIdentifier() : new ArrayList<>());
 
         List<String> referenceIdentifiers = new ArrayList<>();
         referenceIdentifiers.add(interactor.getIdentifier());
@@ -42,12 +62,12 @@ class InteractorDocumentBuilder {
         document.setReferenceIdentifiers(referenceIdentifiers);
         document.setReferenceURL(interactor.getUrl());
 
-        document.setDatabaseName(interactor.getDatabaseName());
-        String speciesName = getSpeciesName(interactor);
-        document.setSpecies(Collections.singletonList(speciesName));
+        document.setDatabaseName(StringPool.DATABASE_NAME.get(interactor.getDatabaseName()));
+        String speciesName = StringPool.SPECIES.get(getSpeciesName(interactor));
+        document.setSpecies(StringPool.SPECIES.singleton(speciesName));
 
-        if (interactor instanceof ReferenceIsoform) {
-            String variantIdentifier = getVariantIdentifier(interactor);
+        if (interactor.isIsoform()) {
+            String variantIdentifier = interactor.getVariantIdentifier();
             if (variantIdentifier != null && !variantIdentifier.isEmpty()) {
                 // For interactors, dbId is the accession, if Isoform then get variantIdentifier
                 document.setDbId(variantIdentifier);
@@ -56,24 +76,23 @@ class InteractorDocumentBuilder {
             }
         }
 
-        setFireworksSpecies(document, interactor);
-        setLowerLevelPathways(document, interactor, speciesName);
-        setDiagramOccurrences(document, interactor);
+        // Regulation and Other Entities may not have (fireworks)species and solr won't be able to find them
+        // in the Fireworks (filter query fireworksSpecies)
+        document.setFireworksSpecies(StringPool.SPECIES.get(Collections.singleton(speciesName)));
+        setLowerLevelPathways(document, interactor.getMainIdentifier(), speciesName);
+        setDiagramOccurrences(document, interactor.getMainIdentifier());
 
         return document;
     }
 
-    private void setDiagramOccurrences(IndexDocument document, ReferenceEntity re) {
-        String identifier = getVariantIdentifier(re);
-        if (identifier == null || identifier.isEmpty()) identifier = re.getIdentifier();
-
-        Collection<DiagramOccurrences> dgoc = interactionsService.getDiagramOccurrences(identifier);
+    private void setDiagramOccurrences(IndexDocument document, String identifier) {
+        Collection<DiagramOccurrence> dgoc = diagramOccurrencesCache.getInteractorDiagramOccurrences(identifier);
         if (dgoc == null || dgoc.isEmpty()) return;
 
         List<String> diagrams = new ArrayList<>();
         List<String> occurrences = new ArrayList<>();
         //noinspection Duplicates
-        for (DiagramOccurrences diagramOccurrence : dgoc) {
+        for (DiagramOccurrence diagramOccurrence : dgoc) {
             diagrams.add(diagramOccurrence.getDiagramStId());
 
             String occurr = diagramOccurrence.getDiagramStId() + ":" + diagramOccurrence.isInDiagram();
@@ -93,109 +112,43 @@ class InteractorDocumentBuilder {
         document.setOccurrences(occurrences);
     }
 
-    private void setLowerLevelPathways(IndexDocument document, ReferenceEntity re, String speciesName) {
-        String identifier = getVariantIdentifier(re);
-        if (identifier == null || identifier.isEmpty()) identifier = re.getIdentifier();
-
-        Collection<Pathway> pathways = interactionsService.getLowerLevelPathways(identifier, speciesName);
-        if (pathways == null || pathways.isEmpty()) return;
-
-        document.setLlps(pathways.stream().map(DatabaseObject::getStId).collect(Collectors.toList()));
-    }
+    private void setLowerLevelPathways(IndexDocument document, String identifier, String speciesName) {
+        List<String> llps = interactorPathwaysCache.getLowerLevelPathways(identifier, speciesName);
+        if (llps.isEmpty()) return;
 
-    @SuppressWarnings("unchecked")
-    private List<String> getSecondaryIdentifier(DatabaseObject databaseObject) {
-        try {
-            return (List<String>) databaseObject.getClass().getMethod("getSecondaryIdentifier").invoke(databaseObject);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            // Nothing here
-        }
-        return new ArrayList<>();
+        document.setLlps(llps);
     }
 
-    @SuppressWarnings("unchecked")
-    private List<String> getGeneName(DatabaseObject databaseObject) {
-        try {
-            return (List<String>) databaseObject.getClass().getMethod("getGeneName").invoke(databaseObject);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            // Nothing here
-        }
-        return null;
+    static String getSpeciesName(InteractorRow interactor) {
+        return interactor.getSpecies() != null ? interactor.getSpecies() : StringPool.NO_SPECIES;
     }
 
-    private String getVariantIdentifier(DatabaseObject databaseObject) {
-        try {
-            // in cases where databaseObject is instanceof ReferenceIsoform, use variantIdentifier as the main identifier
-            return (String) databaseObject.getClass().getMethod("getVariantIdentifier").invoke(databaseObject);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            // Nothing here
-        }
-        return null;
-    }
-
-    private String getSpeciesName(DatabaseObject databaseObject) {
-        try {
-            return ((Species) databaseObject.getClass().getMethod("getSpecies").invoke(databaseObject)).getDisplayName();
-        } catch (NullPointerException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            // Nothing here
-        }
-        return "Entries without species";
-    }
-
-    private String getName(ReferenceEntity interactor) {
-        List<String> names = interactor.getName();
+    private String getName(InteractorRow interactor) {
+        List<String> names = interactor.getNames();
         if (names != null && !names.isEmpty()) return names.get(0);
 
-        if (interactor instanceof ReferenceSequence) {
-            List<String> geneName = ((ReferenceSequence) interactor).getGeneName();
-            if (geneName != null && !geneName.isEmpty()) return geneName.get(0);
-        }
+        List<String> geneName = interactor.getGeneNames();
+        if (geneName != null && !geneName.isEmpty()) return geneName.get(0);
 
-        if (interactor instanceof ReferenceIsoform) return ((ReferenceIsoform) interactor).getVariantIdentifier();
+        if (interactor.isIsoform()) return interactor.getVariantIdentifier();
 
         return interactor.getIdentifier();
     }
 
-    private String getReferenceName(ReferenceEntity interactor) {
-        List<String> names = interactor.getName();
+    private String getReferenceName(InteractorRow interactor) {
+        List<String> names = interactor.getNames();
         if (names != null && !names.isEmpty()) return names.get(0);
 
         return null;
     }
 
-    @SuppressWarnings("Duplicates")
-    private void setFireworksSpecies(IndexDocument document, ReferenceEntity interactor) {
-        Set<String> fireworksSpecies = new HashSet<>();
-        try {
-            Method getSpecies = interactor.getClass().getMethod("getSpecies");
-            Object species = getSpecies.invoke(interactor);
-            // some cases like DefinedSet it has species as an attribute but it does not have value in it.
-            if (species != null) {
-                if (species instanceof Collection) {
-                    //noinspection Convert2streamapi,unchecked
-                    for (Taxon t : (Collection<? extends Taxon>) species) {
-                        fireworksSpecies.add(t.getDisplayName());
-                    }
-                } else {
-                    Taxon t = (Taxon) species;
-                    fireworksSpecies.add(t.getDisplayName());
-                }
-            }
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-            //Nothing here
-        }
-
-        // Regulation and Other Entities may not have (fireworks)species and solr won't be able to find them
-        // in the Fireworks (filter query fireworksSpecies)
-        if (fireworksSpecies.isEmpty()) {
-            fireworksSpecies.add("Entries without species");
-        }
-
-        document.setFireworksSpecies(fireworksSpecies);
+    @Autowired
+    public void setInteractorPathwaysCache(InteractorPathwaysCache interactorPathwaysCache) {
+        this.interactorPathwaysCache = interactorPathwaysCache;
     }
 
     @Autowired
-    public void setInteractionsService(InteractionsService interactionsService) {
-        this.interactionsService = interactionsService;
+    public void setDiagramOccurrencesCache(DiagramOccurrencesCache diagramOccurrencesCache) {
+        this.diagramOccurrencesCache = diagramOccurrencesCache;
     }
 }
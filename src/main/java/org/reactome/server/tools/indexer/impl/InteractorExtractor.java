@@ -0,0 +1,66 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.reactome.server.tools.indexer.model.InteractorRow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Interactors (ReferenceEntities) that ARE NOT in Reactome but interact with proteins/chemicals that ARE in Reactome,
+ * as flat rows streamed by {@link CypherStream}, so the memory used does not depend on the number of interactors.
+ */
+@Service
+class InteractorExtractor {
+
+    //language=cypher
+    private static final String QUERY = "" +
+            "MATCH (in:ReferenceEntity)<-[:interactor]-(:Interaction)-[:interactor]->(re:ReferenceEntity) " +
+            "WHERE (:ReactionLikeEvent)-[:input|output|catalystActivity|physicalEntity|entityFunctionalStatus|diseaseEntity|regulatedBy|regulator|referenceEntity*]->(re) AND " +
+            "      NOT (:PhysicalEntity)-[:referenceEntity]->(in) " +
+            "WITH DISTINCT in " +
+            "OPTIONAL MATCH (in)-[:species]->(s:Species) " +
+            "RETURN in.dbId AS dbId, in.identifier AS identifier, in.variantIdentifier AS variantIdentifier, " +
+            "       (in:ReferenceIsoform) AS isoform, in.name AS names, in.geneName AS geneNames, " +
+            "       in.secondaryIdentifier AS secondaryIdentifier, s.displayName AS species, " +
+            "       in.databaseName AS databaseName, in.url AS url " +
+            "ORDER BY dbId";
+
+    private CypherStream cypherStream;
+
+    /**
+     * The stream holds a session open, close it once consumed (try-with-resources).
+     *
+     * @return the interactors sorted by dbId
+     */
+    Stream<InteractorRow> stream() {
+        return cypherStream.stream(QUERY, InteractorExtractor::toRow);
+    }
+
+    private static InteractorRow toRow(Record record) {
+        InteractorRow row = new InteractorRow();
+        row.setDbId(record.get("dbId").asLong());
+        row.setIdentifier(record.get("identifier").asString(null));
+        row.setVariantIdentifier(record.get("variantIdentifier").asString(null));
+        row.setIsoform(record.get("isoform").asBoolean(false));
+        row.setNames(strings(record.get("names")));
+        row.setGeneNames(strings(record.get("geneNames")));
+        row.setSecondaryIdentifier(strings(record.get("secondaryIdentifier")));
+        row.setSpecies(record.get("species").asString(null));
+        row.setDatabaseName(record.get("databaseName").asString(null));
+        row.setUrl(record.get("url").asString(null));
+        return row;
+    }
+
+    private static List<String> strings(Value value) {
+        return value.isNull() ? null : value.asList(Value::asString);
+    }
+
+    @Autowired
+    public void setCypherStream(CypherStream cypherStream) {
+        this.cypherStream = cypherStream;
+    }
+}
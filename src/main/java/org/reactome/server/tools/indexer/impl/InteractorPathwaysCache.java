@@ -0,0 +1,115 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.InteractionsService;
+import org.reactome.server.tools.indexer.model.InteractorPathways;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Lower level pathways of a whole chunk of interactors loaded with one query per species, instead of one
+ * {@link InteractionsService#getLowerLevelPathways(String, String)} call per interactor.
+ * <p>
+ * The cache is kept per thread and only holds one chunk at a time. The pathways are kept in the order the service
+ * returns them, as for the lower level pathways of the other documents. The query matches them as the service does,
+ * and InteractorPathwaysCacheTest checks the order is the same.
+ */
+@Service
+class InteractorPathwaysCache {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    //language=cypher
+    private static final String QUERY = "" +
+            "UNWIND $identifiers AS key " +
+            "MATCH (in:ReferenceEntity)<-[:interactor]-(:Interaction)-[:interactor]->(:ReferenceEntity)<-[:referenceEntity]-(pe:PhysicalEntity) " +
+            "WHERE in.variantIdentifier = key OR (in.variantIdentifier IS NULL AND in.identifier = key) " +
+            "WITH DISTINCT key, pe " +
+            "MATCH (:Species{displayName:$speciesName})<-[:species]-(p:Pathway)-[:hasEvent]->(:ReactionLikeEvent)-[:input|output|catalystActivity|physicalEntity|regulatedBy|regulator|hasComponent|hasMember|hasCandidate*]->(pe) " +
+            "WITH DISTINCT key, p " +
+            "RETURN key AS identifier, collect(p.stId) AS llps";
+
+    private AdvancedDatabaseObjectService advancedDatabaseObjectService;
+    private InteractionsService interactionsService;
+
+    private final ThreadLocal<Map<String, List<String>>> chunk = ThreadLocal.withInitial(HashMap::new);
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Loads the lower level pathways of the given interactors for the current thread, replacing the previous chunk.
+     *
+     * @param identifiersBySpecies interactor identifiers (or variantIdentifiers) grouped by species name
+     */
+    void prefetch(Map<String, List<String>> identifiersBySpecies) {
+        Map<String, List<String>> current = chunk.get();
+        current.clear();
+        for (Map.Entry<String, List<String>> entry : identifiersBySpecies.entrySet()) {
+            try {
+                Map<String, Object> params = new HashMap<>();
+                params.put("identifiers", entry.getValue());
+                params.put("speciesName", entry.getKey());
+                Collection<InteractorPathways> result = advancedDatabaseObjectService.getCustomQueryResults(InteractorPathways.class, QUERY, params);
+                queries.incrementAndGet();
+                entry.getValue().forEach(identifier -> current.put(key(identifier, entry.getKey()), Collections.emptyList()));
+                for (InteractorPathways row : result) {
+                    current.put(key(row.getIdentifier(), entry.getKey()), row.getLlps());
+                }
+                prefetched.addAndGet(entry.getValue().size());
+            } catch (CustomQueryException e) {
+                logger.error("Could not prefetch the lower level pathways of interactors in " + entry.getKey() + ", falling back to one query per interactor", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the chunk of the current thread
+     */
+    void clear() {
+        chunk.remove();
+    }
+
+    List<String> getLowerLevelPathways(String identifier, String speciesName) {
+        List<String> rtn = chunk.get().get(key(identifier, speciesName));
+        if (rtn == null) return getLowerLevelPathwaysFromService(identifier, speciesName);
+        served.incrementAndGet();
+        return rtn;
+    }
+
+    /**
+     * Logs how many lookups were served from the prefetched chunks
+     */
+    void report() {
+        logger.info(String.format("Interactor lower level pathways: %d prefetched in %d queries, %d lookups served from prefetch",
+                prefetched.get(), queries.get(), served.get()));
+    }
+
+    private List<String> getLowerLevelPathwaysFromService(String identifier, String speciesName) {
+        Collection<Pathway> pathways = interactionsService.getLowerLevelPathways(identifier, speciesName);
+        if (pathways == null) return Collections.emptyList();
+        return pathways.stream().map(DatabaseObject::getStId).collect(Collectors.toList());
+    }
+
+    private static String key(String identifier, String speciesName) {
+        return speciesName + '\t' + identifier;
+    }
+
+    @Autowired
+    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
+    }
+
+    @Autowired
+    public void setInteractionsService(InteractionsService interactionsService) {
+        this.interactionsService = interactionsService;
+    }
+}
@@ -1,16 +1,35 @@
 package org.reactome.server.tools.indexer.impl;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.reactome.server.tools.indexer.model.CrossReference;
 import org.reactome.server.tools.indexer.model.IndexDocument;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 /**
+ * Streaming writer of the EBeye XML files.
+ * <p>
+ * Entries are appended to a reusable char buffer, escaping the text in a single pass, and are only encoded and
+ * written to the file channel once the buffer reaches {@link #BUFFER_SIZE}. Files ending in .gz are compressed on
+ * the fly. Every call to {@link #position()} closes the current gzip member, so the file can be truncated at that
+ * point to resume (a gzip file is allowed to contain several members).
+ * <p>
  * Created by:
  *
  * @author Florian Korninger (florian.korninger@ebi.ac.uk)
@@ -20,267 +39,448 @@ class Marshaller {
 
     private static final String INDENT = "  ";
     private static final String NEW_LINE = "\n";
+    private static final String I = INDENT + INDENT;
+    private static final String II = INDENT + INDENT + INDENT;
+    private static final String III = INDENT + INDENT + INDENT + INDENT;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Pattern HTML_TAG = Pattern.compile("<.*?>");
+    private static final Pattern DB_NAME_BRACKETS = Pattern.compile("\\s*\\(.+\\)\\s*");
+    private static final Pattern DB_NAME_SEPARATOR = Pattern.compile("(/|\\s)");
 
     private final String name;
     private final String description;
+    private final File output;
+    private final boolean gzip;
 
-    private Writer writer;
+    private FileChannel channel;
+    private GZIPOutputStream gzipStream;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private char[] chars = new char[BUFFER_SIZE + BUFFER_SIZE / 4];
+    private int length = 0;
 
     Marshaller(File output, String name, String description) {
+        this(output, name, description, -1);
+    }
+
+    /**
+     * @param resumeAt length of the file written by a previous run to carry on from, the rest is discarded.
+     *                 A negative value starts a new file.
+     */
+    Marshaller(File output, String name, String description, long resumeAt) {
         this.name = name;
+        this.output = output;
         this.description = description;
 
         if (output == null) {
             throw new IllegalArgumentException("output file must not be null.");
         }
+        this.gzip = output.getName().endsWith(".gz");
 
+        // Same charset and replacement of unmappable chars as the FileWriter used before
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
 
-        if (!output.exists()) {
-            try {
-                //noinspection ResultOfMethodCallIgnored
-                output.createNewFile();
-            } catch (IOException e) {
-                throw new IllegalArgumentException("Could not create a new output file.", e);
+        try {
+            if (resumeAt >= 0) {
+                channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                channel.truncate(resumeAt);
+                channel.position(resumeAt);
+            } else {
+                channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
             }
+        } catch (IOException | SecurityException e) {
+            throw new IllegalArgumentException("Cannot write on " + output.getAbsolutePath(), e);
         }
+    }
 
-        if (!output.canWrite()) {
-            throw new IllegalArgumentException("Cannot write on " + output.getAbsolutePath());
+    /**
+     * Only formats entries, see {@link #formatEntry(IndexDocument)}
+     */
+    private Marshaller() {
+        this.name = null;
+        this.description = null;
+        this.output = null;
+        this.gzip = false;
+        this.encoder = null;
+    }
+
+    /**
+     * @return a Marshaller without any file, to format the entries on a different thread than the one writing them
+     */
+    static Marshaller formatter() {
+        return new Marshaller();
+    }
+
+    void writeHeader(int releaseNumber) throws IndexerException {
+        try {
+            append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>").append(NEW_LINE);
+            append("<database>").append(NEW_LINE);
+            append(INDENT).append("<name>").append(name).append("</name>").append(NEW_LINE);
+            append(INDENT).append("<description>").append(description).append("</description>").append(NEW_LINE);
+            append(INDENT).append("<release>").append(String.valueOf(releaseNumber)).append("</release>").append(NEW_LINE);
+            append(INDENT).append("<release_date>").append(getCurrentDate()).append("</release_date>").append(NEW_LINE);
+            append(INDENT).append("<entries>").append(NEW_LINE);
+            drainIfFull();
+        } catch (IOException e) {
+            throw new IndexerException(e);
         }
+    }
+
+    void writeEntry(IndexDocument document) throws IndexerException {
+        if (this.channel == null) return; // Avoid writing after closing the writer.
 
+        int mark = length;
         try {
-            this.writer = new BufferedWriter(new FileWriter(output));
+            appendEntry(document);
+            drainIfFull();
         } catch (IOException e) {
-            throw new IllegalArgumentException("Cannot write on " + output.getAbsolutePath(), e);
+            throw new IndexerException(e);
+        } catch (RuntimeException e) {
+            length = mark; // Half written entries are not kept
+            throw e;
         }
+    }
 
+    /**
+     * @return the entry as {@link #writeEntry(IndexDocument)} writes it
+     */
+    String formatEntry(IndexDocument document) {
+        length = 0;
+        try {
+            appendEntry(document);
+            return new String(chars, 0, length);
+        } finally {
+            length = 0;
+        }
     }
 
-    void writeHeader(int releaseNumber) throws IndexerException {
+    /**
+     * Writes an entry given by {@link #formatEntry(IndexDocument)}
+     */
+    void writeFormattedEntry(String entry) throws IndexerException {
+        if (this.channel == null) return; // Avoid writing after closing the writer.
         try {
-            writer.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + NEW_LINE);
-            writer.write("<database>" + NEW_LINE);
-            writer.write(INDENT + "<name>" + name + "</name>" + NEW_LINE);
-            writer.write(INDENT + "<description>" + description + "</description>" + NEW_LINE);
-            writer.write(INDENT + "<release>" + releaseNumber + "</release>" + NEW_LINE);
-            writer.write(INDENT + "<release_date>" + getCurrentDate() + "</release_date>" + NEW_LINE);
-            writer.write(INDENT + "<entries>" + NEW_LINE);
+            append(entry);
+            drainIfFull();
         } catch (IOException e) {
             throw new IndexerException(e);
         }
     }
 
-    void writeEntry(IndexDocument document) throws IndexerException {
-        if (this.writer == null) return; // Avoid writing after closing the writer.
-        final String i = INDENT + INDENT;
-        final String ii = INDENT + INDENT + INDENT;
-        final String iii = INDENT + INDENT + INDENT + INDENT;
+    private void appendEntry(IndexDocument document) {
+        append(I).append("<entry id=\"").append(String.valueOf(document.getDbId())).append("\">").append(NEW_LINE);
 
-        try {
-            writer.write(i + "<entry id=\"" + document.getDbId() + "\">" + NEW_LINE);
-
-            String escaped = StringEscapeUtils.escapeXml11(document.getName());
-            writer.write(ii + "<name>" + escaped + "</name>" + NEW_LINE);
-            if (document.getSummation() != null) {
-                String noHTMLString = document.getSummation().replaceAll("<.*?>", "");
-                String noHtmlAndEscaped = StringEscapeUtils.escapeXml11(noHTMLString);
-                writer.write(ii + "<description>" + noHtmlAndEscaped + "</description>" + NEW_LINE);
-            }
+        append(II).append("<name>").escape(document.getName()).append("</name>").append(NEW_LINE);
+        if (document.getSummation() != null) {
+            String noHTMLString = HTML_TAG.matcher(document.getSummation()).replaceAll("");
+            append(II).append("<description>").escape(noHTMLString).append("</description>").append(NEW_LINE);
+        }
 
-            writer.write(ii + "<cross_references>" + NEW_LINE);
+        append(II).append("<cross_references>").append(NEW_LINE);
 
-            if (document.getReferenceIdentifiers() != null) {
-                writeRef(document.getDatabaseName(), document.getReferenceIdentifiers().get(0), iii);
-            }
-            if (document.getTaxId() != null) {
-                for (String taxId : document.getTaxId()) {
-                    writeRef("TAXONOMY", taxId, iii);
-                }
+        if (document.getReferenceIdentifiers() != null) {
+            writeRef(document.getDatabaseName(), document.getReferenceIdentifiers().get(0));
+        }
+        if (document.getTaxId() != null) {
+            for (String taxId : document.getTaxId()) {
+                writeRef("TAXONOMY", taxId);
             }
-            if (document.getCompartmentAccession() != null && !document.getCompartmentAccession().isEmpty()) {
-                for (String accession : document.getCompartmentAccession()) {
-                    if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
-                    }
+        }
+        if (document.getCompartmentAccession() != null && !document.getCompartmentAccession().isEmpty()) {
+            for (String accession : document.getCompartmentAccession()) {
+                if (accession.contains("go:")) {
+                    writeRef("GO", accession);
                 }
             }
-            if (document.getGoMolecularFunctionAccession() != null && !document.getGoMolecularFunctionAccession().isEmpty()) {
-                for (String accession : document.getGoMolecularFunctionAccession()) {
-                    if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
-                    }
+        }
+        if (document.getGoMolecularFunctionAccession() != null && !document.getGoMolecularFunctionAccession().isEmpty()) {
+            for (String accession : document.getGoMolecularFunctionAccession()) {
+                if (accession.contains("go:")) {
+                    writeRef("GO", accession);
                 }
             }
-            if (document.getGoCellularComponentAccessions() != null) {
-                for (String accession : document.getGoCellularComponentAccessions()) {
-                    if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
-                    }
+        }
+        if (document.getGoCellularComponentAccessions() != null) {
+            for (String accession : document.getGoCellularComponentAccessions()) {
+                if (accession.contains("go:")) {
+                    writeRef("GO", accession);
                 }
             }
-            if (document.getGoBiologicalProcessAccessions() != null) {
-                for (String accession : document.getGoBiologicalProcessAccessions()) {
-                    if (accession.contains("go:")) {
-                        writeRef("GO", accession, iii);
-                    }
+        }
+        if (document.getGoBiologicalProcessAccessions() != null) {
+            for (String accession : document.getGoBiologicalProcessAccessions()) {
+                if (accession.contains("go:")) {
+                    writeRef("GO", accession);
                 }
             }
-            if (document.getDiseaseId() != null && !document.getDiseaseId().isEmpty()) {
-                for (String diseaseId : document.getDiseaseId()) {
-                    if (diseaseId.contains("doid:")) {
-                        writeRef("DOID", diseaseId, iii);
-                    }
+        }
+        if (document.getDiseaseId() != null && !document.getDiseaseId().isEmpty()) {
+            for (String diseaseId : document.getDiseaseId()) {
+                if (diseaseId.contains("doid:")) {
+                    writeRef("DOID", diseaseId);
                 }
             }
+        }
 
-            if (document.getLiteratureReferencePubMedId() != null && !document.getLiteratureReferencePubMedId().isEmpty()) {
-                for (String literatureReferencePubMedId : document.getLiteratureReferencePubMedId()) {
-                    writeRef("PubMed", literatureReferencePubMedId, iii);
-                }
+        if (document.getLiteratureReferencePubMedId() != null && !document.getLiteratureReferencePubMedId().isEmpty()) {
+            for (String literatureReferencePubMedId : document.getLiteratureReferencePubMedId()) {
+                writeRef("PubMed", literatureReferencePubMedId);
             }
+        }
 
-            if (document.getAllCrossReferences() != null && !document.getAllCrossReferences().isEmpty()) {
-                for (CrossReference crossReference : document.getAllCrossReferences()) {
-                    writeRef(crossReference.getDbName(), crossReference.getId(), iii);
-                }
+        if (document.getAllCrossReferences() != null && !document.getAllCrossReferences().isEmpty()) {
+            for (CrossReference crossReference : document.getAllCrossReferences()) {
+                writeRef(crossReference.getDbName(), crossReference.getId());
             }
+        }
 
-            writer.write(ii + "</cross_references>" + NEW_LINE);
+        append(II).append("</cross_references>").append(NEW_LINE);
 
 
-            writer.write(ii + "<additional_fields>" + NEW_LINE);
+        append(II).append("<additional_fields>").append(NEW_LINE);
 
-            if (document.getSpecies() != null) {
-                for (String species : document.getSpecies()) {
-                    writeField("species", species, iii);
-                }
+        if (document.getSpecies() != null) {
+            for (String species : document.getSpecies()) {
+                writeField("species", species);
             }
+        }
 
-            if (document.getRelatedSpecies() != null) {
-                for (String relatedSpecies : document.getRelatedSpecies()) {
-                    writeField("related_species", relatedSpecies, iii);
-                }
+        if (document.getRelatedSpecies() != null) {
+            for (String relatedSpecies : document.getRelatedSpecies()) {
+                writeField("related_species", relatedSpecies);
             }
-            if (document.getDiseaseName() != null) {
-                for (String diseaseName : document.getDiseaseName()) {
-                    writeField("disease_name", diseaseName, iii);
-                }
-            }
-            if (document.getDiseaseSynonyms() != null) {
-                for (String synonym : document.getDiseaseSynonyms()) {
-                    writeField("disease_synonym", synonym, iii);
-                }
-            }
-            writeField("type", document.getType(), iii);
-            if (document.getStId() != null) {
-                writeField("stId", document.getStId(), iii);
-            }
-            if (document.getOldStId() != null) {
-                writeField("oldStId", document.getOldStId(), iii);
+        }
+        if (document.getDiseaseName() != null) {
+            for (String diseaseName : document.getDiseaseName()) {
+                writeField("disease_name", diseaseName);
             }
-            if (document.getSynonyms() != null && !document.getSynonyms().isEmpty()) {
-                for (String synonym : document.getSynonyms()) {
-                    writeField("synonym", synonym, iii);
-                }
+        }
+        if (document.getDiseaseSynonyms() != null) {
+            for (String synonym : document.getDiseaseSynonyms()) {
+                writeField("disease_synonym", synonym);
             }
-            if (document.getKeywords() != null && !document.getKeywords().isEmpty()) {
-                for (String keyword : document.getKeywords()) {
-                    writeField("keyword", keyword, iii);
-                }
+        }
+        writeField("type", document.getType());
+        if (document.getStId() != null) {
+            writeField("stId", document.getStId());
+        }
+        if (document.getOldStId() != null) {
+            writeField("oldStId", document.getOldStId());
+        }
+        if (document.getSynonyms() != null && !document.getSynonyms().isEmpty()) {
+            for (String synonym : document.getSynonyms()) {
+                writeField("synonym", synonym);
             }
-            if (document.getCompartmentName() != null && !document.getCompartmentName().isEmpty()) {
-                for (String compartment : document.getCompartmentName()) {
-                    writeField("compartment_name", compartment, iii);
-                }
+        }
+        if (document.getKeywords() != null && !document.getKeywords().isEmpty()) {
+            for (String keyword : document.getKeywords()) {
+                writeField("keyword", keyword);
             }
-            if (document.getGoBiologicalProcessName() != null) {
-                writeField("go_biological_process_name", document.getGoBiologicalProcessName(), iii);
+        }
+        if (document.getCompartmentName() != null && !document.getCompartmentName().isEmpty()) {
+            for (String compartment : document.getCompartmentName()) {
+                writeField("compartment_name", compartment);
             }
-            if (document.getGoMolecularFunctionName() != null && !document.getGoMolecularFunctionName().isEmpty()) {
-                for (String goMolecularFunctionName : document.getGoMolecularFunctionName()) {
-                    writeField("go_molecular_function_name", goMolecularFunctionName, iii);
-                }
+        }
+        if (document.getGoBiologicalProcessName() != null) {
+            writeField("go_biological_process_name", document.getGoBiologicalProcessName());
+        }
+        if (document.getGoMolecularFunctionName() != null && !document.getGoMolecularFunctionName().isEmpty()) {
+            for (String goMolecularFunctionName : document.getGoMolecularFunctionName()) {
+                writeField("go_molecular_function_name", goMolecularFunctionName);
             }
+        }
 
-            if (document.getLiteratureReferenceTitle() != null && !document.getLiteratureReferenceTitle().isEmpty()) {
-                for (String literatureReferenceTitle : document.getLiteratureReferenceTitle()) {
-                    writeField("literature_reference_title", literatureReferenceTitle, iii);
-                }
-            }
-            if (document.getReferenceName() != null) {
-                writeField("external_reference_name", document.getReferenceName(), iii);
-            }
-            if (document.getReferenceSynonyms() != null && !document.getReferenceSynonyms().isEmpty()) {
-                for (String referenceSynonyms : document.getReferenceSynonyms()) {
-                    writeField("external_reference_synonym", referenceSynonyms, iii);
-                }
+        if (document.getLiteratureReferenceTitle() != null && !document.getLiteratureReferenceTitle().isEmpty()) {
+            for (String literatureReferenceTitle : document.getLiteratureReferenceTitle()) {
+                writeField("literature_reference_title", literatureReferenceTitle);
             }
-            if (document.getReferenceGeneNames() != null && !document.getReferenceGeneNames().isEmpty()) {
-                for (String referenceGeneNames : document.getReferenceGeneNames()) {
-                    writeField("gene_names", referenceGeneNames, iii);
-                }
-            }
-            if (document.getReferenceOtherIdentifier() != null && !document.getReferenceOtherIdentifier().isEmpty()) {
-                for (String referenceOtherIdentifier : document.getReferenceOtherIdentifier()) {
-                    writeField("external_reference_other_identifier", referenceOtherIdentifier, iii);
-                }
+        }
+        if (document.getReferenceName() != null) {
+            writeField("external_reference_name", document.getReferenceName());
+        }
+        if (document.getReferenceSynonyms() != null && !document.getReferenceSynonyms().isEmpty()) {
+            for (String referenceSynonyms : document.getReferenceSynonyms()) {
+                writeField("external_reference_synonym", referenceSynonyms);
             }
-            if (document.getInferredSummation() != null) {
-                String noHTMLString = document.getInferredSummation().replaceAll("<.*?>", "");
-                writeField("inferred_summation", noHTMLString, iii);
+        }
+        if (document.getReferenceGeneNames() != null && !document.getReferenceGeneNames().isEmpty()) {
+            for (String referenceGeneNames : document.getReferenceGeneNames()) {
+                writeField("gene_names", referenceGeneNames);
             }
-            if (document.isCovidRelated()) {
-                writeField("covid19", "true", iii);
+        }
+        if (document.getReferenceOtherIdentifier() != null && !document.getReferenceOtherIdentifier().isEmpty()) {
+            for (String referenceOtherIdentifier : document.getReferenceOtherIdentifier()) {
+                writeField("external_reference_other_identifier", referenceOtherIdentifier);
             }
+        }
+        if (document.getInferredSummation() != null) {
+            String noHTMLString = HTML_TAG.matcher(document.getInferredSummation()).replaceAll("");
+            writeField("inferred_summation", noHTMLString);
+        }
+        if (document.isCovidRelated()) {
+            writeField("covid19", "true");
+        }
 
-            writer.write(ii + "</additional_fields>" + NEW_LINE);
+        append(II).append("</additional_fields>").append(NEW_LINE);
 
-            writer.write(i + "</entry>" + NEW_LINE);
-        } catch (IOException e) {
-            throw new IndexerException(e);
-        }
+        append(I).append("</entry>").append(NEW_LINE);
     }
 
     void writeFooter(int entriesCount) throws IndexerException {
         try {
-            writer.write(INDENT + "</entries>" + NEW_LINE);
-            writer.write(INDENT + "<entry_count>" + entriesCount + "</entry_count>" + NEW_LINE);
-            writer.write("</database>" + NEW_LINE);
+            append(INDENT).append("</entries>").append(NEW_LINE);
+            append(INDENT).append("<entry_count>").append(String.valueOf(entriesCount)).append("</entry_count>").append(NEW_LINE);
+            append("</database>").append(NEW_LINE);
             closeIndex();
         } catch (IOException e) {
             throw new IndexerException(e);
         }
     }
 
+    /**
+     * Writes the buffered entries to the file
+     */
     void flush() throws IOException {
-        if (writer == null) return;
-        writer.flush();
+        if (channel == null) return;
+        drain();
+    }
+
+    /**
+     * Writes the buffered entries and, for gzip files, closes the current member
+     *
+     * @return length of the file, to resume from this point
+     */
+    long position() throws IOException {
+        if (channel == null) return output.length();
+        drain();
+        if (gzipStream != null) {
+            gzipStream.finish();
+            gzipStream = null;
+        }
+        return channel.position();
     }
 
     private void closeIndex() throws IOException {
-        writer.flush();
-        writer.close();
-        writer = null;
+        drain();
+        if (gzipStream != null) {
+            gzipStream.finish();
+            gzipStream = null;
+        }
+        channel.close();
+        channel = null;
     }
 
-    private void writeRef(String db, String id, String indent) throws IOException {
-        db = db.trim().replaceAll("\\s*\\(.+\\)\\s*", "");
-        db = db.replaceAll("(/|\\s)", "_");
-        writer.write(indent + "<ref dbname=\"" + db + "\" dbkey=\"" + StringEscapeUtils.escapeXml11(id) + "\" />" + NEW_LINE);
+    private void writeRef(String db, String id) {
+        db = DB_NAME_BRACKETS.matcher(db.trim()).replaceAll("");
+        db = DB_NAME_SEPARATOR.matcher(db).replaceAll("_");
+        append(III).append("<ref dbname=\"").append(db).append("\" dbkey=\"").escape(id).append("\" />").append(NEW_LINE);
     }
 
-    private void writeField(String name, String text, String indent) throws IOException {
+    private void writeField(String name, String text) {
         if (text != null) {
-            String escapedXml = StringEscapeUtils.escapeXml11(text);
-            writer.write(indent + "<field name=\"" + name + "\">" + escapedXml + "</field>" + NEW_LINE);
+            append(III).append("<field name=\"").append(name).append("\">").escape(text).append("</field>").append(NEW_LINE);
+        }
+    }
+
+    private Marshaller append(String s) {
+        int n = s.length();
+        ensureCapacity(n);
+        s.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    private Marshaller append(char c) {
+        ensureCapacity(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    /**
+     * Appends the text escaped in a single pass, producing the same output as StringEscapeUtils.escapeXml11:
+     * the five XML entities, numeric references for the restricted control chars and removal of the chars
+     * not allowed in XML 1.1 (NUL, U+FFFE, U+FFFF and unpaired surrogates). A null text is written as "null".
+     */
+    private Marshaller escape(String text) {
+        if (text == null) return append("null");
+        int n = text.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': append("&quot;"); continue;
+                case '&': append("&amp;"); continue;
+                case '<': append("&lt;"); continue;
+                case '>': append("&gt;"); continue;
+                case '\'': append("&apos;"); continue;
+                case '\u0000':
+                case '\uFFFE':
+                case '\uFFFF':
+                    continue;
+                default:
+            }
+            if ((c >= 0x1 && c <= 0x8) || (c >= 0xb && c <= 0xc) || (c >= 0xe && c <= 0x1f) || (c >= 0x7f && c <= 0x84) || (c >= 0x86 && c <= 0x9f)) {
+                append("&#").append(Integer.toString(c)).append(';');
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    append(c).append(text.charAt(++i));
+                }
+            } else if (!Character.isLowSurrogate(c)) {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    private void ensureCapacity(int n) {
+        if (length + n > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + n));
         }
     }
 
+    private void drainIfFull() throws IOException {
+        if (length >= BUFFER_SIZE) drain();
+    }
+
+    /**
+     * Encodes the buffered chars and writes them to the file (through gzip if needed)
+     */
+    private void drain() throws IOException {
+        if (length == 0) return;
+        CharBuffer in = CharBuffer.wrap(chars, 0, length);
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(in, bytes, true);
+            if (result.isError()) result.throwException();
+            writeBytes();
+        } while (result.isOverflow());
+        do {
+            result = encoder.flush(bytes);
+            writeBytes();
+        } while (result.isOverflow());
+        length = 0;
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        if (gzip) {
+            if (gzipStream == null) gzipStream = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            gzipStream.write(bytes.array(), bytes.position(), bytes.remaining());
+        } else {
+            while (bytes.hasRemaining()) channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
     private String getCurrentDate() {
         DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
         Date date = new Date();
         return (dateFormat.format(date));
     }
 }
-
-
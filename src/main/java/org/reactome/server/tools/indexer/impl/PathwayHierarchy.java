@@ -0,0 +1,206 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.PathwaysService;
+import org.reactome.server.tools.indexer.model.HierarchyEdges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory copy of the parts of the graph needed to find the lower level pathways of an object.
+ * <p>
+ * The participant hierarchy (reversed, child to parents), the ReactionLikeEvents to their Pathways and the
+ * encapsulating Pathways are kept as compressed adjacency lists of primitive arrays indexed by the position of
+ * the dbId in a sorted array. Lookups walk them up from the given object, so there is no graph round trip per
+ * document.
+ * <p>
+ * As {@link PathwaysService#getLowerLevelPathwaysIncludingEncapsulation}, the pathways of the ReactionLikeEvents
+ * (the object itself included) come first and the pathways encapsulating them after, without duplicates.
+ * PathwayHierarchyTest compares both for every ReactionLikeEvent and Pathway. If the hierarchy cannot be loaded,
+ * the service is used instead.
+ */
+@Service
+class PathwayHierarchy {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final String PARTICIPANT_RELATIONSHIPS = "regulatedBy|regulator|physicalEntity|entityFunctionalStatus|catalystActivity|hasMember|hasCandidate|hasComponent|repeatedUnit|input|output|proteinMarker|RNAMarker|referenceEntity";
+
+    //language=cypher
+    private static final String PARTICIPANTS_QUERY = "" +
+            "MATCH (p:DatabaseObject)-[:" + PARTICIPANT_RELATIONSHIPS + "]->(c:DatabaseObject) " +
+            "RETURN c.dbId AS dbId, collect(DISTINCT p.dbId) AS parents";
+
+    //language=cypher
+    private static final String REACTIONS_QUERY = "" +
+            "MATCH (p:Pathway)-[:hasEvent]->(rle:ReactionLikeEvent) " +
+            "RETURN rle.dbId AS dbId, collect(DISTINCT p.dbId) AS parents";
+
+    //language=cypher
+    private static final String ENCAPSULATION_QUERY = "" +
+            "MATCH (p:Pathway)-[:hasEncapsulatedEvent]->(e:Pathway) " +
+            "RETURN e.dbId AS dbId, collect(DISTINCT p.dbId) AS parents";
+
+    //language=cypher
+    private static final String PATHWAYS_QUERY = "" +
+            "MATCH (p:Pathway) " +
+            "RETURN p.dbId AS dbId, p.stId AS stId";
+
+    private AdvancedDatabaseObjectService advancedDatabaseObjectService;
+    private PathwaysService pathwaysService;
+
+    // Sorted dbIds, the position of a dbId is its index in the adjacency lists below
+    private long[] ids;
+    private Adjacency participants;
+    private Adjacency reactions;
+    private Adjacency encapsulation;
+    private String[] stIds;
+
+    private volatile boolean loaded = false;
+    private volatile boolean enabled = true;
+
+    /**
+     * Loads the hierarchy. It is safe to call it more than once, the queries are only executed the first time.
+     */
+    synchronized void load() {
+        if (loaded) return;
+        long start = System.currentTimeMillis();
+        try {
+            Collection<HierarchyEdges> participantRows = advancedDatabaseObjectService.getCustomQueryResults(HierarchyEdges.class, PARTICIPANTS_QUERY);
+            Collection<HierarchyEdges> reactionRows = advancedDatabaseObjectService.getCustomQueryResults(HierarchyEdges.class, REACTIONS_QUERY);
+            Collection<HierarchyEdges> encapsulationRows = advancedDatabaseObjectService.getCustomQueryResults(HierarchyEdges.class, ENCAPSULATION_QUERY);
+            Collection<HierarchyEdges> pathwayRows = advancedDatabaseObjectService.getCustomQueryResults(HierarchyEdges.class, PATHWAYS_QUERY);
+
+            ids = Stream.of(participantRows, reactionRows, encapsulationRows, pathwayRows)
+                    .flatMap(Collection::stream)
+                    .flatMap(row -> Stream.concat(Stream.of(row.getDbId()), row.getParents().stream()))
+                    .mapToLong(Long::longValue)
+                    .sorted()
+                    .distinct()
+                    .toArray();
+
+            participants = new Adjacency(participantRows);
+            reactions = new Adjacency(reactionRows);
+            encapsulation = new Adjacency(encapsulationRows);
+            stIds = new String[ids.length];
+            for (HierarchyEdges row : pathwayRows) {
+                stIds[index(row.getDbId())] = row.getStId();
+            }
+            logger.info("Pathway hierarchy has been loaded in " + (System.currentTimeMillis() - start) + "ms. " + getFootprint());
+        } catch (CustomQueryException e) {
+            logger.error("Could not load the pathway hierarchy, lower level pathways will be queried per object", e);
+            enabled = false;
+        }
+        loaded = true;
+    }
+
+    /**
+     * @return stIds of the lowest level pathways containing the given object, including the encapsulating ones.
+     * Empty if none.
+     */
+    List<String> getLowerLevelPathways(Long dbId) {
+        if (!loaded) load();
+        if (!enabled) return fromService(dbId);
+        return lookup(dbId);
+    }
+
+    private List<String> lookup(Long dbId) {
+        int start = index(dbId);
+        if (start < 0) return Collections.emptyList();
+
+        // Walk up the participant hierarchy from the object itself, every ReactionLikeEvent brings its pathways
+        Set<Integer> visited = new HashSet<>();
+        Set<Integer> pathways = new LinkedHashSet<>();
+        Deque<Integer> pending = new ArrayDeque<>();
+        visited.add(start);
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            int node = pending.pop();
+            for (int i = reactions.offsets[node]; i < reactions.offsets[node + 1]; i++) {
+                pathways.add(reactions.targets[i]);
+            }
+            for (int i = participants.offsets[node]; i < participants.offsets[node + 1]; i++) {
+                int parent = participants.targets[i];
+                if (visited.add(parent)) pending.push(parent);
+            }
+        }
+        if (pathways.isEmpty()) return Collections.emptyList();
+
+        // The lower level pathways first, then the ones encapsulating them
+        Set<String> rtn = new LinkedHashSet<>();
+        for (int pathway : pathways) {
+            rtn.add(stIds[pathway]);
+        }
+        for (int pathway : pathways) {
+            for (int i = encapsulation.offsets[pathway]; i < encapsulation.offsets[pathway + 1]; i++) {
+                rtn.add(stIds[encapsulation.targets[i]]);
+            }
+        }
+        rtn.remove(null);
+        return new ArrayList<>(rtn);
+    }
+
+    private List<String> fromService(Long dbId) {
+        Collection<Pathway> pathways = pathwaysService.getLowerLevelPathwaysIncludingEncapsulation(dbId);
+        if (pathways == null) return Collections.emptyList();
+        return pathways.stream().map(DatabaseObject::getStId).collect(Collectors.toList());
+    }
+
+    private int index(Long dbId) {
+        return dbId == null ? -1 : Arrays.binarySearch(ids, dbId);
+    }
+
+    private String getFootprint() {
+        long bytes = ids.length * 8L + stIds.length * 8L + participants.bytes() + reactions.bytes() + encapsulation.bytes();
+        return String.format("%d nodes, %d participant edges, %d reaction edges, %d encapsulation edges, ~%.1f MB",
+                ids.length, participants.targets.length, reactions.targets.length, encapsulation.targets.length, bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Compressed adjacency list: the neighbours of node i are targets[offsets[i]] to targets[offsets[i + 1] - 1]
+     */
+    private class Adjacency {
+        final int[] offsets;
+        final int[] targets;
+
+        Adjacency(Collection<HierarchyEdges> rows) {
+            offsets = new int[ids.length + 1];
+            for (HierarchyEdges row : rows) {
+                offsets[index(row.getDbId()) + 1] += row.getParents().size();
+            }
+            for (int i = 0; i < ids.length; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            targets = new int[offsets[ids.length]];
+            int[] next = Arrays.copyOf(offsets, ids.length);
+            for (HierarchyEdges row : rows) {
+                int node = index(row.getDbId());
+                for (Long parent : row.getParents()) {
+                    targets[next[node]++] = index(parent);
+                }
+            }
+        }
+
+        long bytes() {
+            return offsets.length * 4L + targets.length * 4L;
+        }
+    }
+
+    @Autowired
+    public void setAdvancedDatabaseObjectService(AdvancedDatabaseObjectService advancedDatabaseObjectService) {
+        this.advancedDatabaseObjectService = advancedDatabaseObjectService;
+    }
+
+    @Autowired
+    public void setPathwaysService(PathwaysService pathwaysService) {
+        this.pathwaysService = pathwaysService;
+    }
+}
@@ -1,13 +1,11 @@
 package org.reactome.server.tools.indexer.impl;
 
 import org.apache.commons.lang3.StringUtils;
-import org.reactome.server.graph.domain.model.Person;
-import org.reactome.server.graph.domain.result.PersonAuthorReviewer;
 import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.model.PersonRow;
+import org.reactome.server.tools.indexer.util.StringPool;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
-
 /**
  * @author Guilherme S Viteri <gviteri@ebi.ac.uk>
  */
@@ -15,23 +13,22 @@ import java.util.Collections;
 class PersonDocumentBuilder {
     private static final String TYPE = "Person";
 
-    IndexDocument createPersonSolrDocument(PersonAuthorReviewer par) {
+    IndexDocument createPersonSolrDocument(PersonRow person) {
         IndexDocument document = new IndexDocument();
-        Person person = par.getPerson();
         document.setDbId(person.getDbId()+"");
         document.setName(getName(person));
         document.setType(TYPE);
         document.setExactType(TYPE);
-        document.setAuthoredPathways(par.getAuthoredPathways());
-        document.setAuthoredReactions(par.getAuthoredReactions());
-        document.setReviewedPathways(par.getReviewedPathways());
-        document.setReviewedReactions(par.getReviewedReactions());
+        document.setAuthoredPathways(person.getAuthoredPathways());
+        document.setAuthoredReactions(person.getAuthoredReactions());
+        document.setReviewedPathways(person.getReviewedPathways());
+        document.setReviewedReactions(person.getReviewedReactions());
         document.setOrcidId(person.getOrcidId());
-        document.setSpecies(Collections.singletonList("Entries without species"));
+        document.setSpecies(StringPool.SPECIES.singleton(StringPool.NO_SPECIES));
         return document;
     }
 
-    private String getName(Person person) {
+    private String getName(PersonRow person) {
         if (StringUtils.isNotEmpty(person.getFirstname()) && StringUtils.isNotEmpty(person.getSurname())) {
             return person.getSurname() + ", " + person.getFirstname();
         }
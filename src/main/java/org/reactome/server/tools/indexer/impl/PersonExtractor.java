@@ -0,0 +1,63 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.neo4j.driver.Record;
+import org.reactome.server.tools.indexer.model.PersonRow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.stream.Stream;
+
+/**
+ * People who authored or reviewed pathways or reactions, with the number of each, as flat rows streamed by
+ * {@link CypherStream}. Same figures as PersonService.getAuthorsReviewers without loading them all at once.
+ */
+@Service
+class PersonExtractor {
+
+    //language=cypher
+    private static final String QUERY = "" +
+            "MATCH (p:Person)-[:author]->(ie:InstanceEdit) " +
+            "WHERE (ie)-[:authored|reviewed]->(:Event) " +
+            "WITH DISTINCT p " +
+            "OPTIONAL MATCH (p)-[:author]->(:InstanceEdit)-[:authored]->(ap:Pathway) " +
+            "WITH p, count(DISTINCT ap) AS authoredPathways " +
+            "OPTIONAL MATCH (p)-[:author]->(:InstanceEdit)-[:authored]->(ar:ReactionLikeEvent) " +
+            "WITH p, authoredPathways, count(DISTINCT ar) AS authoredReactions " +
+            "OPTIONAL MATCH (p)-[:author]->(:InstanceEdit)-[:reviewed]->(rp:Pathway) " +
+            "WITH p, authoredPathways, authoredReactions, count(DISTINCT rp) AS reviewedPathways " +
+            "OPTIONAL MATCH (p)-[:author]->(:InstanceEdit)-[:reviewed]->(rr:ReactionLikeEvent) " +
+            "WITH p, authoredPathways, authoredReactions, reviewedPathways, count(DISTINCT rr) AS reviewedReactions " +
+            "RETURN p.dbId AS dbId, p.displayName AS displayName, p.firstname AS firstname, p.surname AS surname, " +
+            "       p.orcidId AS orcidId, authoredPathways, authoredReactions, reviewedPathways, reviewedReactions " +
+            "ORDER BY dbId";
+
+    private CypherStream cypherStream;
+
+    /**
+     * The stream holds a session open, close it once consumed (try-with-resources).
+     *
+     * @return the authors and reviewers sorted by dbId
+     */
+    Stream<PersonRow> stream() {
+        return cypherStream.stream(QUERY, PersonExtractor::toRow);
+    }
+
+    private static PersonRow toRow(Record record) {
+        PersonRow row = new PersonRow();
+        row.setDbId(record.get("dbId").asLong());
+        row.setDisplayName(record.get("displayName").asString(null));
+        row.setFirstname(record.get("firstname").asString(null));
+        row.setSurname(record.get("surname").asString(null));
+        row.setOrcidId(record.get("orcidId").asString(null));
+        row.setAuthoredPathways(record.get("authoredPathways").asLong());
+        row.setAuthoredReactions(record.get("authoredReactions").asLong());
+        row.setReviewedPathways(record.get("reviewedPathways").asLong());
+        row.setReviewedReactions(record.get("reviewedReactions").asLong());
+        return row;
+    }
+
+    @Autowired
+    public void setCypherStream(CypherStream cypherStream) {
+        this.cypherStream = cypherStream;
+    }
+}
@@ -0,0 +1,35 @@
+package org.reactome.server.tools.indexer.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.reactome.server.graph.domain.result.DiagramOccurrences;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Occurrences of an object in a diagram, as used by the document builders.
+ * Either mapped straight from a bulk query or copied from the {@link DiagramOccurrences} of the graph services.
+ */
+@Data
+@NoArgsConstructor
+public class DiagramOccurrence {
+    // Only present when the result comes from a bulk query
+    private Long dbId;
+    private String identifier;
+    private String diagramStId;
+    private boolean inDiagram;
+    private List<String> occurrences = new ArrayList<>();
+    private boolean inDiagramFromInteractor;
+    private List<String> occurrencesInteractor = new ArrayList<>();
+    private List<String> interactsWith = new ArrayList<>();
+
+    public DiagramOccurrence(DiagramOccurrences diagramOccurrences) {
+        this.diagramStId = diagramOccurrences.getDiagramStId();
+        this.inDiagram = diagramOccurrences.isInDiagram();
+        this.occurrences = diagramOccurrences.getOccurrences();
+        this.inDiagramFromInteractor = diagramOccurrences.isInDiagramFromInteractor();
+        this.occurrencesInteractor = diagramOccurrences.getOccurrencesInteractor();
+        this.interactsWith = diagramOccurrences.getInteractsWith();
+    }
+}
@@ -0,0 +1,18 @@
+package org.reactome.server.tools.indexer.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All the incoming edges of a given node of the graph, as returned by the bulk hierarchy queries.
+ */
+@Data
+@NoArgsConstructor
+public class HierarchyEdges {
+    private Long dbId;
+    private String stId;
+    private List<Long> parents = new ArrayList<>();
+}
@@ -0,0 +1,17 @@
+package org.reactome.server.tools.indexer.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lower level pathways of an interactor, as returned by the bulk interactor pathways query.
+ */
+@Data
+@NoArgsConstructor
+public class InteractorPathways {
+    private String identifier;
+    private List<String> llps = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+package org.reactome.server.tools.indexer.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Flat projection of an interactor ReferenceEntity, holding everything needed to build its document.
+ */
+@Data
+@NoArgsConstructor
+public class InteractorRow {
+    private Long dbId;
+    private String identifier;
+    private String variantIdentifier;
+    private boolean isoform;
+    private List<String> names;
+    private List<String> geneNames;
+    private List<String> secondaryIdentifier;
+    private String species;
+    private String databaseName;
+    private String url;
+
+    /**
+     * @return the variantIdentifier of isoforms, otherwise the identifier
+     */
+    public String getMainIdentifier() {
+        return variantIdentifier == null || variantIdentifier.isEmpty() ? identifier : variantIdentifier;
+    }
+}
@@ -0,0 +1,22 @@
+package org.reactome.server.tools.indexer.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Flat projection of a Person who authored or reviewed pathways or reactions, holding everything needed to build
+ * its document.
+ */
+@Data
+@NoArgsConstructor
+public class PersonRow {
+    private Long dbId;
+    private String displayName;
+    private String firstname;
+    private String surname;
+    private String orcidId;
+    private Long authoredPathways;
+    private Long authoredReactions;
+    private Long reviewedPathways;
+    private Long reviewedReactions;
+}
@@ -3,11 +3,14 @@ package org.reactome.server.tools.indexer.target.impl;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrInputDocument;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.reactome.server.tools.indexer.target.model.Target;
 import org.reactome.server.tools.indexer.target.parser.SwissProtParser;
+import org.reactome.server.tools.indexer.util.CommitPolicy;
+import org.reactome.server.tools.indexer.util.SolrBatchSender;
+import org.reactome.server.tools.indexer.util.SolrDocumentBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,8 +18,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.reactome.server.tools.indexer.util.SolrUtility.checkErrors;
 import static org.reactome.server.tools.indexer.util.SolrUtility.cleanSolrIndex;
-import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
 
 /**
  * @author Guilherme S Viteri <gviteri@ebi.ac.uk>
@@ -27,6 +30,8 @@ public class TargetIndexer {
     private final String solrCollectionTarget = "target";
     private String solrCollectionSource;
     private SolrClient solrClient;
+    private CommitPolicy commitPolicy = CommitPolicy.parse(CommitPolicy.DEFAULT);
+    private SolrBatchSender batchSender = new SolrBatchSender(null);
 
     /**
      * Index possible target proteins for Reactome.
@@ -55,7 +60,8 @@ public class TargetIndexer {
             });
 
             addDocumentsToSolrServer(addToSolr);
-            commitSolrServer(solrCollectionTarget, solrClient);
+            commitPolicy.finish(solrClient, solrCollectionTarget);
+            checkErrors(solrClient);
             long end = System.currentTimeMillis() - start;
             logger.info("[" + solrCollectionTarget + "] Full indexing took " + end + " .ms");
         } catch (Exception e) {
@@ -73,25 +79,30 @@ public class TargetIndexer {
      */
     private void addDocumentsToSolrServer(List<Target> documents) {
         if (documents != null && !documents.isEmpty()) {
+            List<SolrInputDocument> inputDocuments = new ArrayList<>(documents.size());
+            for (Target target : documents) {
+                inputDocuments.add(SolrDocumentBinder.toSolrInputDocument(target));
+            }
+            int rejected = batchSender.send(solrClient, solrCollectionTarget, inputDocuments, commitPolicy.getCommitWithin());
+            logger.debug((documents.size() - rejected) + " Documents successfully added to SolR");
             try {
-                solrClient.addBeans(solrCollectionTarget, documents);
-                logger.debug(documents.size() + " Documents successfully added to SolR");
-            } catch (IOException | SolrServerException | BaseHttpSolrClient.RemoteSolrException e) {
-                for (Target target : documents) {
-                    try {
-                        solrClient.addBean(solrCollectionTarget, target);
-                        logger.debug("A single document was added to Solr");
-                    } catch (IOException | SolrServerException | BaseHttpSolrClient.RemoteSolrException e1) {
-                        logger.error("Could not add document", e);
-                    }
-                }
-                logger.error("Could not add document", e);
+                commitPolicy.afterAdd(solrClient, solrCollectionTarget, documents.size());
+            } catch (IndexerException e) {
+                logger.error("Could not commit documents", e);
             }
         } else {
             logger.error("Solr Documents are null or empty");
         }
     }
 
+    public void setCommitPolicy(CommitPolicy commitPolicy) {
+        this.commitPolicy = commitPolicy;
+    }
+
+    public void setBatchSender(SolrBatchSender batchSender) {
+        this.batchSender = batchSender;
+    }
+
     private boolean isInReactome(Target target) throws SolrServerException, IOException {
         QueryResponse response = solrClient.query(solrCollectionSource, getSolrQuery(target));
         return response.getResults().getNumFound() > 0;
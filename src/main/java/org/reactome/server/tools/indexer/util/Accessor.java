@@ -0,0 +1,74 @@
+package org.reactome.server.tools.indexer.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * A no-argument getter looked up by name, for objects whose classes do not share an interface declaring it
+ * (e.g. getSpecies in the graph model).
+ * <p>
+ * The method is resolved once per class and kept as a {@link MethodHandle}, so there is no reflective lookup
+ * nor exception thrown per call, including for classes that do not have the getter.
+ */
+public class Accessor {
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private final String name;
+    private final ClassValue<MethodHandle> handles = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    public Accessor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return true if the given class has the getter
+     */
+    public boolean isPresent(Class<?> type) {
+        return handles.get(type) != null;
+    }
+
+    /**
+     * @return the value returned by the getter, null if the object or its class do not have it
+     */
+    public Object get(Object target) {
+        if (target == null) return null;
+        MethodHandle handle = handles.get(target.getClass());
+        if (handle == null) return null;
+        try {
+            return handle.invokeExact(target);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not invoke " + name + " on " + target.getClass().getName(), t);
+        }
+    }
+
+    private MethodHandle resolve(Class<?> type) {
+        Method method;
+        try {
+            method = type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        if (method.getReturnType() == void.class) return null;
+        try {
+            return MethodHandles.publicLookup().unreflect(method).asType(GETTER);
+        } catch (IllegalAccessException e) {
+            // Public method declared in a non-public class, the access check has to be suppressed
+            try {
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method).asType(GETTER);
+            } catch (IllegalAccessException | RuntimeException ex) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
+
+/**
+ * Builds the index into a fresh collection while the current one keeps serving searches.
+ * <p>
+ * The live collection is only reached through an alias (e.g. reactome). A run creates a timestamped collection
+ * (e.g. reactome_20240131120000), the indexers write into it and, once it has been validated and warmed up,
+ * the alias is atomically repointed to it. The collection previously behind the alias is retired after a grace
+ * period, so the searches already running against it can finish. A new collection that does not pass the validation
+ * is deleted, as is one the run never swapped (see {@link #discard()}). Requires Solr running in cloud mode.
+ */
+public class BlueGreenDeployment {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    // Typical searches, they have to return results in a valid index
+    private static final List<String> DEFAULT_WARM_UP_QUERIES = List.of(
+            "*:*", "{!term f=type}Pathway", "{!term f=type}Reaction", "{!term f=type}Protein", "name:TP53", "name:apoptosis");
+
+    private final SolrClient solrClient;
+    private final String alias;
+    private final String configSet;
+    private final long gracePeriod;
+    private double minRatio = 0.9;
+    private int numShards = 1;
+    private int numReplicas = 1;
+    private List<String> warmUpQueries = DEFAULT_WARM_UP_QUERIES;
+    private Clock clock = Clock.systemDefaultZone();
+
+    private String collection;
+    private boolean swapped = false;
+
+    /**
+     * @param alias       the alias used by the clients, e.g. reactome
+     * @param configSet   configSet used to create the new collection
+     * @param gracePeriod seconds to wait before deleting the previous collection. Negative to keep it.
+     */
+    public BlueGreenDeployment(SolrClient solrClient, String alias, String configSet, long gracePeriod) {
+        this.solrClient = solrClient;
+        this.alias = alias;
+        this.configSet = configSet;
+        this.gracePeriod = gracePeriod;
+    }
+
+    /**
+     * Creates the collection the indexers have to write into
+     *
+     * @return name of the new collection
+     */
+    public String createCollection() throws IndexerException {
+        String name = alias + "_" + LocalDateTime.now(clock).format(TIMESTAMP);
+        try {
+            if (CollectionAdminRequest.listCollections(solrClient).contains(alias)) {
+                throw new IndexerException("[" + alias + "] is a collection, not an alias. Rename it (e.g. " + alias + "_initial) and create the alias pointing to it before using blue/green deployments");
+            }
+            CollectionAdminRequest.createCollection(name, configSet, numShards, numReplicas).process(solrClient);
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("[" + name + "] Could not create the collection", e);
+        }
+        logger.info("[" + name + "] Collection created from configSet " + configSet);
+        collection = name;
+        return name;
+    }
+
+    /**
+     * Commits the new collection, warms it up and checks it is complete enough to replace the current one.
+     *
+     * @throws IndexerException if the new collection is not valid. The alias is left untouched and the new collection
+     *                          is deleted.
+     */
+    public void validate() throws IndexerException {
+        try {
+            check();
+        } catch (IndexerException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    private void check() throws IndexerException {
+        commitSolrServer(collection, solrClient);
+
+        long count = count(collection, "*:*");
+        String current = getCurrentCollection();
+        long currentCount = current == null ? 0 : count(current, "*:*");
+        logger.info("[" + collection + "] " + count + " documents, [" + current + "] has " + currentCount);
+        if (count == 0 || count < currentCount * minRatio) {
+            throw new IndexerException(String.format("[%s] Only %d documents against %d in %s (minimum ratio %.2f)", collection, count, currentCount, current, minRatio));
+        }
+
+        for (String query : warmUpQueries) {
+            long found = count(collection, query);
+            logger.info("[" + collection + "] Warm-up query '" + query + "' found " + found + " documents");
+            if (found == 0) throw new IndexerException("[" + collection + "] Warm-up query '" + query + "' did not find any document");
+        }
+    }
+
+    /**
+     * Points the alias to the new collection
+     *
+     * @return the collection the alias pointed to before, null if the alias did not exist
+     */
+    public String swap() throws IndexerException {
+        String previous = getCurrentCollection();
+        try {
+            CollectionAdminRequest.createAlias(alias, collection).process(solrClient);
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("[" + alias + "] Could not point the alias to " + collection, e);
+        }
+        swapped = true;
+        logger.info("[" + alias + "] Alias now points to " + collection + (previous == null ? "" : " instead of " + previous));
+        return previous;
+    }
+
+    /**
+     * Deletes the new collection unless the alias already points to it. If it cannot be deleted, its name is logged
+     * to be deleted by hand.
+     */
+    public void discard() {
+        if (collection == null || swapped) return;
+        String name = collection;
+        collection = null;
+        try {
+            CollectionAdminRequest.deleteCollection(name).process(solrClient);
+            logger.info("[" + name + "] Collection has been deleted, it was not put behind the alias " + alias);
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            logger.error("[" + name + "] Could not delete the collection, it is not behind the alias " + alias + " and has to be deleted by hand", e);
+        }
+    }
+
+    /**
+     * Deletes the collection previously behind the alias once the grace period is over
+     *
+     * @param previous as returned by {@link #swap()}
+     */
+    public void retire(String previous) {
+        if (previous == null || previous.equals(collection) || gracePeriod < 0) return;
+        try {
+            logger.info("[" + previous + "] Collection will be deleted in " + gracePeriod + " seconds");
+            TimeUnit.SECONDS.sleep(gracePeriod);
+            CollectionAdminRequest.deleteCollection(previous).process(solrClient);
+            logger.info("[" + previous + "] Collection has been deleted");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("[" + previous + "] Interrupted before deleting the previous collection, it has been kept");
+        } catch (SolrServerException | IOException e) {
+            logger.error("[" + previous + "] Could not delete the previous collection", e);
+        }
+    }
+
+    /**
+     * @return the collection the alias points to, null if the alias does not exist yet
+     */
+    public String getCurrentCollection() throws IndexerException {
+        try {
+            Map<String, String> aliases = CollectionAdminRequest.listAliases().process(solrClient).getAliases();
+            return aliases.get(alias);
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("[" + alias + "] Could not list the aliases", e);
+        }
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @param minRatio minimum number of documents of the new collection relative to the current one
+     */
+    public void setMinRatio(double minRatio) {
+        this.minRatio = minRatio;
+    }
+
+    /**
+     * @param warmUpQueries queries run against the new collection before the swap. All of them must find documents.
+     */
+    public void setWarmUpQueries(List<String> warmUpQueries) {
+        this.warmUpQueries = warmUpQueries;
+    }
+
+    /**
+     * @param clock gives the timestamp in the name of the new collection
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void setNumShards(int numShards) {
+        this.numShards = numShards;
+    }
+
+    public void setNumReplicas(int numReplicas) {
+        this.numReplicas = numReplicas;
+    }
+
+    private long count(String collection, String query) throws IndexerException {
+        try {
+            QueryResponse response = solrClient.query(collection, new SolrQuery(query).setRows(0));
+            return response.getResults().getNumFound();
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("[" + collection + "] Could not run query '" + query + "'", e);
+        }
+    }
+}
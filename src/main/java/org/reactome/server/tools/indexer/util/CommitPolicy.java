@@ -0,0 +1,157 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
+
+/**
+ * Decides when the documents sent to Solr are committed.
+ * <p>
+ * Supported specifications:
+ * <ul>
+ *     <li><b>end</b>: no commit until the indexer finishes (default)</li>
+ *     <li><b>batch</b>: hard commit after every batch of documents</li>
+ *     <li><b>within:&lt;ms&gt;</b>: documents are sent with commitWithin, Solr decides when to commit</li>
+ *     <li><b>soft:&lt;seconds&gt;</b>: soft commit, at most once every given seconds</li>
+ *     <li><b>hard:&lt;documents&gt;</b>: hard commit every given number of documents</li>
+ *     <li><b>hard:&lt;seconds&gt;s</b>: hard commit, at most once every given seconds</li>
+ * </ul>
+ * All of them finish with a hard commit, so the documents are flushed to disk when the indexer is done.
+ * A policy keeps track of what has been sent, hence every indexer needs its own instance.
+ */
+public abstract class CommitPolicy {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final String DEFAULT = "end";
+
+    /**
+     * @param spec policy specification, e.g. end, batch, within:60000, soft:30, hard:10000 or hard:300s
+     * @return a new policy instance
+     */
+    public static CommitPolicy parse(String spec) {
+        if (spec == null || spec.isBlank()) spec = DEFAULT;
+        String[] parts = spec.trim().toLowerCase().split(":", 2);
+        String value = parts.length > 1 ? parts[1].trim() : null;
+        try {
+            switch (parts[0]) {
+                case "end":
+                    return new AtEnd();
+                case "batch":
+                    return new EveryBatch();
+                case "within":
+                    return new CommitWithin(Integer.parseInt(value));
+                case "soft":
+                    return new Periodic(true, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+                case "hard":
+                    if (value.endsWith("s")) {
+                        return new Periodic(false, TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(0, value.length() - 1))));
+                    }
+                    return new EveryDocuments(Long.parseLong(value));
+            }
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid commit policy value in '" + spec + "'", e);
+        }
+        throw new IllegalArgumentException("Unknown commit policy '" + spec + "'. Use end, batch, within:<ms>, soft:<seconds>, hard:<documents> or hard:<seconds>s");
+    }
+
+    /**
+     * @return the commitWithin (in ms) to be sent along with the documents, or -1 if not applicable
+     */
+    public int getCommitWithin() {
+        return -1;
+    }
+
+    /**
+     * Invoked after a batch of documents has been sent to Solr
+     *
+     * @param documents number of documents in the batch
+     */
+    public void afterAdd(SolrClient solrClient, String solrCollection, int documents) throws IndexerException {
+        // Nothing here
+    }
+
+    /**
+     * Invoked once the indexer is done. Always hard commits.
+     */
+    public void finish(SolrClient solrClient, String solrCollection) throws IndexerException {
+        commitSolrServer(solrCollection, solrClient);
+    }
+
+    private static class AtEnd extends CommitPolicy {
+    }
+
+    private static class EveryBatch extends CommitPolicy {
+        @Override
+        public void afterAdd(SolrClient solrClient, String solrCollection, int documents) throws IndexerException {
+            commitSolrServer(solrCollection, solrClient);
+        }
+    }
+
+    private static class CommitWithin extends CommitPolicy {
+        private final int commitWithin;
+
+        CommitWithin(int commitWithin) {
+            if (commitWithin <= 0) throw new IllegalArgumentException("commitWithin must be positive");
+            this.commitWithin = commitWithin;
+        }
+
+        @Override
+        public int getCommitWithin() {
+            return commitWithin;
+        }
+    }
+
+    private static class EveryDocuments extends CommitPolicy {
+        private final long interval;
+        private long pending = 0;
+
+        EveryDocuments(long interval) {
+            if (interval <= 0) throw new IllegalArgumentException("Number of documents must be positive");
+            this.interval = interval;
+        }
+
+        @Override
+        public void afterAdd(SolrClient solrClient, String solrCollection, int documents) throws IndexerException {
+            pending += documents;
+            if (pending >= interval) {
+                commitSolrServer(solrCollection, solrClient);
+                pending = 0;
+            }
+        }
+    }
+
+    private static class Periodic extends CommitPolicy {
+        private final boolean soft;
+        private final long interval;
+        private long last = System.currentTimeMillis();
+
+        Periodic(boolean soft, long interval) {
+            if (interval <= 0) throw new IllegalArgumentException("Commit interval must be positive");
+            this.soft = soft;
+            this.interval = interval;
+        }
+
+        @Override
+        public void afterAdd(SolrClient solrClient, String solrCollection, int documents) throws IndexerException {
+            long now = System.currentTimeMillis();
+            if (now - last < interval) return;
+            last = now;
+            if (!soft) {
+                commitSolrServer(solrCollection, solrClient);
+                return;
+            }
+            try {
+                solrClient.commit(solrCollection, true, false, true);
+                logger.info("[" + solrCollection + "] Solr index has been soft committed");
+            } catch (Exception e) {
+                logger.error("[" + solrCollection + "] Error occurred while soft committing", e);
+                throw new IndexerException("[" + solrCollection + "] Could not soft commit", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.reactome.server.tools.indexer.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.solr.common.SolrInputDocument;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Documents SolR has rejected, one JSON object per line (NDJSON):
+ * <pre>
+ * {"collection":"reactome","id":"1234","time":"...","error":"...","document":{"dbId":"1234","name":"...",...}}
+ * </pre>
+ * where id is the dbId of the document (the identifier for targets). The file is only created when the first
+ * document is written and it is appended to, so several runs can share it. {@link #read(Path)} gives the documents
+ * back to be sent again.
+ */
+public class DeadLetterFile implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final String[] ID_FIELDS = {"dbId", "identifier", "stId"};
+
+    private final Path path;
+    private BufferedWriter writer;
+    private int count = 0;
+
+    public DeadLetterFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return number of documents written by this instance
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Appends a document that could not be added to SolR. Written straight away, so it is not lost if the
+     * indexer dies afterwards.
+     */
+    public synchronized void write(String collection, SolrInputDocument document, Exception error) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            logger.warn("Documents rejected by SolR are written to " + path);
+        }
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("collection", collection);
+        line.put("id", getId(document));
+        line.put("time", Instant.now().toString());
+        line.put("error", error == null ? null : String.valueOf(error.getMessage()));
+        line.put("document", SolrDocumentJson.toMap(document));
+        writer.write(SolrDocumentJson.MAPPER.writeValueAsString(line));
+        writer.write('\n');
+        writer.flush();
+        count++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * @return the documents in the file grouped by collection, in the order they were written
+     */
+    public static Map<String, List<SolrInputDocument>> read(Path path) throws IndexerException {
+        Map<String, List<SolrInputDocument>> rtn = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int n = 0;
+            while ((line = reader.readLine()) != null) {
+                n++;
+                if (line.isBlank()) continue;
+                JsonNode node = SolrDocumentJson.MAPPER.readTree(line);
+                JsonNode document = node.get("document");
+                if (document == null || !document.isObject()) {
+                    throw new IndexerException("Line " + n + " of " + path + " has no document");
+                }
+                rtn.computeIfAbsent(node.path("collection").asText(), c -> new ArrayList<>()).add(SolrDocumentJson.toSolrInputDocument(document));
+            }
+        } catch (IOException e) {
+            throw new IndexerException("Could not read the rejected documents from " + path, e);
+        }
+        return rtn;
+    }
+
+    /**
+     * @return the unique key of the document, as logged when it fails
+     */
+    static String getId(SolrInputDocument document) {
+        for (String field : ID_FIELDS) {
+            Object value = document.getFieldValue(field);
+            if (value != null) return value.toString();
+        }
+        return null;
+    }
+}
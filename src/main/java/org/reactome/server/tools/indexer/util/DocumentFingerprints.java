@@ -0,0 +1,180 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content hash of every document sent to Solr, kept from one run to the next one.
+ * <p>
+ * The fingerprint is taken from {@link #getContent(SolrInputDocument)}, i.e. only from what is sent to Solr, so
+ * it does not change between runs for the same document. The file is a gzipped list of "id TAB hash" lines. Loading it gives the fingerprints of the previous run, while
+ * {@link #update(String, String)} records the ones of the current run and tells whether the document has changed,
+ * {@link #reject(String)} takes it back when SolR does not accept the document.
+ * The new file is only written by {@link #save()}, so a failed run does not lose the previous state.
+ */
+public class DocumentFingerprints {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path file;
+    private final Map<String, Long> previous;
+    private final Map<String, Long> current = new HashMap<>();
+
+    private DocumentFingerprints(Path file, Map<String, Long> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /**
+     * @param file fingerprints of the previous run. It does not need to exist.
+     */
+    public static DocumentFingerprints load(Path file) throws IndexerException {
+        Map<String, Long> previous = new HashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) previous.put(line.substring(0, tab), Long.parseUnsignedLong(line.substring(tab + 1), 16));
+                }
+            } catch (IOException | NumberFormatException e) {
+                throw new IndexerException("Could not read the document fingerprints from " + file, e);
+            }
+            logger.info(previous.size() + " document fingerprints loaded from " + file);
+        } else {
+            logger.info("No document fingerprints found in " + file + ", all documents will be indexed");
+        }
+        return new DocumentFingerprints(file, previous);
+    }
+
+    /**
+     * @return true if there are no fingerprints from a previous run
+     */
+    public boolean isEmpty() {
+        return previous.isEmpty();
+    }
+
+    /**
+     * Records the fingerprint of a document for the current run
+     *
+     * @param id      unique key of the document
+     * @param content full content of the document
+     * @return true if the document is new or it has changed since the previous run
+     */
+    public boolean update(String id, String content) {
+        long hash = hash(content);
+        current.put(id, hash);
+        Long before = previous.get(id);
+        return before == null || before != hash;
+    }
+
+    /**
+     * Canonical content of a document: the fields sorted by name, each one with its values in order (sorted for
+     * sets, their iteration order does not mean anything). Does not depend on the order the fields were added in.
+     */
+    public static String getContent(SolrInputDocument document) {
+        StringBuilder content = new StringBuilder();
+        for (String name : new TreeSet<>(document.getFieldNames())) {
+            SolrInputField field = document.getField(name);
+            Collection<Object> values = field.getValues();
+            if (field.getValue() instanceof Set) {
+                List<String> sorted = new ArrayList<>();
+                for (Object value : values) sorted.add(String.valueOf(value));
+                Collections.sort(sorted);
+                values = new ArrayList<>(sorted);
+            }
+            content.append(name).append('=');
+            boolean first = true;
+            for (Object value : values) {
+                if (!first) content.append('\u001f');
+                content.append(value);
+                first = false;
+            }
+            content.append('\u001e');
+        }
+        return content.toString();
+    }
+
+    /**
+     * Carries over the fingerprint of the previous run, e.g. when the document could not be built this time
+     * and whatever is in Solr has to be kept
+     */
+    public void keep(String id) {
+        Long before = previous.get(id);
+        if (before != null) current.put(id, before);
+    }
+
+    /**
+     * Drops the fingerprint recorded in this run for a document SolR did not accept, so it is sent again in the
+     * next run: the previous one is carried over, or none if the document is new
+     */
+    public void reject(String id) {
+        Long before = previous.get(id);
+        if (before != null) {
+            current.put(id, before);
+        } else {
+            current.remove(id);
+        }
+    }
+
+    /**
+     * @return ids present in the previous run but not in the current one
+     */
+    public List<String> getRemoved() {
+        List<String> rtn = new ArrayList<>();
+        for (String id : previous.keySet()) {
+            if (!current.containsKey(id)) rtn.add(id);
+        }
+        return rtn;
+    }
+
+    /**
+     * Writes the fingerprints of the current run, replacing the previous ones
+     */
+    public void save() throws IndexerException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> entry : current.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(Long.toHexString(entry.getValue()));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new IndexerException("Could not write the document fingerprints to " + tmp, e);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IndexerException("Could not replace the document fingerprints in " + file, e);
+        }
+        logger.info(current.size() + " document fingerprints saved to " + file);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-16 chars of the content
+     */
+    static long hash(String content) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,187 @@
+package org.reactome.server.tools.indexer.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.reactome.server.tools.indexer.util.SolrUtility.checkErrors;
+import static org.reactome.server.tools.indexer.util.SolrUtility.commitSolrServer;
+
+/**
+ * Sends the updates written by {@link DumpSolrClient} to SolR, in the same order, and commits at the end.
+ * <p>
+ * The documents are sent in batches through the {@link SolrBatchSender}, so rejected documents end up in its
+ * dead-letter file as when indexing. Pending documents are sent before a delete, to keep the order.
+ */
+public class DumpLoader {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final SolrClient solrClient;
+    private final SolrBatchSender batchSender;
+    private final int batchSize;
+
+    public DumpLoader(SolrClient solrClient, SolrBatchSender batchSender, int batchSize) {
+        this.solrClient = solrClient;
+        this.batchSender = batchSender;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the collections in a dump directory
+     */
+    public static List<String> getCollections(Path dump) throws IndexerException {
+        try (Stream<Path> dirs = Files.list(dump)) {
+            return dirs.filter(Files::isDirectory)
+                    .filter(dir -> {
+                        try {
+                            return !DumpSolrClient.getChunks(dir).isEmpty();
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    })
+                    .map(dir -> dir.getFileName().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IndexerException("Could not list the dump directory " + dump, e);
+        }
+    }
+
+    /**
+     * @param dump       dump directory
+     * @param dumped     collection in the dump
+     * @param collection SolR collection the updates are sent to
+     * @return number of documents sent
+     */
+    public long load(Path dump, String dumped, String collection) throws IndexerException {
+        List<Path> chunks;
+        try {
+            chunks = DumpSolrClient.getChunks(dump.resolve(dumped));
+        } catch (IOException e) {
+            throw new IndexerException("Could not list the chunks of " + dumped + " in " + dump, e);
+        }
+        logger.info("[" + collection + "] Loading " + chunks.size() + " chunks from " + dump.resolve(dumped));
+        long start = System.currentTimeMillis();
+        long documents = 0;
+        List<SolrInputDocument> batch = new ArrayList<>(batchSize);
+        for (Path chunk : chunks) {
+            try (TruncationTolerantInputStream in = new TruncationTolerantInputStream(new GZIPInputStream(Files.newInputStream(chunk)));
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    JsonNode node;
+                    try {
+                        node = SolrDocumentJson.MAPPER.readTree(line);
+                    } catch (JsonProcessingException e) {
+                        if (in.truncated) break; // last line, only partially written
+                        throw e;
+                    }
+                    JsonNode add = node.get("add");
+                    if (add != null) {
+                        batch.add(SolrDocumentJson.toSolrInputDocument(add));
+                        documents++;
+                        if (batch.size() >= batchSize) batch = send(collection, batch);
+                        continue;
+                    }
+                    batch = send(collection, batch);
+                    delete(collection, node);
+                }
+                if (in.truncated) logger.warn("[" + collection + "] " + chunk + " is truncated, loaded up to where it ends");
+            } catch (IOException e) {
+                throw new IndexerException("Could not read " + chunk, e);
+            }
+        }
+        send(collection, batch);
+        checkErrors(solrClient);
+        commitSolrServer(collection, solrClient);
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        logger.info(String.format("[%s] %d documents loaded in %ds (%.0f documents/s)", collection, documents, time / 1000, documents * 1000.0 / time));
+        return documents;
+    }
+
+    /**
+     * A chunk of an indexer that did not finish has no gzip trailer. Everything up to its last request can be read,
+     * then the end of the file is reached instead of failing, which would lose what the reader has buffered.
+     */
+    private static class TruncationTolerantInputStream extends FilterInputStream {
+        private boolean truncated = false;
+
+        TruncationTolerantInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return truncated ? -1 : super.read();
+            } catch (EOFException e) {
+                truncated = true;
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return truncated ? -1 : super.read(b, off, len);
+            } catch (EOFException e) {
+                truncated = true;
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return a new list for the next batch, the client may still hold this one
+     */
+    private List<SolrInputDocument> send(String collection, List<SolrInputDocument> batch) {
+        if (batch.isEmpty()) return batch;
+        batchSender.send(solrClient, collection, batch, -1);
+        return new ArrayList<>(batchSize);
+    }
+
+    /**
+     * The background threads of a {@link TrackingUpdateSolrClient} could send the updates around a delete in a
+     * different order otherwise
+     */
+    private void blockUntilFinished() {
+        if (solrClient instanceof TrackingUpdateSolrClient) ((TrackingUpdateSolrClient) solrClient).blockUntilFinished();
+    }
+
+    private void delete(String collection, JsonNode update) throws IndexerException {
+        JsonNode delete = update.path("delete");
+        try {
+            blockUntilFinished();
+            if (delete.has("query")) {
+                solrClient.deleteByQuery(collection, delete.get("query").asText());
+            } else if (delete.has("id")) {
+                List<String> ids = new ArrayList<>();
+                for (JsonNode id : delete.get("id")) ids.add(id.asText());
+                solrClient.deleteById(collection, ids);
+            } else {
+                throw new IndexerException("[" + collection + "] Unknown update in the dump: " + update);
+            }
+            blockUntilFinished();
+        } catch (SolrServerException | IOException e) {
+            throw new IndexerException("[" + collection + "] Could not delete " + delete, e);
+        }
+    }
+}
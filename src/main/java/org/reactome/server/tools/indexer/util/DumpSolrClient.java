@@ -0,0 +1,160 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the updates to local files instead of sending them to SolR, so the indexers run without SolR and the result
+ * can be loaded later, into any collection and as many times as needed, by {@link DumpLoader}.
+ * <p>
+ * Every collection gets its own directory with gzipped NDJSON chunks (00001.ndjson.gz, 00002.ndjson.gz, ...) of at
+ * most chunkSize lines, each one being an update in the order they were sent:
+ * <pre>
+ * {"add":{"dbId":"1234","name":"...",...}}
+ * {"delete":{"query":"*:*"}}
+ * {"delete":{"id":["1234","5678"]}}
+ * </pre>
+ * Every request is flushed, so a run that dies leaves complete chunks plus a truncated last one that can still be
+ * read up to the last request. Commits are ignored and nothing can be queried.
+ */
+public class DumpSolrClient extends SolrClient {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final int DEFAULT_CHUNK_SIZE = 100_000;
+    static final String CHUNK_SUFFIX = ".ndjson.gz";
+
+    private final Path dir;
+    private final int chunkSize;
+    private final Map<String, ChunkWriter> writers = new HashMap<>();
+
+    /**
+     * @param resume carries on writing after the chunks of a previous run, otherwise the directory cannot contain any
+     */
+    public DumpSolrClient(Path dir, int chunkSize, boolean resume) throws IOException {
+        this.dir = dir;
+        this.chunkSize = chunkSize;
+        Files.createDirectories(dir);
+        if (!resume && !getChunks(dir).isEmpty()) {
+            throw new IOException(dir + " already contains a dump, remove it or use another directory");
+        }
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+        if (!(request instanceof UpdateRequest)) {
+            throw new SolrServerException("Documents are being dumped to " + dir + ", SolR cannot be queried");
+        }
+        if (collection == null) throw new SolrServerException("A collection is needed to dump the documents");
+        UpdateRequest update = (UpdateRequest) request;
+        getWriter(collection).write(update);
+        return new NamedList<>();
+    }
+
+    /**
+     * Logs the number of documents written to every collection
+     */
+    public synchronized void report() {
+        for (ChunkWriter writer : writers.values()) {
+            logger.info("[" + writer.collection + "] " + writer.documents + " documents dumped to " + writer.dir + " (" + writer.chunk + " chunks)");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        report();
+        for (ChunkWriter writer : writers.values()) writer.close();
+        writers.clear();
+    }
+
+    private synchronized ChunkWriter getWriter(String collection) throws IOException {
+        ChunkWriter writer = writers.get(collection);
+        if (writer == null) {
+            Path collectionDir = dir.resolve(collection);
+            Files.createDirectories(collectionDir);
+            writer = new ChunkWriter(collection, collectionDir, getChunks(collectionDir).size());
+            writers.put(collection, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * @return the chunks in a collection directory, or in all of them for the dump directory, sorted
+     */
+    static List<Path> getChunks(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return Collections.emptyList();
+        try (Stream<Path> files = Files.walk(dir, 2)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(CHUNK_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private class ChunkWriter {
+        private final String collection;
+        private final Path dir;
+        private int chunk;
+        private int lines = 0;
+        private long documents = 0;
+        private Writer writer;
+
+        ChunkWriter(String collection, Path dir, int chunks) {
+            this.collection = collection;
+            this.dir = dir;
+            this.chunk = chunks;
+        }
+
+        synchronized void write(UpdateRequest update) throws IOException {
+            List<SolrInputDocument> docs = update.getDocuments();
+            if (docs != null) {
+                for (SolrInputDocument document : docs) {
+                    writeLine(Map.of("add", SolrDocumentJson.toMap(document)));
+                    documents++;
+                }
+            }
+            List<String> ids = update.getDeleteById();
+            if (ids != null && !ids.isEmpty()) writeLine(Map.of("delete", Map.of("id", ids)));
+            List<String> queries = update.getDeleteQuery();
+            if (queries != null) {
+                for (String query : queries) writeLine(Map.of("delete", Map.of("query", query)));
+            }
+            if (writer != null) writer.flush();
+        }
+
+        private void writeLine(Object line) throws IOException {
+            if (writer == null || lines >= chunkSize) {
+                close();
+                chunk++;
+                Path file = dir.resolve(String.format("%05d", chunk) + CHUNK_SUFFIX);
+                writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file), 8192, true), StandardCharsets.UTF_8));
+                lines = 0;
+            }
+            writer.write(SolrDocumentJson.MAPPER.writeValueAsString(line));
+            writer.write('\n');
+            lines++;
+        }
+
+        synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.reactome.server.tools.indexer.util;
+
+import java.util.*;
+
+/**
+ * Finds which keywords of a vocabulary appear in a text, case insensitive, with a single pass over the text.
+ * <p>
+ * The vocabulary is compiled once into an Aho-Corasick automaton over the lowercase keywords, so the cost of
+ * tagging a text depends on its length and not on the size of the vocabulary. The result is the same as checking
+ * {@code text.toLowerCase().contains(keyword.toLowerCase())} for every keyword, in the order of the vocabulary.
+ */
+public class KeywordTagger {
+
+    private final List<String> keywords;
+
+    // Transitions of node i are the chars labels[i] (sorted) leading to nodes targets[i]
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // Keywords (position in the vocabulary) ending at node i, including the ones reached through fail links
+    private final int[][] output;
+
+    public KeywordTagger(List<String> keywords) {
+        this.keywords = new ArrayList<>(keywords);
+
+        // 1. Trie of the lowercase keywords
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+        for (int k = 0; k < this.keywords.size(); k++) {
+            String keyword = this.keywords.get(k).toLowerCase();
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                    trie.get(node).put(keyword.charAt(i), next);
+                }
+                node = next;
+            }
+            ends.get(node).add(k);
+        }
+
+        int size = trie.size();
+        labels = new char[size][];
+        targets = new int[size][];
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> transitions = trie.get(node);
+            labels[node] = new char[transitions.size()];
+            targets[node] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                labels[node][i] = entry.getKey();
+                targets[node][i++] = entry.getValue();
+            }
+        }
+
+        // 2. Fail links and outputs, breadth first so the fail target of a node is always done before the node
+        fail = new int[size];
+        output = new int[size][];
+        output[0] = toArray(ends.get(0));
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int child : targets[0]) pending.add(child);
+        while (!pending.isEmpty()) {
+            int node = pending.poll();
+            Set<Integer> out = new TreeSet<>(ends.get(node));
+            for (int k : output[fail[node]]) out.add(k);
+            output[node] = toArray(out);
+            for (int i = 0; i < labels[node].length; i++) {
+                int child = targets[node][i];
+                fail[child] = next(fail[node], labels[node][i]);
+                pending.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return the keywords contained in the text, in the order of the vocabulary
+     */
+    public List<String> tag(String text) {
+        if (text == null) return new ArrayList<>();
+        String lower = text.toLowerCase();
+        BitSet found = new BitSet(keywords.size());
+        for (int k : output[0]) found.set(k);
+        int node = 0;
+        for (int i = 0; i < lower.length(); i++) {
+            node = next(node, lower.charAt(i));
+            for (int k : output[node]) found.set(k);
+        }
+        List<String> rtn = new ArrayList<>(found.cardinality());
+        for (int k = found.nextSetBit(0); k >= 0; k = found.nextSetBit(k + 1)) {
+            rtn.add(keywords.get(k));
+        }
+        return rtn;
+    }
+
+    /**
+     * @return the node reached from the given one with c, following the fail links when there is no transition
+     */
+    private int next(int node, char c) {
+        while (true) {
+            int i = Arrays.binarySearch(labels[node], c);
+            if (i >= 0) return targets[node][i];
+            if (node == 0) return 0;
+            node = fail[node];
+        }
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
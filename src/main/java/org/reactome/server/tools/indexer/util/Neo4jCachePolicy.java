@@ -0,0 +1,263 @@
+package org.reactome.server.tools.indexer.util;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when the cache of the graph database (GeneralService.clearCache) is cleared while indexing.
+ * <p>
+ * Supported specifications:
+ * <ul>
+ *     <li><b>heap:&lt;percent&gt;</b>: only when the old generation is still above the given occupancy after a
+ *     garbage collection (heap:75 is the default of the command line)</li>
+ *     <li><b>fixed:&lt;documents&gt;</b>: every given number of documents and after every stage, regardless of the heap</li>
+ * </ul>
+ * The cache is shared by all the indexers, hence so is the policy: Main creates one instance and gives it to all of
+ * them. The heap policy sets the collection usage threshold of the JVM pools and listens to the garbage collectors,
+ * so it is only created there and {@link #close()} undoes both. Indexers not given any use {@link #fixed()}, which
+ * has no side effect.
+ */
+public abstract class Neo4jCachePolicy implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final String DEFAULT = "heap:75";
+    static final long FALLBACK_INTERVAL = 10000;
+
+    protected final LongAdder clears = new LongAdder();
+
+    /**
+     * @return a new policy clearing the cache every {@value #FALLBACK_INTERVAL} documents and after every stage
+     */
+    public static Neo4jCachePolicy fixed() {
+        return new Fixed(FALLBACK_INTERVAL);
+    }
+
+    /**
+     * @param spec policy specification, e.g. heap:75 or fixed:10000
+     * @return a new policy instance
+     */
+    public static Neo4jCachePolicy parse(String spec) {
+        if (spec == null || spec.isBlank()) spec = DEFAULT;
+        String[] parts = spec.trim().toLowerCase().split(":", 2);
+        String value = parts.length > 1 ? parts[1].trim() : null;
+        try {
+            switch (parts[0]) {
+                case "heap":
+                    return new HeapPressure(Integer.parseInt(value));
+                case "fixed":
+                    return new Fixed(Long.parseLong(value));
+            }
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cache policy value in '" + spec + "'", e);
+        }
+        throw new IllegalArgumentException("Unknown cache policy '" + spec + "'. Use heap:<percent> or fixed:<documents>");
+    }
+
+    /**
+     * Invoked after every document
+     *
+     * @return true if the cache has to be cleared now
+     */
+    public abstract boolean afterDocument();
+
+    /**
+     * Invoked once an indexing stage (e.g. all the Events) is done
+     *
+     * @return true if the cache has to be cleared now
+     */
+    public abstract boolean afterStage();
+
+    /**
+     * Logs how often the cache has been cleared
+     */
+    public abstract void report();
+
+    public long getClears() {
+        return clears.sum();
+    }
+
+    /**
+     * Releases whatever the policy holds on the JVM, nothing by default
+     */
+    @Override
+    public void close() {
+    }
+
+    private static class Fixed extends Neo4jCachePolicy {
+        private final long interval;
+        private final AtomicLong documents = new AtomicLong();
+
+        Fixed(long interval) {
+            if (interval <= 0) throw new IllegalArgumentException("Number of documents must be positive");
+            this.interval = interval;
+        }
+
+        @Override
+        public boolean afterDocument() {
+            if (documents.incrementAndGet() % interval != 0) return false;
+            clears.increment();
+            return true;
+        }
+
+        @Override
+        public boolean afterStage() {
+            clears.increment();
+            return true;
+        }
+
+        @Override
+        public void report() {
+            logger.info("Graph database cache cleared " + clears.sum() + " times (every " + interval + " documents and after every stage)");
+        }
+    }
+
+    /**
+     * Sets the collection usage threshold of the tenured heap pools and checks their occupancy after every garbage
+     * collection (young ones included, G1 only updates the collection usage of the old generation on mixed and full
+     * ones). Above it, the cache is cleared once by the next document (or stage), and again only if a later
+     * collection still finds the pool above the threshold.
+     */
+    static class HeapPressure extends Neo4jCachePolicy implements NotificationListener {
+        // Documents between two clears, so a heap full of something else does not empty the cache on every collection
+        static final long MIN_DOCUMENTS = 1000;
+
+        private final int percent;
+        private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+        private final Map<MemoryPoolMXBean, Long> previousThresholds = new HashMap<>();
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private final AtomicBoolean pressure = new AtomicBoolean(false);
+        private final AtomicLong documents = new AtomicLong();
+        private final LongAdder collections = new LongAdder();
+        private final LongAdder collectionsOverThreshold = new LongAdder();
+        private final LongAdder stageClears = new LongAdder();
+        private final Fixed fallback;
+        private volatile long lastClear = 0;
+
+        HeapPressure(int percent) {
+            if (percent <= 0 || percent >= 100) throw new IllegalArgumentException("Heap occupancy must be between 1 and 99");
+            this.percent = percent;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                // Eden and survivor spaces do not support usage thresholds, only the tenured pool is watched
+                if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported() || !pool.isCollectionUsageThresholdSupported()) continue;
+                long max = pool.getUsage().getMax();
+                if (max <= 0) continue;
+                previousThresholds.put(pool, pool.getCollectionUsageThreshold());
+                pool.setCollectionUsageThreshold(max / 100 * percent);
+                pools.add(pool);
+            }
+            if (!pools.isEmpty()) {
+                for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    if (!(collector instanceof NotificationEmitter)) continue;
+                    NotificationEmitter emitter = (NotificationEmitter) collector;
+                    emitter.addNotificationListener(this, n -> GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType()), null);
+                    emitters.add(emitter);
+                }
+            }
+            if (emitters.isEmpty()) {
+                logger.warn("The heap occupancy cannot be watched in this JVM, the graph database cache is cleared every " + FALLBACK_INTERVAL + " documents");
+                fallback = new Fixed(FALLBACK_INTERVAL);
+            } else {
+                fallback = null;
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            collections.increment();
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            Map<String, MemoryUsage> afterGc = info.getGcInfo().getMemoryUsageAfterGc();
+            for (MemoryPoolMXBean pool : pools) {
+                MemoryUsage usage = afterGc.get(pool.getName());
+                if (pool.isCollectionUsageThresholdExceeded() || (usage != null && usage.getUsed() >= pool.getCollectionUsageThreshold())) {
+                    collectionsOverThreshold.increment();
+                    pressure.set(true);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * As if the last garbage collection had left the heap above the threshold
+         */
+        void signal() {
+            collectionsOverThreshold.increment();
+            pressure.set(true);
+        }
+
+        @Override
+        public boolean afterDocument() {
+            if (fallback != null) return fallback.afterDocument();
+            long count = documents.incrementAndGet();
+            if (count - lastClear < MIN_DOCUMENTS || !pressure.compareAndSet(true, false)) return false;
+            lastClear = count;
+            clears.increment();
+            return true;
+        }
+
+        @Override
+        public boolean afterStage() {
+            if (fallback != null) return fallback.afterStage();
+            if (!pressure.compareAndSet(true, false)) return false;
+            lastClear = documents.get();
+            clears.increment();
+            stageClears.increment();
+            return true;
+        }
+
+        @Override
+        public long getClears() {
+            return fallback != null ? fallback.getClears() : super.getClears();
+        }
+
+        /**
+         * Stops listening to the garbage collectors and restores the thresholds of the pools
+         */
+        @Override
+        public synchronized void close() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // Already removed
+                }
+            }
+            emitters.clear();
+            previousThresholds.forEach(MemoryPoolMXBean::setCollectionUsageThreshold);
+            previousThresholds.clear();
+        }
+
+        boolean isListening() {
+            return !emitters.isEmpty();
+        }
+
+        @Override
+        public void report() {
+            if (fallback != null) {
+                fallback.report();
+                return;
+            }
+            StringBuilder usage = new StringBuilder();
+            for (MemoryPoolMXBean pool : pools) {
+                MemoryUsage peak = pool.getPeakUsage();
+                usage.append(", ").append(pool.getName()).append(" peak ").append(peak.getUsed() / 1048576).append("MB of ").append(peak.getMax() / 1048576).append("MB");
+            }
+            logger.info("Graph database cache cleared " + clears.sum() + " times (" + stageClears.sum() + " after a stage) for " + documents.get() + " documents: "
+                    + collectionsOverThreshold.sum() + " of " + collections.sum() + " garbage collections left the heap above " + percent + "%" + usage);
+        }
+    }
+}
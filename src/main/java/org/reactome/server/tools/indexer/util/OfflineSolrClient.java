@@ -0,0 +1,237 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Builds the collection locally with {@link EmbeddedSolrServer} instead of sending the updates to a remote SolR.
+ * <p>
+ * The documents are split by their unique key among several partitions, each one a core with its own index writer
+ * and thread, so a batch is indexed in parallel. {@link #merge()} merges the partitions into a single optimised core
+ * in outputDir/collection (conf, core.properties and data/index), ready to be copied to the serving node.
+ * <pre>
+ * outputDir/solr.xml
+ * outputDir/partitions/reactome_0 ... reactome_n-1   (removed by merge)
+ * outputDir/reactome                                 (created by merge)
+ * </pre>
+ * Every core uses the same configuration, e.g. solr-conf/reactome. Nothing can be queried while building.
+ */
+public class OfflineSolrClient extends SolrClient {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private final Path conf;
+    private final Path output;
+    private final String collection;
+    private final String[] partitions;
+    private final CoreContainer container;
+    private final EmbeddedSolrServer server;
+    private final ExecutorService executor;
+    private final String uniqueKey;
+    private boolean merged = false;
+
+    /**
+     * @param conf       directory with the schema and solrconfig of the collection
+     * @param output     directory where the collection is built. It cannot contain a previous build.
+     * @param collection name of the collection (and the core)
+     * @param partitions number of partitions built in parallel
+     */
+    public OfflineSolrClient(Path conf, Path output, String collection, int partitions) throws IOException {
+        if (!Files.isRegularFile(conf.resolve("solrconfig.xml"))) throw new IOException("No solrconfig.xml found in " + conf);
+        if (Files.exists(output.resolve(collection)) || Files.exists(output.resolve("partitions"))) {
+            throw new IOException(output + " already contains a build of " + collection + ", remove it or use another directory");
+        }
+        this.conf = conf;
+        this.output = output;
+        this.collection = collection;
+        this.partitions = new String[Math.max(1, partitions)];
+        Files.createDirectories(output);
+        Files.writeString(output.resolve("solr.xml"), "<solr/>\n", StandardCharsets.UTF_8);
+        try {
+            container = CoreContainer.createAndLoad(output);
+            for (int i = 0; i < this.partitions.length; i++) {
+                this.partitions[i] = collection + "_" + i;
+                createCore(this.partitions[i], output.resolve("partitions").resolve(this.partitions[i]));
+            }
+        } catch (SolrException e) {
+            throw new IOException("Could not create the cores of " + collection + " in " + output, e);
+        }
+        server = new EmbeddedSolrServer(container, null);
+        try (SolrCore core = container.getCore(this.partitions[0])) {
+            uniqueKey = core.getLatestSchema().getUniqueKeyField().getName();
+        }
+        executor = Executors.newFixedThreadPool(this.partitions.length, r -> {
+            Thread thread = new Thread(r, "offline-" + collection);
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("[" + collection + "] Building the collection in " + output + " with " + this.partitions.length + " partitions");
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+        if (!(request instanceof UpdateRequest)) {
+            throw new SolrServerException("The collection is being built in " + output + ", it cannot be queried");
+        }
+        if (!this.collection.equals(collection)) {
+            throw new SolrServerException("Only " + this.collection + " is built in " + output + ", not " + collection);
+        }
+        if (merged) throw new SolrServerException("The partitions of " + collection + " have already been merged");
+        UpdateRequest update = (UpdateRequest) request;
+
+        UpdateRequest[] parts = new UpdateRequest[partitions.length];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new UpdateRequest();
+            parts[i].setParams(update.getParams());
+            parts[i].setCommitWithin(update.getCommitWithin());
+        }
+        List<SolrInputDocument> documents = update.getDocuments();
+        if (documents != null) {
+            for (SolrInputDocument document : documents) {
+                parts[getPartition(document.getFieldValue(uniqueKey))].add(document);
+            }
+        }
+        List<String> ids = update.getDeleteById();
+        if (ids != null) {
+            for (String id : ids) parts[getPartition(id)].deleteById(id);
+        }
+        List<String> queries = update.getDeleteQuery();
+        if (queries != null) {
+            for (UpdateRequest part : parts) queries.forEach(part::deleteByQuery);
+        }
+        boolean action = update.getAction() != null;
+
+        List<Future<NamedList<Object>>> futures = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            UpdateRequest part = parts[i];
+            if (!action && part.getDocuments() == null && part.getDeleteById() == null && part.getDeleteQuery() == null) continue;
+            String core = partitions[i];
+            futures.add(executor.submit(() -> server.request(part, core)));
+        }
+        NamedList<Object> rtn = new NamedList<>();
+        Throwable error = null;
+        for (Future<NamedList<Object>> future : futures) {
+            try {
+                rtn = future.get();
+            } catch (ExecutionException e) {
+                if (error == null) error = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SolrServerException(e);
+            }
+        }
+        if (error instanceof SolrException) {
+            // As a remote SolR would report it, so a rejected batch is handled the same way (see SolrBatchSender)
+            throw new BaseHttpSolrClient.RemoteSolrException("embedded:" + collection, ((SolrException) error).code(), error.getMessage(), error);
+        }
+        if (error instanceof IOException) throw (IOException) error;
+        if (error != null) throw new SolrServerException(error);
+        return rtn;
+    }
+
+    /**
+     * Merges the partitions into a single optimised core and removes them. Nothing else can be added afterwards.
+     * If the merge fails, the core being created is removed and the partitions are kept, so it can be retried.
+     *
+     * @return directory of the core
+     */
+    public Path merge() throws IndexerException {
+        if (merged) throw new IndexerException("[" + collection + "] The partitions have already been merged");
+        long start = System.currentTimeMillis();
+        Path instance = output.resolve(collection);
+        if (Files.exists(instance)) throw new IndexerException("[" + collection + "] " + instance + " already exists, it would be overwritten by the merge");
+        try {
+            for (String partition : partitions) server.commit(partition);
+            createCore(collection, instance);
+            CoreAdminRequest.mergeIndexes(collection, new String[0], partitions, server);
+            server.commit(collection);
+            server.optimize(collection, true, true, 1);
+            long documents = server.query(collection, new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+            merged = true;
+            for (String partition : partitions) CoreAdminRequest.unloadCore(partition, true, true, server);
+            logger.info("[" + collection + "] " + documents + " documents merged into " + instance + " in " + (System.currentTimeMillis() - start) / 1000 + "s");
+        } catch (SolrServerException | IOException | SolrException e) {
+            if (!merged) discard(instance);
+            throw new IndexerException("[" + collection + "] Could not merge the partitions into " + instance, e);
+        }
+        return instance;
+    }
+
+    /**
+     * @return documents in every partition, once committed
+     */
+    long[] getPartitionSizes() throws SolrServerException, IOException {
+        long[] rtn = new long[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            server.commit(partitions[i]);
+            rtn[i] = server.query(partitions[i], new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+        }
+        return rtn;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        server.close();
+        if (!merged) logger.warn("[" + collection + "] The partitions in " + output.resolve("partitions") + " have not been merged");
+    }
+
+    private int getPartition(Object id) {
+        return id == null ? 0 : Math.floorMod(id.toString().hashCode(), partitions.length);
+    }
+
+    /**
+     * Unloads and deletes the partly created core of a failed merge
+     */
+    private void discard(Path instance) {
+        try {
+            if (container.getCoreDescriptor(collection) != null) container.unload(collection, true, true, true);
+        } catch (SolrException e) {
+            logger.warn("[" + collection + "] Could not unload the core of the failed merge: " + e.getMessage());
+        }
+        if (!Files.exists(instance)) return;
+        try (Stream<Path> files = Files.walk(instance)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        } catch (IOException e) {
+            logger.error("[" + collection + "] Could not remove " + instance + " after the failed merge, remove it before merging again", e);
+        }
+    }
+
+    /**
+     * Creates a core in the given instance directory with a copy of the configuration
+     */
+    private void createCore(String name, Path instance) throws IOException {
+        Path target = instance.resolve("conf");
+        Files.createDirectories(target);
+        try (Stream<Path> files = Files.list(conf)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+        container.create(name, instance, Collections.emptyMap(), false);
+    }
+}
@@ -0,0 +1,188 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.http.client.HttpClient;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.impl.ClusterStateProvider;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.util.NamedList;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SolrCloud client queueing the documents per shard leader while they are being built.
+ * <p>
+ * Every batch is split with the router of the collection (taken from the cluster state, aliases are resolved) and
+ * each part is queued to a {@link TrackingUpdateSolrClient} sending straight to the core of the shard leader, so no
+ * node has to forward the documents and all the shards are fed in parallel. Everything else (queries, deletes,
+ * commits, collection admin requests) goes through the {@link CloudSolrClient}, once the queues have been drained
+ * for the updates, so the order of adds, deletes and commits is kept.
+ * <p>
+ * Batches that cannot be routed (e.g. implicit router, routed aliases or documents without unique key) are sent
+ * through the {@link CloudSolrClient} as well. Updates failing in the background, e.g. because a leader changed,
+ * are recorded and {@link #checkErrors()} reports the ones since the last check, as the indexers do before
+ * finishing.
+ */
+public class ShardLeaderSolrClient extends SolrClient {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private final CloudSolrClient cloudClient;
+    private final HttpClient httpClient;
+    private final int queueSize;
+    private final int threadCount;
+    private final Map<String, TrackingUpdateSolrClient> leaders = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> routed = new ConcurrentHashMap<>();
+    private final Map<String, String> uniqueKeys = new ConcurrentHashMap<>();
+    private final AtomicLong notRouted = new AtomicLong();
+
+    /**
+     * @param cloudClient client aware of the cluster state, e.g. the one of a MiniSolrCloudCluster in the tests
+     * @param httpClient  used to reach the leaders, null for the default one
+     * @param queueSize   update requests waiting per leader before adding blocks
+     * @param threadCount threads sending the updates per leader
+     */
+    public ShardLeaderSolrClient(CloudSolrClient cloudClient, HttpClient httpClient, int queueSize, int threadCount) {
+        this.cloudClient = cloudClient;
+        this.httpClient = httpClient;
+        this.queueSize = queueSize;
+        this.threadCount = threadCount;
+        cloudClient.connect();
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+        if (!(request instanceof UpdateRequest)) return cloudClient.request(request, collection);
+        UpdateRequest update = (UpdateRequest) request;
+        boolean onlyAdds = update.getDocuments() != null && !update.getDocuments().isEmpty() && update.getDeleteById() == null
+                && update.getDeleteQuery() == null && update.getAction() == null;
+        if (onlyAdds) {
+            Map<String, UpdateRequest> parts = route(update, collection);
+            if (parts != null) {
+                for (Map.Entry<String, UpdateRequest> part : parts.entrySet()) {
+                    getLeader(part.getKey()).request(part.getValue(), null);
+                    routed.computeIfAbsent(part.getKey(), k -> new AtomicLong()).addAndGet(part.getValue().getDocuments().size());
+                }
+                return new NamedList<>();
+            }
+            notRouted.addAndGet(update.getDocuments().size());
+        }
+        // Deletes and commits must not overtake the documents still waiting in the queues
+        blockUntilFinished();
+        return cloudClient.request(request, collection);
+    }
+
+    /**
+     * Waits for the queued updates to be sent to the leaders
+     */
+    public void blockUntilFinished() {
+        leaders.values().forEach(ConcurrentUpdateSolrClient::blockUntilFinished);
+    }
+
+    /**
+     * Waits for the queued updates to be sent
+     *
+     * @throws IndexerException if any of the updates sent since the last check has failed
+     */
+    public void checkErrors() throws IndexerException {
+        IndexerException failure = null;
+        for (Map.Entry<String, TrackingUpdateSolrClient> leader : leaders.entrySet()) {
+            try {
+                leader.getValue().checkErrors();
+            } catch (IndexerException e) {
+                IndexerException error = new IndexerException("[" + leader.getKey() + "] " + e.getMessage(), e.getCause());
+                if (failure == null) failure = error;
+                else failure.addSuppressed(error);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Logs the documents sent to every shard leader
+     */
+    public void report() {
+        routed.forEach((leader, count) -> logger.info(count.get() + " documents sent straight to the shard leader " + leader));
+        if (notRouted.get() > 0) logger.info(notRouted.get() + " documents could not be routed and were sent through the cluster");
+    }
+
+    @Override
+    public void close() throws IOException {
+        blockUntilFinished();
+        report();
+        for (TrackingUpdateSolrClient leader : leaders.values()) leader.close();
+        cloudClient.close();
+    }
+
+    /**
+     * Splits the documents per shard leader
+     *
+     * @return update per leader core url, null if any of the documents cannot be routed
+     */
+    private Map<String, UpdateRequest> route(UpdateRequest update, String collection) throws SolrServerException, IOException {
+        ClusterStateProvider stateProvider = cloudClient.getClusterStateProvider();
+        List<String> collections = stateProvider.resolveAlias(collection);
+        if (collections.size() != 1) return null;
+        String name = collections.get(0);
+        ClusterState.CollectionRef ref = stateProvider.getState(name);
+        if (ref == null) return null;
+        DocCollection docCollection = ref.get();
+        String uniqueKey = getUniqueKey(name);
+
+        Map<String, UpdateRequest> parts = new HashMap<>();
+        try {
+            for (SolrInputDocument document : update.getDocuments()) {
+                Object id = document.getFieldValue(uniqueKey);
+                if (id == null) return null;
+                Slice slice = docCollection.getRouter().getTargetSlice(id.toString(), document, null, update.getParams(), docCollection);
+                Replica leader = slice == null ? null : slice.getLeader();
+                if (leader == null) return null;
+                parts.computeIfAbsent(leader.getCoreUrl(), k -> {
+                    UpdateRequest part = new UpdateRequest();
+                    part.setParams(update.getParams());
+                    part.setCommitWithin(update.getCommitWithin());
+                    return part;
+                }).add(document);
+            }
+        } catch (SolrException e) {
+            logger.warn("[" + collection + "] Documents cannot be routed to the shard leaders: " + e.getMessage());
+            return null;
+        }
+        return parts;
+    }
+
+    private String getUniqueKey(String collection) throws SolrServerException, IOException {
+        String uniqueKey = uniqueKeys.get(collection);
+        if (uniqueKey == null) {
+            uniqueKey = new SchemaRequest.UniqueKey().process(cloudClient, collection).getUniqueKey();
+            uniqueKeys.put(collection, uniqueKey);
+        }
+        return uniqueKey;
+    }
+
+    private TrackingUpdateSolrClient getLeader(String coreUrl) {
+        return leaders.computeIfAbsent(coreUrl, url -> {
+            ConcurrentUpdateSolrClient.Builder builder = new ConcurrentUpdateSolrClient.Builder(url)
+                    .withQueueSize(queueSize)
+                    .withThreadCount(threadCount);
+            if (httpClient != null) builder.withHttpClient(httpClient);
+            logger.info("Sending updates straight to the shard leader " + url);
+            return new TrackingUpdateSolrClient(builder);
+        });
+    }
+}
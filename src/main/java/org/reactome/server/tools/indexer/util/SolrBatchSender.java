@@ -0,0 +1,166 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sends a batch of documents to SolR, dealing with the failures:
+ * <ul>
+ *     <li>Transient errors (connection problems, 5xx, 429) are retried with exponential backoff.</li>
+ *     <li>When SolR rejects the batch, it is split in halves which are sent separately, so the bad documents are
+ *     isolated in O(log n) requests instead of sending every document on its own. That includes a 5xx still failing
+ *     after the retries, SolR answers 500 to documents it cannot analyse or convert as well.</li>
+ *     <li>A document that is still rejected on its own, or a batch that cannot reach SolR (connection problems, 429,
+ *     503) after all the retries, is written to the {@link DeadLetterFile} (if any) to be replayed later.</li>
+ * </ul>
+ * It does not keep any state about the batches, so one instance can be shared by all indexers and threads.
+ */
+public class SolrBatchSender {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    static final int DEFAULT_RETRIES = 3;
+    static final long DEFAULT_BACKOFF = 500;
+
+    private final DeadLetterFile deadLetterFile;
+    private final int retries;
+    private final long backoff;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong bisections = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param deadLetterFile where the documents that could not be added are written, null to only log them
+     */
+    public SolrBatchSender(DeadLetterFile deadLetterFile) {
+        this(deadLetterFile, DEFAULT_RETRIES, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * @param retries times a transient error is retried
+     * @param backoff milliseconds before the first retry, doubled for every following one
+     */
+    public SolrBatchSender(DeadLetterFile deadLetterFile, int retries, long backoff) {
+        this.deadLetterFile = deadLetterFile;
+        this.retries = retries;
+        this.backoff = backoff;
+    }
+
+    /**
+     * @param commitWithin ms, or -1 to leave the commit to the caller
+     * @return number of documents that could not be added
+     */
+    public int send(SolrClient solrClient, String collection, List<SolrInputDocument> documents, int commitWithin) {
+        return send(solrClient, collection, documents, commitWithin, document -> {});
+    }
+
+    /**
+     * @param onRejected invoked for every document that could not be added, once it has been dead-lettered
+     * @return number of documents that could not be added
+     */
+    public int send(SolrClient solrClient, String collection, List<SolrInputDocument> documents, int commitWithin, Consumer<SolrInputDocument> onRejected) {
+        if (documents.isEmpty()) return 0;
+        Exception error = sendWithRetries(solrClient, collection, documents, commitWithin);
+        if (error == null) return 0;
+        if (isUnavailable(error) || documents.size() == 1) {
+            // Splitting does not help when SolR is not reachable
+            logger.error("[" + collection + "] Could not add " + documents.size() + " document(s)", error);
+            for (SolrInputDocument document : documents) reject(collection, document, error, onRejected);
+            return documents.size();
+        }
+        bisections.incrementAndGet();
+        logger.warn("[" + collection + "] A batch of " + documents.size() + " documents was rejected, splitting it: " + error.getMessage());
+        int half = documents.size() / 2;
+        return send(solrClient, collection, documents.subList(0, half), commitWithin, onRejected)
+                + send(solrClient, collection, documents.subList(half, documents.size()), commitWithin, onRejected);
+    }
+
+    /**
+     * Logs the number of requests, retries and rejected documents so far
+     */
+    public void report() {
+        logger.info(String.format("Solr batches: %d requests, %d retries, %d batches split, %d documents rejected%s",
+                requests.get(), retried.get(), bisections.get(), rejected.get(),
+                deadLetterFile == null || rejected.get() == 0 ? "" : " (written to " + deadLetterFile.getPath() + ")"));
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return null if the documents were added, otherwise the last error
+     */
+    private Exception sendWithRetries(SolrClient solrClient, String collection, List<SolrInputDocument> documents, int commitWithin) {
+        long wait = backoff;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                requests.incrementAndGet();
+                if (commitWithin > 0) {
+                    solrClient.add(collection, documents, commitWithin);
+                } else {
+                    solrClient.add(collection, documents);
+                }
+                return null;
+            } catch (IOException | SolrServerException | BaseHttpSolrClient.RemoteSolrException e) {
+                if (attempt >= retries || !isTransient(e)) return e;
+                logger.warn("[" + collection + "] Sending " + documents.size() + " documents failed, retrying in " + wait + "ms: " + e.getMessage());
+                retried.incrementAndGet();
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return e;
+                }
+                wait *= 2;
+            }
+        }
+    }
+
+    private void reject(String collection, SolrInputDocument document, Exception error, Consumer<SolrInputDocument> onRejected) {
+        rejected.incrementAndGet();
+        String id = DeadLetterFile.getId(document);
+        if (deadLetterFile == null) {
+            logger.error("[" + collection + "] Document " + id + " could not be added");
+        } else {
+            try {
+                deadLetterFile.write(collection, document, error);
+            } catch (IOException e) {
+                logger.error("[" + collection + "] Document " + id + " could not be added nor written to " + deadLetterFile.getPath(), e);
+            }
+        }
+        onRejected.accept(document);
+    }
+
+    /**
+     * SolR refusing the documents (4xx) will do it again, anything else may work later
+     */
+    static boolean isTransient(Exception e) {
+        if (e instanceof BaseHttpSolrClient.RemoteSolrException) {
+            int code = ((BaseHttpSolrClient.RemoteSolrException) e).code();
+            return code >= 500 || code == 429 || code == 408;
+        }
+        return e instanceof IOException || e instanceof SolrServerException;
+    }
+
+    /**
+     * SolR could not be reached or is refusing any request, splitting the batch does not help
+     */
+    static boolean isUnavailable(Exception e) {
+        if (e instanceof BaseHttpSolrClient.RemoteSolrException) {
+            int code = ((BaseHttpSolrClient.RemoteSolrException) e).code();
+            return code == 503 || code == 429;
+        }
+        return e instanceof IOException || e instanceof SolrServerException;
+    }
+}
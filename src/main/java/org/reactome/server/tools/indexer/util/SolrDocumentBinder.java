@@ -0,0 +1,135 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.reactome.server.tools.indexer.deleted.model.DeletedDocument;
+import org.reactome.server.tools.indexer.icon.model.IconDocument;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.target.model.Target;
+
+import java.util.Collection;
+
+/**
+ * Turns the documents into SolrInputDocuments without going through the reflection of SolrJ's DocumentObjectBinder.
+ * <p>
+ * Every member annotated with {@link org.apache.solr.client.solrj.beans.Field} has to be listed here, with the same
+ * name. Null values and empty collections are skipped, SolR would not store anything for them anyway.
+ * SolrDocumentBinderTest checks that the result is the same as the reflective one, so a field added to a model
+ * but not here makes it fail.
+ */
+public class SolrDocumentBinder {
+
+    public static SolrInputDocument toSolrInputDocument(IndexDocument document) {
+        SolrInputDocument doc = new SolrInputDocument();
+        addIndexDocumentFields(doc, document);
+        return doc;
+    }
+
+    public static SolrInputDocument toSolrInputDocument(IconDocument document) {
+        SolrInputDocument doc = new SolrInputDocument();
+        add(doc, "iconName", document.getIconName());
+        add(doc, "iconCategories", document.getIconCategories());
+        add(doc, "iconCuratorName", document.getIconCuratorName());
+        add(doc, "iconCuratorOrcidId", document.getIconCuratorOrcidId());
+        add(doc, "iconCuratorUrl", document.getIconCuratorUrl());
+        add(doc, "iconDesignerName", document.getIconDesignerName());
+        add(doc, "iconDesignerOrcidId", document.getIconDesignerOrcidId());
+        add(doc, "iconDesignerUrl", document.getIconDesignerUrl());
+        add(doc, "iconReferences", document.getIconReferences());
+        add(doc, "iconPhysicalEntities", document.getIconPhysicalEntities());
+        add(doc, "iconEhlds", document.getIconEhlds());
+        add(doc, "iconSynonyms", document.getIconSynonyms());
+        addIndexDocumentFields(doc, document);
+        return doc;
+    }
+
+    public static SolrInputDocument toSolrInputDocument(DeletedDocument document) {
+        SolrInputDocument doc = new SolrInputDocument();
+        add(doc, "stId", document.getStId());
+        add(doc, "dbId", document.getDbId());
+        add(doc, "name", document.getName());
+        add(doc, "type", document.getType());
+        add(doc, "deleted", document.getDeleted());
+        add(doc, "exactType", document.getExactType());
+        add(doc, "reason", document.getReason());
+        add(doc, "explanation", document.getExplanation());
+        add(doc, "date", document.getDate());
+        add(doc, "replacementDbIds", document.getReplacementDbIds());
+        add(doc, "replacementStIds", document.getReplacementStIds());
+        return doc;
+    }
+
+    public static SolrInputDocument toSolrInputDocument(Target target) {
+        SolrInputDocument doc = new SolrInputDocument();
+        add(doc, "identifier", target.getIdentifier());
+        add(doc, "accessions", target.getAccessions());
+        add(doc, "geneNames", target.getGeneNames());
+        add(doc, "synonyms", target.getSynonyms());
+        add(doc, "resource", target.getResource());
+        return doc;
+    }
+
+    private static void addIndexDocumentFields(SolrInputDocument doc, IndexDocument document) {
+        add(doc, "dbId", document.getDbId());
+        add(doc, "stId", document.getStId());
+        add(doc, "oldStId", document.getOldStId());
+        add(doc, "name", document.getName());
+        add(doc, "type", document.getType());
+        add(doc, "exactType", document.getExactType());
+        add(doc, "isDisease", document.getIsDisease());
+        add(doc, "isReferenceSummary", document.getIsReferenceSummary());
+        add(doc, "hasReferenceEntity", document.getHasReferenceEntity());
+        add(doc, "hasEHLD", document.getHasEHLD());
+        add(doc, "diseaseId", document.getDiseaseId());
+        add(doc, "diseaseName", document.getDiseaseName());
+        add(doc, "diseaseSynonyms", document.getDiseaseSynonyms());
+        add(doc, "species", document.getSpecies());
+        add(doc, "relatedSpecies", document.getRelatedSpecies());
+        add(doc, "synonyms", document.getSynonyms());
+        add(doc, "summation", document.getSummation());
+        add(doc, "inferredSummation", document.getInferredSummation());
+        add(doc, "compartmentName", document.getCompartmentName());
+        add(doc, "compartmentAccession", document.getCompartmentAccession());
+        add(doc, "literatureReferenceTitle", document.getLiteratureReferenceTitle());
+        add(doc, "literatureReferenceAuthor", document.getLiteratureReferenceAuthor());
+        add(doc, "literatureReferencePubMedId", document.getLiteratureReferencePubMedId());
+        add(doc, "literatureReferenceIsbn", document.getLiteratureReferenceIsbn());
+        add(doc, "goBiologicalProcessName", document.getGoBiologicalProcessName());
+        add(doc, "goBiologicalProcessAccessions", document.getGoBiologicalProcessAccessions());
+        add(doc, "goCellularComponentName", document.getGoCellularComponentName());
+        add(doc, "goCellularComponentAccessions", document.getGoCellularComponentAccessions());
+        add(doc, "goMolecularFunctionName", document.getGoMolecularFunctionName());
+        add(doc, "goMolecularFunctionAccession", document.getGoMolecularFunctionAccession());
+        add(doc, "keywords", document.getKeywords());
+        add(doc, "crossReferences", document.getCrossReferences());
+        add(doc, "referenceCrossReferences", document.getReferenceCrossReferences());
+        add(doc, "referenceName", document.getReferenceName());
+        add(doc, "referenceIdentifiers", document.getReferenceIdentifiers());
+        add(doc, "referenceDNAIdentifiers", document.getReferenceDNAIdentifiers());
+        add(doc, "referenceRNAIdentifiers", document.getReferenceRNAIdentifiers());
+        add(doc, "referenceURL", document.getReferenceURL());
+        add(doc, "databaseName", document.getDatabaseName());
+        add(doc, "referenceSynonyms", document.getReferenceSynonyms());
+        add(doc, "referenceOtherIdentifier", document.getReferenceOtherIdentifier());
+        add(doc, "referenceSecondaryIdentifier", document.getReferenceSecondaryIdentifier());
+        add(doc, "referenceGeneNames", document.getReferenceGeneNames());
+        add(doc, "fragmentModification", document.getFragmentModification());
+        add(doc, "fireworksSpecies", document.getFireworksSpecies());
+        add(doc, "physicalEntitiesDbId", document.getPhysicalEntitiesDbId());
+        add(doc, "diagrams", document.getDiagrams());
+        add(doc, "diagramsWithInteractor", document.getDiagramsWithInteractor());
+        add(doc, "occurrences", document.getOccurrences());
+        add(doc, "occurrencesWithInteractor", document.getOccurrencesWithInteractor());
+        add(doc, "llps", document.getLlps());
+        add(doc, "orcidId", document.getOrcidId());
+        add(doc, "authoredPathways", document.getAuthoredPathways());
+        add(doc, "authoredReactions", document.getAuthoredReactions());
+        add(doc, "reviewedPathways", document.getReviewedPathways());
+        add(doc, "reviewedReactions", document.getReviewedReactions());
+    }
+
+    private static void add(SolrInputDocument doc, String name, Object value) {
+        if (value == null) return;
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) return;
+        doc.setField(name, value);
+    }
+}
@@ -0,0 +1,54 @@
+package org.reactome.server.tools.indexer.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+import java.util.*;
+
+/**
+ * JSON representation of a {@link SolrInputDocument}, as written to the dead-letter and dump files: an object with
+ * a member per field, multivalued fields as arrays.
+ */
+class SolrDocumentJson {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SolrDocumentJson() {
+    }
+
+    static Map<String, Object> toMap(SolrInputDocument document) {
+        Map<String, Object> rtn = new LinkedHashMap<>();
+        for (SolrInputField field : document) {
+            Object value = field.getValue();
+            rtn.put(field.getName(), value instanceof Collection ? new ArrayList<>((Collection<?>) value) : value);
+        }
+        return rtn;
+    }
+
+    static SolrInputDocument toSolrInputDocument(JsonNode node) {
+        SolrInputDocument document = new SolrInputDocument();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (value.isArray()) {
+                List<Object> values = new ArrayList<>(value.size());
+                for (JsonNode item : value) values.add(toValue(item));
+                document.setField(field.getKey(), values);
+            } else {
+                document.setField(field.getKey(), toValue(value));
+            }
+        }
+        return document;
+    }
+
+    private static Object toValue(JsonNode node) {
+        if (node.isBoolean()) return node.booleanValue();
+        if (node.isIntegralNumber()) return node.longValue();
+        if (node.isNumber()) return node.doubleValue();
+        if (node.isNull()) return null;
+        return node.asText();
+    }
+}
@@ -8,12 +8,18 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.reactome.server.tools.indexer.exception.IndexerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Guilherme S Viteri <gviteri@ebi.ac.uk>
@@ -30,16 +36,81 @@ public class SolrUtility {
      * @return solr connection
      */
     public static SolrClient getSolrClient(String user, String password, String url) {
+        HttpClient client = getHttpClient(user, password);
+        if (client != null) {
+            return new HttpSolrClient.Builder(url).withHttpClient(client).build();
+        }
+
+        return new HttpSolrClient.Builder(url).build();
+    }
+
+    /**
+     * Get solr connection using authentication, updates are queued and sent to SolR in the background
+     *
+     * @param user        solr user
+     * @param password    solr password
+     * @param url         solr url
+     * @param queueSize   number of update requests waiting to be sent before adding blocks
+     * @param threadCount number of threads sending updates concurrently
+     * @return solr connection
+     */
+    public static TrackingUpdateSolrClient getConcurrentSolrClient(String user, String password, String url, int queueSize, int threadCount) {
+        ConcurrentUpdateSolrClient.Builder builder = new ConcurrentUpdateSolrClient.Builder(url)
+                .withQueueSize(queueSize)
+                .withThreadCount(threadCount);
+        HttpClient client = getHttpClient(user, password);
+        if (client != null) builder.withHttpClient(client);
+        return new TrackingUpdateSolrClient(builder);
+    }
+
+    /**
+     * Get SolrCloud connection using authentication. The cluster state is read from ZooKeeper, or from the Solr
+     * nodes when there is no zkHost, and the updates are sent straight to the shard leaders, in parallel per shard.
+     *
+     * @param user     solr user
+     * @param password solr password
+     * @param url      solr url, used when zkHost is null
+     * @param zkHost   ZooKeeper ensemble with an optional chroot, e.g. zk1:2181,zk2:2181/solr
+     * @return solr connection
+     */
+    public static CloudSolrClient getCloudSolrClient(String user, String password, String url, String zkHost) {
+        CloudSolrClient.Builder builder;
+        if (zkHost != null) {
+            int chroot = zkHost.indexOf('/');
+            List<String> hosts = Arrays.asList((chroot < 0 ? zkHost : zkHost.substring(0, chroot)).split(","));
+            builder = new CloudSolrClient.Builder(hosts, chroot < 0 ? Optional.empty() : Optional.of(zkHost.substring(chroot)));
+        } else {
+            builder = new CloudSolrClient.Builder(Collections.singletonList(url));
+        }
+        builder.sendDirectUpdatesToShardLeadersOnly().withParallelUpdates(true);
+        HttpClient client = getHttpClient(user, password);
+        if (client != null) builder.withHttpClient(client);
+        return builder.build();
+    }
+
+    /**
+     * Get SolrCloud connection using authentication, updates are queued per shard leader and sent in the background
+     *
+     * @param queueSize   number of update requests waiting per leader before adding blocks
+     * @param threadCount number of threads sending updates per leader
+     * @see #getCloudSolrClient(String, String, String, String)
+     */
+    public static ShardLeaderSolrClient getShardLeaderSolrClient(String user, String password, String url, String zkHost, int queueSize, int threadCount) {
+        return new ShardLeaderSolrClient(getCloudSolrClient(user, password, url, zkHost), getHttpClient(user, password), queueSize, threadCount);
+    }
+
+    /**
+     * @return http client authenticating preemptively, null if there are no credentials
+     */
+    private static HttpClient getHttpClient(String user, String password) {
         if (user != null && !user.isEmpty() && password != null && !password.isEmpty()) {
             HttpClientBuilder builder = HttpClientBuilder.create().addInterceptorFirst(new PreemptiveAuthInterceptor());
             CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
             UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(user, password);
             credentialsProvider.setCredentials(AuthScope.ANY, credentials);
-            HttpClient client = builder.setDefaultCredentialsProvider(credentialsProvider).build();
-            return new HttpSolrClient.Builder(url).withHttpClient(client).build();
+            return builder.setDefaultCredentialsProvider(credentialsProvider).build();
         }
-
-        return new HttpSolrClient.Builder(url).build();
+        return null;
     }
 
     /**
@@ -80,6 +151,20 @@ public class SolrUtility {
         }
     }
 
+    /**
+     * Waits for the updates a {@link TrackingUpdateSolrClient} or a {@link ShardLeaderSolrClient} is sending in the
+     * background, nothing to do for any other client
+     *
+     * @throws IndexerException if any of the updates sent since the last check has failed
+     */
+    public static void checkErrors(SolrClient solrClient) throws IndexerException {
+        if (solrClient instanceof TrackingUpdateSolrClient) {
+            ((TrackingUpdateSolrClient) solrClient).checkErrors();
+        } else if (solrClient instanceof ShardLeaderSolrClient) {
+            ((ShardLeaderSolrClient) solrClient).checkErrors();
+        }
+    }
+
     /**
      * Commits Data that has been added till now to Solr Server
      *
@@ -0,0 +1,146 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the stages of an indexing run as a dependency graph. Every stage starts on its own thread as soon as all
+ * the stages it depends on have finished, so the total time is bounded by the longest chain instead of the sum.
+ * <p>
+ * A stage can only depend on stages added before it, hence there cannot be cycles. When a stage fails, the ones
+ * depending on it are skipped while the independent ones carry on. Once everything is done, the wall time of
+ * every stage and the critical path are logged.
+ */
+public class StageScheduler {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public interface Stage {
+        void run() throws Exception;
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, List<String>> dependencies = new HashMap<>();
+    private final Map<String, long[]> timings = new ConcurrentHashMap<>();
+    private long start;
+
+    /**
+     * @param name         unique name of the stage
+     * @param stage        what has to be executed
+     * @param dependencies stages that have to finish before this one starts. They must have been added already.
+     */
+    public StageScheduler add(String name, Stage stage, String... dependencies) {
+        if (stages.containsKey(name)) throw new IllegalArgumentException("Stage '" + name + "' has already been added");
+        for (String dependency : dependencies) {
+            if (!stages.containsKey(dependency)) throw new IllegalArgumentException("Stage '" + name + "' depends on unknown stage '" + dependency + "'");
+        }
+        stages.put(name, stage);
+        this.dependencies.put(name, List.of(dependencies));
+        return this;
+    }
+
+    /**
+     * @return true if a stage with the given name has been added
+     */
+    public boolean contains(String name) {
+        return stages.containsKey(name);
+    }
+
+    /**
+     * Runs all the stages and waits for them to finish
+     *
+     * @throws IndexerException with the first failure, once all the stages that could run have finished
+     */
+    public void run() throws IndexerException {
+        start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+                String name = entry.getKey();
+                CompletableFuture<?>[] previous = dependencies.get(name).stream().map(futures::get).toArray(CompletableFuture[]::new);
+                futures.put(name, CompletableFuture.allOf(previous).thenRunAsync(() -> execute(name, entry.getValue()), executor));
+            }
+
+            Throwable failure = null;
+            for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().join();
+                } catch (CompletionException | CancellationException e) {
+                    if (!timings.containsKey(entry.getKey())) logger.warn("Stage '" + entry.getKey() + "' has been skipped");
+                    if (failure == null) failure = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+            report();
+            if (failure != null) {
+                if (failure instanceof IndexerException) throw (IndexerException) failure;
+                throw new IndexerException(failure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void execute(String name, Stage stage) {
+        String threadName = Thread.currentThread().getName();
+        Thread.currentThread().setName("stage-" + name);
+        long stageStart = System.currentTimeMillis();
+        logger.info("Stage '" + name + "' started");
+        try {
+            stage.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            timings.put(name, new long[]{stageStart, System.currentTimeMillis()});
+            logger.info("Stage '" + name + "' finished in " + (System.currentTimeMillis() - stageStart) + "ms");
+            Thread.currentThread().setName(threadName);
+        }
+    }
+
+    /**
+     * Logs the wall time of every stage and the critical path, the chain of stages that determined the total time
+     */
+    private void report() {
+        StringBuilder sb = new StringBuilder("Stages wall time:");
+        for (String name : stages.keySet()) {
+            long[] timing = timings.get(name);
+            if (timing == null) {
+                sb.append("\n\t").append(name).append(": skipped");
+            } else {
+                sb.append(String.format("%n\t%s: %dms (started at +%dms)", name, timing[1] - timing[0], timing[0] - start));
+            }
+        }
+        List<String> path = getCriticalPath();
+        sb.append("\nCritical path: ").append(path.stream()
+                .map(name -> name + " (" + (timings.get(name)[1] - timings.get(name)[0]) + "ms)")
+                .collect(Collectors.joining(" -> ")));
+        sb.append("\nTotal: ").append(System.currentTimeMillis() - start).append("ms");
+        logger.info(sb.toString());
+    }
+
+    /**
+     * @return from the stage finishing last, walking back through the dependency that finished last each time
+     */
+    List<String> getCriticalPath() {
+        LinkedList<String> path = new LinkedList<>();
+        String current = latest(stages.keySet());
+        while (current != null) {
+            path.addFirst(current);
+            current = latest(dependencies.get(current));
+        }
+        return path;
+    }
+
+    private String latest(Collection<String> names) {
+        return names.stream()
+                .filter(timings::containsKey)
+                .max(Comparator.comparingLong(name -> timings.get(name)[1]))
+                .orElse(null);
+    }
+}
@@ -0,0 +1,136 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares the values of the document fields with few distinct values (species, compartments, types, ...), so the
+ * documents waiting in the batches, the EBeye queues and the caches do not hold their own copies.
+ * <p>
+ * Strings are interned per domain. Short lists and sets, e.g. ["Homo sapiens"] or ["Entries without species"], are
+ * shared as unmodifiable collections with the same iteration order (the document fingerprints depend on it), hence
+ * the documents must not modify them. Longer ones get their values interned but are not shared.
+ * <p>
+ * {@link #report()} logs, per domain, how often a value was shared and an estimation of the heap it saved.
+ */
+public class StringPool {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    public static final String NO_SPECIES = "Entries without species";
+
+    public static final StringPool SPECIES = new StringPool("species");
+    public static final StringPool COMPARTMENT = new StringPool("compartment");
+    public static final StringPool TYPE = new StringPool("type");
+    public static final StringPool DATABASE_NAME = new StringPool("databaseName");
+    public static final StringPool DISEASE = new StringPool("disease");
+
+    private static final List<StringPool> POOLS = List.of(SPECIES, COMPARTMENT, TYPE, DATABASE_NAME, DISEASE);
+
+    static final int MAX_SHARED_SIZE = 8;
+
+    // Compact strings: object header and fields, then the byte[] header, 8-byte aligned
+    private static final int STRING_BYTES = 24 + 16;
+    private static final int LIST_BYTES = 24 + 16;
+
+    private final String name;
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private final Map<List<String>, List<String>> lists = new ConcurrentHashMap<>();
+    private final Map<List<String>, Set<String>> sets = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collectionLookups = new LongAdder();
+    private final LongAdder collectionHits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    StringPool(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the shared instance equal to the value
+     */
+    public String get(String value) {
+        if (value == null) return null;
+        lookups.increment();
+        String shared = strings.putIfAbsent(value, value);
+        if (shared == null) return value;
+        if (shared != value) {
+            hits.increment();
+            savedBytes.add(align(STRING_BYTES + value.length()));
+        }
+        return shared;
+    }
+
+    /**
+     * @return an unmodifiable list with the same values, shared if it is short
+     */
+    public List<String> get(List<String> values) {
+        if (values == null) return null;
+        List<String> interned = intern(values);
+        if (values.size() > MAX_SHARED_SIZE) return interned;
+        collectionLookups.increment();
+        List<String> shared = lists.putIfAbsent(interned, interned);
+        if (shared == null) return interned;
+        collectionHits.increment();
+        savedBytes.add(align(LIST_BYTES + 4L * values.size()));
+        return shared;
+    }
+
+    /**
+     * @return an unmodifiable set with the same values in the same order, shared if it is short
+     */
+    public Set<String> get(Set<String> values) {
+        if (values == null) return null;
+        List<String> interned = intern(values);
+        Set<String> set = Collections.unmodifiableSet(new LinkedHashSet<>(interned));
+        if (values.size() > MAX_SHARED_SIZE) return set;
+        collectionLookups.increment();
+        Set<String> shared = sets.putIfAbsent(interned, set);
+        if (shared == null) return set;
+        collectionHits.increment();
+        // A LinkedHashSet takes about a HashMap node plus the before/after links per value
+        savedBytes.add(align(LIST_BYTES + 56L + 48L * values.size()));
+        return shared;
+    }
+
+    /**
+     * Shortcut for a list with a single value
+     */
+    public List<String> singleton(String value) {
+        return get(Collections.singletonList(value));
+    }
+
+    /**
+     * Logs the usage of every pool
+     */
+    public static void report() {
+        long total = 0;
+        for (StringPool pool : POOLS) {
+            logger.info(String.format("String pool %s: %d distinct values, %d of %d strings shared, %d of %d lists/sets shared (%d distinct), ~%.1fMB saved",
+                    pool.name, pool.strings.size(), pool.hits.sum(), pool.lookups.sum(), pool.collectionHits.sum(), pool.collectionLookups.sum(),
+                    pool.lists.size() + pool.sets.size(), pool.savedBytes.sum() / 1048576.0));
+            total += pool.savedBytes.sum();
+        }
+        logger.info(String.format("String pools saved ~%.1fMB of heap in total for the documents built", total / 1048576.0));
+    }
+
+    long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    private List<String> intern(Collection<String> values) {
+        String[] rtn = new String[values.size()];
+        int i = 0;
+        for (String value : values) rtn[i++] = get(value);
+        return Collections.unmodifiableList(Arrays.asList(rtn));
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,68 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue-backed client sending the updates to SolR from several threads while the documents are being built.
+ * <p>
+ * Updates are sent in the background, so the errors SolR returns for them cannot be thrown by addBeans. They are
+ * recorded here instead and {@link #checkErrors()} throws once the queue has been drained, which the indexers do
+ * before finishing. Every error is only reported by the first check following it, so an indexer sharing the client
+ * does not fail because of the updates of a previous one.
+ * <p>
+ * The failed updates cannot be told apart from the rest of the stream they were sent in, hence they are not retried
+ * nor written to the dead-letter file as the {@link SolrBatchSender} does: a rejected document fails the indexer.
+ */
+public class TrackingUpdateSolrClient extends ConcurrentUpdateSolrClient {
+    private static final Logger logger = LoggerFactory.getLogger("importLogger");
+
+    private final Object lock = new Object();
+    private long errors = 0;
+    private long checked = 0;
+    private Throwable firstUnchecked = null;
+
+    TrackingUpdateSolrClient(Builder builder) {
+        super(builder);
+    }
+
+    @Override
+    public void handleError(Throwable ex) {
+        synchronized (lock) {
+            errors++;
+            if (firstUnchecked == null) firstUnchecked = ex;
+        }
+        logger.error("An update sent to SolR in the background failed", ex);
+    }
+
+    /**
+     * Waits for the queued updates to be sent
+     *
+     * @throws IndexerException if any of the updates sent since the last check has failed
+     */
+    public void checkErrors() throws IndexerException {
+        blockUntilFinished();
+        long count;
+        Throwable first;
+        synchronized (lock) {
+            count = errors - checked;
+            checked = errors;
+            first = firstUnchecked;
+            firstUnchecked = null;
+        }
+        if (count > 0) {
+            throw new IndexerException(count + " update(s) sent to SolR in the background failed", first);
+        }
+    }
+
+    /**
+     * @return number of updates that failed so far, checked or not
+     */
+    public long getErrorCount() {
+        synchronized (lock) {
+            return errors;
+        }
+    }
+}
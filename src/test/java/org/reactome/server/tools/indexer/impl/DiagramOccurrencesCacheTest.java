@@ -0,0 +1,89 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.BaseTest;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.result.DiagramOccurrences;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.service.DiagramService;
+import org.reactome.server.graph.service.InteractionsService;
+import org.reactome.server.tools.indexer.model.DiagramOccurrence;
+import org.reactome.server.tools.indexer.model.InteractorRow;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the prefetched diagram occurrences, order included, with the ones of the graph services
+ */
+class DiagramOccurrencesCacheTest extends BaseTest {
+
+    // Marker, drug, protein, complex and pathway
+    private static final List<Long> OBJECTS = List.of(6809649L, 9649889L, 199420L, 5672950L, 109581L);
+    private static final List<Long> REFERENCE_ENTITIES = List.of(55448L);
+
+    @Autowired
+    DiagramOccurrencesCache diagramOccurrencesCache;
+
+    @Autowired
+    InteractorExtractor interactorExtractor;
+
+    @Autowired
+    DatabaseObjectService databaseObjectService;
+
+    @Autowired
+    DiagramService diagramService;
+
+    @Autowired
+    InteractionsService interactionsService;
+
+    @AfterEach
+    void clear() {
+        diagramOccurrencesCache.clear();
+    }
+
+    @Test
+    void objectsMatchService() {
+        diagramOccurrencesCache.prefetch(OBJECTS, false);
+        for (Long dbId : OBJECTS) {
+            DatabaseObject databaseObject = databaseObjectService.findById(dbId);
+            Assertions.assertEquals(toList(diagramService.getDiagramOccurrences(databaseObject.getStId())),
+                    diagramOccurrencesCache.getDiagramOccurrences(databaseObject), "dbId " + dbId);
+        }
+    }
+
+    @Test
+    void referenceEntitiesMatchService() {
+        diagramOccurrencesCache.prefetch(REFERENCE_ENTITIES, true);
+        for (Long dbId : REFERENCE_ENTITIES) {
+            DatabaseObject databaseObject = databaseObjectService.findById(dbId);
+            Assertions.assertEquals(toList(diagramService.getDiagramOccurrencesOfReferenceEntity(dbId)),
+                    diagramOccurrencesCache.getDiagramOccurrences(databaseObject), "dbId " + dbId);
+        }
+    }
+
+    @Test
+    void interactorsMatchService() {
+        List<String> identifiers;
+        try (Stream<InteractorRow> rows = interactorExtractor.stream()) {
+            identifiers = rows.limit(50).map(InteractorRow::getMainIdentifier).collect(Collectors.toList());
+        }
+        Assertions.assertFalse(identifiers.isEmpty());
+        diagramOccurrencesCache.prefetchInteractors(identifiers);
+        for (String identifier : identifiers) {
+            Assertions.assertEquals(toList(interactionsService.getDiagramOccurrences(identifier)),
+                    diagramOccurrencesCache.getInteractorDiagramOccurrences(identifier), "interactor " + identifier);
+        }
+    }
+
+    private static List<DiagramOccurrence> toList(Collection<DiagramOccurrences> dgoc) {
+        if (dgoc == null) return new ArrayList<>();
+        return dgoc.stream().map(DiagramOccurrence::new).collect(Collectors.toList());
+    }
+}
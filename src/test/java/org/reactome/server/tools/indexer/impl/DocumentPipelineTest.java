@@ -0,0 +1,70 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.indexer.model.DocumentAndImport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+class DocumentPipelineTest {
+
+    @Test
+    void keepsTheOrderWithinTheInFlightBound() throws Exception {
+        int chunkSize = 10;
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        DocumentPipeline pipeline = new DocumentPipeline(dbId -> {
+            // The first chunks are the slowest ones, the others keep arriving before them
+            if (dbId < 2 * chunkSize) sleep(5);
+            else if (ThreadLocalRandom.current().nextInt(10) == 0) sleep(1);
+            return new DocumentAndImport(null, true);
+        }, chunk -> maxInFlight.accumulateAndGet(started.incrementAndGet() - written.get() / chunkSize, Math::max), 4, chunkSize);
+
+        List<Long> dbIds = LongStream.range(0, 5000).boxed().collect(Collectors.toList());
+        List<Long> received = new ArrayList<>();
+        pipeline.run(dbIds, result -> {
+            received.add(result.dbId);
+            written.incrementAndGet();
+        });
+        Assertions.assertEquals(dbIds, received);
+        Assertions.assertTrue(maxInFlight.get() <= pipeline.getMaxInFlight(), maxInFlight.get() + " chunks in flight");
+    }
+
+    @Test
+    void whenIdleWaitsForTheWorkers() throws Exception {
+        AtomicInteger building = new AtomicInteger();
+        AtomicInteger busyWhileIdle = new AtomicInteger();
+        DocumentPipeline[] pipeline = new DocumentPipeline[1];
+        pipeline[0] = new DocumentPipeline(dbId -> {
+            building.incrementAndGet();
+            sleep(1);
+            building.decrementAndGet();
+            return new DocumentAndImport(null, true);
+        }, 4, 5);
+
+        List<Long> dbIds = LongStream.range(0, 500).boxed().collect(Collectors.toList());
+        AtomicInteger idle = new AtomicInteger();
+        pipeline[0].run(dbIds, result -> {
+            if (result.dbId % 50 == 0) pipeline[0].whenIdle(() -> {
+                idle.incrementAndGet();
+                if (building.get() != 0) busyWhileIdle.incrementAndGet();
+            });
+        });
+        Assertions.assertEquals(10, idle.get());
+        Assertions.assertEquals(0, busyWhileIdle.get());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
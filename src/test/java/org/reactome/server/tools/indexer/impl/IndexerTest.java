@@ -8,9 +8,15 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.reactome.server.BaseTest;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
+import org.reactome.server.graph.domain.model.ReferenceEntity;
 import org.reactome.server.tools.indexer.model.DocumentAndImport;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Collections;
+import java.util.List;
+
 
 class IndexerTest extends BaseTest {
 
@@ -40,4 +46,29 @@ class IndexerTest extends BaseTest {
         DocumentAndImport documentAndImport = documentBuilder.createSolrDocument(6809649L);
         Assertions.assertTrue(documentAndImport.document.getDiagrams().contains("R-HSA-9725554"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void prefetchedDiagramOccurrencesMatchService() {
+        List<Long> physicalEntities = List.of(6809649L, 9649889L);
+        documentBuilder.prefetch(physicalEntities, PhysicalEntity.class);
+        for (Long dbId : physicalEntities) {
+            assertSameDiagramOccurrences(documentBuilder.createSolrDocument(dbId), buildWithoutPrefetch(dbId, PhysicalEntity.class));
+        }
+
+        List<Long> referenceEntities = List.of(55448L);
+        documentBuilder.prefetch(referenceEntities, ReferenceEntity.class);
+        assertSameDiagramOccurrences(documentBuilder.createSolrDocument(55448L), buildWithoutPrefetch(55448L, ReferenceEntity.class));
+    }
+
+    private DocumentAndImport buildWithoutPrefetch(Long dbId, Class<? extends DatabaseObject> clazz) {
+        documentBuilder.prefetch(Collections.emptyList(), clazz);
+        return documentBuilder.createSolrDocument(dbId);
+    }
+
+    private void assertSameDiagramOccurrences(DocumentAndImport prefetched, DocumentAndImport expected) {
+        Assertions.assertEquals(expected.document.getDiagrams(), prefetched.document.getDiagrams());
+        Assertions.assertEquals(expected.document.getOccurrences(), prefetched.document.getOccurrences());
+        Assertions.assertEquals(expected.document.getDiagramsWithInteractor(), prefetched.document.getDiagramsWithInteractor());
+        Assertions.assertEquals(expected.document.getOccurrencesWithInteractor(), prefetched.document.getOccurrencesWithInteractor());
+    }
+}
@@ -0,0 +1,58 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.BaseTest;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.service.InteractionsService;
+import org.reactome.server.tools.indexer.model.InteractorRow;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the prefetched lower level pathways, order included, with the ones of the interactions service
+ */
+class InteractorPathwaysCacheTest extends BaseTest {
+
+    @Autowired
+    InteractorPathwaysCache interactorPathwaysCache;
+
+    @Autowired
+    InteractorExtractor interactorExtractor;
+
+    @Autowired
+    InteractionsService interactionsService;
+
+    @AfterEach
+    void clear() {
+        interactorPathwaysCache.clear();
+    }
+
+    @Test
+    void interactorsMatchService() {
+        List<InteractorRow> interactors;
+        try (Stream<InteractorRow> rows = interactorExtractor.stream()) {
+            interactors = rows.limit(50).collect(Collectors.toList());
+        }
+        Assertions.assertFalse(interactors.isEmpty());
+        Map<String, List<String>> identifiersBySpecies = interactors.stream().collect(Collectors.groupingBy(
+                InteractorDocumentBuilder::getSpeciesName,
+                Collectors.mapping(InteractorRow::getMainIdentifier, Collectors.toList())));
+        interactorPathwaysCache.prefetch(identifiersBySpecies);
+        for (InteractorRow interactor : interactors) {
+            String identifier = interactor.getMainIdentifier();
+            String speciesName = InteractorDocumentBuilder.getSpeciesName(interactor);
+            Collection<Pathway> pathways = interactionsService.getLowerLevelPathways(identifier, speciesName);
+            List<String> expected = pathways == null ? Collections.emptyList() : pathways.stream().map(DatabaseObject::getStId).collect(Collectors.toList());
+            Assertions.assertEquals(expected, interactorPathwaysCache.getLowerLevelPathways(identifier, speciesName), "llps of " + identifier + " in " + speciesName);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+class MarshallerTest {
+
+    private static final String NAME = "Reactome";
+    private static final String DESCRIPTION = "Reactome description";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sameOutputAsConcatenatingWriter() throws Exception {
+        List<IndexDocument> documents = documents(5000);
+        File expected = dir.resolve("expected.xml").toFile();
+        File actual = dir.resolve("actual.xml").toFile();
+        writeLegacy(expected, documents);
+        write(new Marshaller(actual, NAME, DESCRIPTION), documents);
+        Assertions.assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+
+    @Test
+    void gzipWithCheckpointsAndResume() throws Exception {
+        List<IndexDocument> documents = documents(3000);
+        File plain = dir.resolve("ebeye.xml").toFile();
+        write(new Marshaller(plain, NAME, DESCRIPTION), documents);
+
+        // Every position() closes a gzip member, the file is cut at one of them and resumed
+        File gz = dir.resolve("ebeye.xml.gz").toFile();
+        Marshaller marshaller = new Marshaller(gz, NAME, DESCRIPTION);
+        marshaller.writeHeader(1);
+        long resumeAt = -1;
+        for (int i = 0; i < 2000; i++) {
+            marshaller.writeEntry(documents.get(i));
+            if (i == 999) resumeAt = marshaller.position();
+        }
+        marshaller.position(); // the run "dies" here
+
+        Marshaller resumed = new Marshaller(gz, NAME, DESCRIPTION, resumeAt);
+        for (int i = 1000; i < documents.size(); i++) resumed.writeEntry(documents.get(i));
+        resumed.writeFooter(documents.size());
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(gz))) {
+            Assertions.assertArrayEquals(Files.readAllBytes(plain.toPath()), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void escapesAsEscapeXml11() throws Exception {
+        char[] pool = {'a', '"', '&', '<', '>', '\'', 0, 1, 9, 10, 11, 12, 13, 31, 0x7f, 0x85, 0x9f, 0xe9, 0xfffe, 0xffff, 0xd83d, 0xde00};
+        Random random = new Random(7);
+        List<IndexDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int j = random.nextInt(20); j > 0; j--) name.append(pool[random.nextInt(pool.length)]);
+            IndexDocument document = new IndexDocument();
+            document.setDbId(String.valueOf(i));
+            document.setName(name.toString());
+            document.setType("Protein");
+            documents.add(document);
+        }
+        File expected = dir.resolve("expected.xml").toFile();
+        File actual = dir.resolve("actual.xml").toFile();
+        writeLegacy(expected, documents);
+        write(new Marshaller(actual, NAME, DESCRIPTION), documents);
+        Assertions.assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+
+    @Test
+    void asyncWriterRejectsBrokenEntriesOnTheCallingThread() throws Exception {
+        List<IndexDocument> documents = documents(3000);
+        File expected = dir.resolve("expected.xml").toFile();
+        write(new Marshaller(expected, NAME, DESCRIPTION), documents);
+
+        // A reference without database name cannot be written
+        IndexDocument broken = documents(1).get(0);
+        broken.setDatabaseName(null);
+
+        File actual = dir.resolve("actual.xml").toFile();
+        AsyncMarshaller marshaller = new AsyncMarshaller(new Marshaller(actual, NAME, DESCRIPTION), "actual.xml", 10);
+        marshaller.writeHeader(1);
+        for (int i = 0; i < documents.size(); i++) {
+            marshaller.writeEntry(documents.get(i));
+            if (i % 1000 == 0) Assertions.assertThrows(NullPointerException.class, () -> marshaller.writeEntry(broken));
+        }
+        marshaller.writeFooter(documents.size());
+        Assertions.assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+
+    /**
+     * Not an assertion, prints the entries per second written by both approaches. Excluded from the build, see the
+     * surefire.excludedGroups property of the pom
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark() throws Exception {
+        List<IndexDocument> documents = documents(100_000);
+        for (int round = 0; round < 3; round++) {
+            File legacy = dir.resolve("legacy.xml").toFile();
+            long start = System.nanoTime();
+            writeLegacy(legacy, documents);
+            long legacyTime = System.nanoTime() - start;
+
+            File streaming = dir.resolve("streaming.xml").toFile();
+            start = System.nanoTime();
+            write(new Marshaller(streaming, NAME, DESCRIPTION), documents);
+            long streamingTime = System.nanoTime() - start;
+
+            File gz = dir.resolve("streaming.xml.gz").toFile();
+            start = System.nanoTime();
+            write(new Marshaller(gz, NAME, DESCRIPTION), documents);
+            long gzTime = System.nanoTime() - start;
+
+            System.out.printf("Round %d: concatenation %.0f entries/s, streaming %.0f entries/s, streaming gzip %.0f entries/s%n", round,
+                    perSecond(documents.size(), legacyTime), perSecond(documents.size(), streamingTime), perSecond(documents.size(), gzTime));
+        }
+    }
+
+    private static double perSecond(int entries, long nanos) {
+        return entries / (nanos / 1e9);
+    }
+
+    private static void write(Marshaller marshaller, List<IndexDocument> documents) throws IndexerException {
+        marshaller.writeHeader(1);
+        for (IndexDocument document : documents) marshaller.writeEntry(document);
+        marshaller.writeFooter(documents.size());
+    }
+
+    private static List<IndexDocument> documents(int n) {
+        Random random = new Random(42);
+        List<IndexDocument> documents = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            IndexDocument document = new IndexDocument();
+            document.setDbId(String.valueOf(1000000 + i));
+            document.setStId("R-HSA-" + (1000000 + i));
+            document.setName("Protein kinase <" + i + "> binds ATP & Mg2+ in \"cytosol\" '\u00e9'");
+            if (i % 3 == 0) document.setSummation("<p>This <b>reaction</b> binds things & " + random.nextInt() + "</p>");
+            document.setType(i % 2 == 0 ? "Protein" : "Reaction");
+            document.setDatabaseName("UniProt (reviewed)");
+            document.setReferenceIdentifiers(List.of("P" + i, "UniProt:P" + i));
+            document.setTaxId(List.of("9606"));
+            document.setSpecies(List.of("Homo sapiens"));
+            document.setSynonyms(List.of("syn-" + i, "alt <" + i + ">"));
+            document.setKeywords(List.of("binds"));
+            document.setCovidRelated(i % 10 == 0);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * The previous implementation, string concatenation into a BufferedWriter, for the fields set above
+     */
+    private static void writeLegacy(File file, List<IndexDocument> documents) throws IOException {
+        String indent = "  ";
+        String i = indent + indent;
+        String ii = i + indent;
+        String iii = ii + indent;
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + "\n");
+            writer.write("<database>" + "\n");
+            writer.write(indent + "<name>" + NAME + "</name>" + "\n");
+            writer.write(indent + "<description>" + DESCRIPTION + "</description>" + "\n");
+            writer.write(indent + "<release>" + 1 + "</release>" + "\n");
+            writer.write(indent + "<release_date>" + new SimpleDateFormat("yyyy/MM/dd").format(new Date()) + "</release_date>" + "\n");
+            writer.write(indent + "<entries>" + "\n");
+            for (IndexDocument document : documents) {
+                writer.write(i + "<entry id=\"" + document.getDbId() + "\">" + "\n");
+                writer.write(ii + "<name>" + StringEscapeUtils.escapeXml11(document.getName()) + "</name>" + "\n");
+                if (document.getSummation() != null) {
+                    String noHTMLString = document.getSummation().replaceAll("<.*?>", "");
+                    writer.write(ii + "<description>" + StringEscapeUtils.escapeXml11(noHTMLString) + "</description>" + "\n");
+                }
+                writer.write(ii + "<cross_references>" + "\n");
+                if (document.getReferenceIdentifiers() != null) {
+                    writeRef(writer, document.getDatabaseName(), document.getReferenceIdentifiers().get(0), iii);
+                }
+                if (document.getTaxId() != null) {
+                    for (String taxId : document.getTaxId()) writeRef(writer, "TAXONOMY", taxId, iii);
+                }
+                writer.write(ii + "</cross_references>" + "\n");
+                writer.write(ii + "<additional_fields>" + "\n");
+                if (document.getSpecies() != null) {
+                    for (String species : document.getSpecies()) writeField(writer, "species", species, iii);
+                }
+                writeField(writer, "type", document.getType(), iii);
+                if (document.getStId() != null) writeField(writer, "stId", document.getStId(), iii);
+                if (document.getSynonyms() != null) {
+                    for (String synonym : document.getSynonyms()) writeField(writer, "synonym", synonym, iii);
+                }
+                if (document.getKeywords() != null) {
+                    for (String keyword : document.getKeywords()) writeField(writer, "keyword", keyword, iii);
+                }
+                if (document.isCovidRelated()) writeField(writer, "covid19", "true", iii);
+                writer.write(ii + "</additional_fields>" + "\n");
+                writer.write(i + "</entry>" + "\n");
+            }
+            writer.write(indent + "</entries>" + "\n");
+            writer.write(indent + "<entry_count>" + documents.size() + "</entry_count>" + "\n");
+            writer.write("</database>" + "\n");
+        }
+    }
+
+    private static void writeRef(Writer writer, String db, String id, String indent) throws IOException {
+        db = db.trim().replaceAll("\\s*\\(.+\\)\\s*", "");
+        db = db.replaceAll("(/|\\s)", "_");
+        writer.write(indent + "<ref dbname=\"" + db + "\" dbkey=\"" + StringEscapeUtils.escapeXml11(id) + "\" />" + "\n");
+    }
+
+    private static void writeField(Writer writer, String name, String text, String indent) throws IOException {
+        if (text != null) {
+            writer.write(indent + "<field name=\"" + name + "\">" + StringEscapeUtils.escapeXml11(text) + "</field>" + "\n");
+        }
+    }
+}
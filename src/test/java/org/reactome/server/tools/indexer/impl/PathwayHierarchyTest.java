@@ -0,0 +1,66 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.BaseTest;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.graph.service.PathwaysService;
+import org.reactome.server.graph.service.SchemaService;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+class PathwayHierarchyTest extends BaseTest {
+
+    @Autowired
+    PathwayHierarchy pathwayHierarchy;
+
+    @Autowired
+    PathwaysService pathwaysService;
+
+    @Autowired
+    SchemaService schemaService;
+
+    @Test
+    void lowerLevelPathwaysMatchService() {
+        // Marker, drug, protein, complex, reference entity and pathway
+        for (Long dbId : List.of(6809649L, 9649889L, 199420L, 5672950L, 55448L, 109581L)) {
+            assertSameLowerLevelPathways(dbId);
+        }
+    }
+
+    /**
+     * Scans the whole database, excluded from the build, see the surefire.excludedGroups property of the pom
+     */
+    @Test
+    @Tag("integration")
+    void reactionsMatchService() {
+        for (Long dbId : schemaService.getDbIdsByClass(ReactionLikeEvent.class)) {
+            assertSameLowerLevelPathways(dbId);
+        }
+    }
+
+    /**
+     * Scans the whole database (encapsulated pathways included), excluded from the build as the one above
+     */
+    @Test
+    @Tag("integration")
+    void pathwaysMatchService() {
+        for (Long dbId : schemaService.getDbIdsByClass(Pathway.class)) {
+            assertSameLowerLevelPathways(dbId);
+        }
+    }
+
+    private void assertSameLowerLevelPathways(Long dbId) {
+        Collection<Pathway> pathways = pathwaysService.getLowerLevelPathwaysIncludingEncapsulation(dbId);
+        List<String> expected = pathways == null ? Collections.emptyList() : pathways.stream().map(DatabaseObject::getStId).collect(Collectors.toList());
+        Assertions.assertEquals(expected, pathwayHierarchy.getLowerLevelPathways(dbId), "llps of " + dbId);
+    }
+}
@@ -0,0 +1,54 @@
+package org.reactome.server.tools.indexer.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.BaseTest;
+import org.reactome.server.graph.domain.result.PersonAuthorReviewer;
+import org.reactome.server.graph.service.PersonService;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.model.PersonRow;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares a sample of the streamed people with the ones of the graph service
+ */
+class PersonExtractorTest extends BaseTest {
+
+    @Autowired
+    PersonExtractor personExtractor;
+
+    @Autowired
+    PersonDocumentBuilder personDocumentBuilder;
+
+    @Autowired
+    PersonService personService;
+
+    @Test
+    void peopleMatchService() {
+        List<PersonRow> rows;
+        try (Stream<PersonRow> people = personExtractor.stream()) {
+            rows = people.limit(50).collect(Collectors.toList());
+        }
+        Assertions.assertFalse(rows.isEmpty());
+
+        Map<Long, PersonAuthorReviewer> expected = personService.getAuthorsReviewers().stream()
+                .collect(Collectors.toMap(par -> par.getPerson().getDbId(), par -> par));
+        for (PersonRow row : rows) {
+            Long dbId = row.getDbId();
+            PersonAuthorReviewer par = expected.get(dbId);
+            Assertions.assertNotNull(par, "person " + dbId);
+
+            IndexDocument document = personDocumentBuilder.createPersonSolrDocument(row);
+            Assertions.assertEquals(par.getAuthoredPathways(), document.getAuthoredPathways(), "authored pathways of " + dbId);
+            Assertions.assertEquals(par.getAuthoredReactions(), document.getAuthoredReactions(), "authored reactions of " + dbId);
+            Assertions.assertEquals(par.getReviewedPathways(), document.getReviewedPathways(), "reviewed pathways of " + dbId);
+            Assertions.assertEquals(par.getReviewedReactions(), document.getReviewedReactions(), "reviewed reactions of " + dbId);
+            Assertions.assertEquals(par.getPerson().getOrcidId(), document.getOrcidId(), "orcid of " + dbId);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs against a local SolrCloud, e.g. mvn test -Dsolr.url=http://localhost:8983/solr/
+ * Skipped when solr.url is not given.
+ */
+class BlueGreenDeploymentTest {
+
+    private static final String ALIAS = "bluegreen_test";
+    private static SolrClient solrClient;
+    // Collection names have a precision of seconds, every deployment is one second later than the previous one
+    private static final AtomicLong seconds = new AtomicLong();
+
+    @BeforeAll
+    static void setUp() {
+        String url = System.getProperty("solr.url");
+        Assumptions.assumeTrue(url != null, "solr.url not given");
+        solrClient = SolrUtility.getSolrClient(System.getProperty("solr.user"), System.getProperty("solr.password"), url);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (solrClient == null) return;
+        CollectionAdminRequest.deleteAlias(ALIAS).process(solrClient);
+        for (String collection : CollectionAdminRequest.listCollections(solrClient)) {
+            if (collection.startsWith(ALIAS + "_")) CollectionAdminRequest.deleteCollection(collection).process(solrClient);
+        }
+        solrClient.close();
+    }
+
+    @Test
+    void swapAndRetire() throws Exception {
+        String first = build(10);
+        BlueGreenDeployment deployment = deployment();
+        String second = deployment.createCollection();
+        addDocuments(second, 10);
+        deployment.validate();
+        Assertions.assertEquals(first, deployment.swap());
+        Assertions.assertEquals(second, deployment.getCurrentCollection());
+
+        deployment.retire(first);
+        Assertions.assertFalse(CollectionAdminRequest.listCollections(solrClient).contains(first));
+    }
+
+    @Test
+    void incompleteCollectionIsNotSwapped() throws Exception {
+        String current = build(10);
+        BlueGreenDeployment deployment = deployment();
+        String incomplete = deployment.createCollection();
+        addDocuments(incomplete, 2);
+        Assertions.assertThrows(Exception.class, deployment::validate);
+        Assertions.assertEquals(current, deployment.getCurrentCollection());
+        Assertions.assertFalse(CollectionAdminRequest.listCollections(solrClient).contains(incomplete));
+    }
+
+    @Test
+    void collectionNeverSwappedIsDiscarded() throws Exception {
+        String current = build(10);
+        BlueGreenDeployment deployment = deployment();
+        String abandoned = deployment.createCollection();
+        deployment.discard();
+        Assertions.assertFalse(CollectionAdminRequest.listCollections(solrClient).contains(abandoned));
+
+        // Once behind the alias, it is never deleted
+        BlueGreenDeployment swapped = deployment();
+        String live = swapped.createCollection();
+        addDocuments(live, 10);
+        swapped.validate();
+        Assertions.assertEquals(current, swapped.swap());
+        swapped.discard();
+        Assertions.assertTrue(CollectionAdminRequest.listCollections(solrClient).contains(live));
+    }
+
+    private String build(int documents) throws Exception {
+        BlueGreenDeployment deployment = deployment();
+        String collection = deployment.createCollection();
+        addDocuments(collection, documents);
+        deployment.validate();
+        deployment.swap();
+        return collection;
+    }
+
+    private BlueGreenDeployment deployment() {
+        BlueGreenDeployment deployment = new BlueGreenDeployment(solrClient, ALIAS, "_default", 0);
+        deployment.setClock(Clock.offset(Clock.systemDefaultZone(), Duration.ofSeconds(seconds.incrementAndGet())));
+        deployment.setWarmUpQueries(List.of("*:*", "id:doc0"));
+        return deployment;
+    }
+
+    private void addDocuments(String collection, int documents) throws Exception {
+        for (int i = 0; i < documents; i++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.addField("id", "doc" + i);
+            solrClient.add(collection, document);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactome.server.tools.indexer.model.CrossReference;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+class DocumentFingerprintsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sameDocumentSameFingerprint() throws Exception {
+        Path file = dir.resolve("fingerprints.gz");
+        DocumentFingerprints first = DocumentFingerprints.load(file);
+        Assertions.assertTrue(first.update("199420", content(document())));
+        first.save();
+
+        // As the next run would build it, with new CrossReference instances
+        DocumentFingerprints second = DocumentFingerprints.load(file);
+        Assertions.assertFalse(second.update("199420", content(document())));
+
+        IndexDocument changed = document();
+        changed.setName("PTEN [nucleoplasm]");
+        Assertions.assertTrue(second.update("199420", content(changed)));
+    }
+
+    @Test
+    void rejectedDocumentsAreSentAgain() throws Exception {
+        Path file = dir.resolve("fingerprints.gz");
+        DocumentFingerprints first = DocumentFingerprints.load(file);
+        first.update("199420", content(document()));
+        first.update("1", "a");
+        first.save();
+
+        IndexDocument changed = document();
+        changed.setName("PTEN [nucleoplasm]");
+        DocumentFingerprints second = DocumentFingerprints.load(file);
+        Assertions.assertTrue(second.update("199420", content(changed)));
+        Assertions.assertTrue(second.update("2", "b"));
+        Assertions.assertFalse(second.update("1", "a"));
+        second.reject("199420");
+        second.reject("2");
+        Assertions.assertTrue(second.getRemoved().isEmpty());
+        second.save();
+
+        // SolR still has the previous version of the first one and nothing of the new one
+        DocumentFingerprints third = DocumentFingerprints.load(file);
+        Assertions.assertTrue(third.update("199420", content(changed)));
+        Assertions.assertTrue(third.update("2", "b"));
+        Assertions.assertFalse(third.update("1", "a"));
+    }
+
+    @Test
+    void contentDoesNotDependOnTheFieldOrder() {
+        SolrInputDocument a = new SolrInputDocument();
+        a.setField("dbId", "1");
+        a.setField("name", "A");
+        a.setField("fireworksSpecies", new LinkedHashSet<>(List.of("Homo sapiens", "Mus musculus")));
+        SolrInputDocument b = new SolrInputDocument();
+        b.setField("fireworksSpecies", new LinkedHashSet<>(List.of("Mus musculus", "Homo sapiens")));
+        b.setField("name", "A");
+        b.setField("dbId", "1");
+        Assertions.assertEquals(DocumentFingerprints.getContent(a), DocumentFingerprints.getContent(b));
+
+        // The order of a list is kept by Solr, hence part of the content
+        a.setField("synonyms", List.of("x", "y"));
+        b.setField("synonyms", List.of("y", "x"));
+        Assertions.assertNotEquals(DocumentFingerprints.getContent(a), DocumentFingerprints.getContent(b));
+    }
+
+    private static String content(IndexDocument document) {
+        return DocumentFingerprints.getContent(SolrDocumentBinder.toSolrInputDocument(document));
+    }
+
+    private static IndexDocument document() {
+        IndexDocument document = new IndexDocument();
+        document.setDbId("199420");
+        document.setStId("R-HSA-199420");
+        document.setName("PTEN [cytosol]");
+        document.setSpecies(List.of("Homo sapiens"));
+        document.setCrossReferences(List.of("UniProt:P60484", "P60484"));
+        CrossReference crossReference = new CrossReference();
+        crossReference.setDbName("UniProt");
+        crossReference.setId("P60484");
+        document.setAllCrossReferences(List.of(crossReference));
+        return document;
+    }
+}
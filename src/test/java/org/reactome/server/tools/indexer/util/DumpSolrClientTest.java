@@ -0,0 +1,105 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class DumpSolrClientTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadsWhatWasDumpedInTheSameOrder() throws Exception {
+        try (DumpSolrClient dump = new DumpSolrClient(dir, 1000, false)) {
+            dump.deleteByQuery("reactome", "*:*");
+            dump.commit("reactome");
+            for (int i = 0; i < 2500; i += 500) dump.add("reactome", documents(i, 500));
+            dump.deleteById("reactome", List.of("3", "4"));
+            dump.add("target", documents(0, 10));
+            Assertions.assertThrows(SolrServerException.class, () -> dump.query("reactome", new SolrQuery("*:*")));
+        }
+        Assertions.assertEquals(3, DumpSolrClient.getChunks(dir.resolve("reactome")).size());
+        Assertions.assertEquals(List.of("reactome", "target"), DumpLoader.getCollections(dir));
+        Assertions.assertThrows(IOException.class, () -> new DumpSolrClient(dir, 1000, false));
+
+        RecordingSolrClient solr = new RecordingSolrClient();
+        DumpLoader loader = new DumpLoader(solr, new SolrBatchSender(null), 1000);
+        Assertions.assertEquals(2500, loader.load(dir, "reactome", "reactome_test"));
+
+        List<String> expected = new ArrayList<>();
+        expected.add("delete *:*");
+        expected.add("add 1000");
+        expected.add("add 1000");
+        expected.add("add 500");
+        expected.add("delete [3, 4]");
+        expected.add("commit");
+        Assertions.assertEquals(expected, solr.updates);
+        Assertions.assertEquals("7", solr.documents.get(7).getFieldValue("dbId"));
+        Assertions.assertEquals(List.of("a", "b"), new ArrayList<>(solr.documents.get(7).getFieldValues("synonyms")));
+        Assertions.assertEquals(Boolean.TRUE, solr.documents.get(7).getFieldValue("isDisease"));
+    }
+
+    @Test
+    void readsTruncatedChunks() throws Exception {
+        DumpSolrClient dump = new DumpSolrClient(dir.resolve("dump"), 1000, false);
+        dump.add("reactome", documents(0, 100));
+        dump.add("reactome", documents(100, 100));
+        // The run dies without closing, the chunk has no gzip trailer
+        Path chunk = DumpSolrClient.getChunks(dump.getDir()).get(0);
+        Path truncated = Files.createDirectories(dir.resolve("truncated").resolve("reactome"));
+        Files.write(truncated.resolve(chunk.getFileName()), Files.readAllBytes(chunk));
+        dump.close();
+
+        RecordingSolrClient solr = new RecordingSolrClient();
+        Assertions.assertEquals(200, new DumpLoader(solr, new SolrBatchSender(null), 1000).load(truncated.getParent(), "reactome", "reactome"));
+    }
+
+    private static List<SolrInputDocument> documents(int from, int n) {
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for (int i = from; i < from + n; i++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.setField("dbId", String.valueOf(i));
+            document.setField("name", "Document \"" + i + "\"");
+            document.setField("synonyms", List.of("a", "b"));
+            document.setField("isDisease", i % 2 == 1);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private static class RecordingSolrClient extends SolrClient {
+        private final List<String> updates = new ArrayList<>();
+        private final List<SolrInputDocument> documents = new ArrayList<>();
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) {
+            UpdateRequest update = (UpdateRequest) request;
+            if (update.getDocuments() != null) {
+                updates.add("add " + update.getDocuments().size());
+                documents.addAll(update.getDocuments());
+            }
+            if (update.getDeleteQuery() != null) update.getDeleteQuery().forEach(q -> updates.add("delete " + q));
+            if (update.getDeleteById() != null) updates.add("delete " + update.getDeleteById());
+            if (update.getAction() == UpdateRequest.ACTION.COMMIT) updates.add("commit");
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class KeywordTaggerTest {
+
+    @Test
+    void keywordsAreReturnedInVocabularyOrder() {
+        KeywordTagger tagger = new KeywordTagger(List.of("transports", "binds", "phosphorylates"));
+        Assertions.assertEquals(List.of("transports", "binds"), tagger.tag("ABC1 binds ATP and transports it"));
+    }
+
+    @Test
+    void overlappingKeywordsAreAllFound() {
+        List<String> vocabulary = List.of("he", "she", "hers", "his");
+        KeywordTagger tagger = new KeywordTagger(vocabulary);
+        Assertions.assertEquals(List.of("he", "she", "hers"), tagger.tag("uSHErs"));
+    }
+
+    @Test
+    void sameAsContainsOnTheControlledVocabulary() {
+        List<String> vocabulary = List.of("activates", "binds", "base pairs", "cleaves", "co-transports", "transports", "dimerises");
+        KeywordTagger tagger = new KeywordTagger(vocabulary);
+        for (String name : List.of("", "Dimerises", "Complex co-transports and binds", "Base pairs cleaves activates", "nothing here")) {
+            List<String> expected = vocabulary.stream().filter(k -> name.toLowerCase().contains(k.toLowerCase())).collect(Collectors.toList());
+            Assertions.assertEquals(expected, tagger.tag(name), name);
+        }
+    }
+
+    @Test
+    void emptyVocabulary() {
+        Assertions.assertEquals(Collections.emptyList(), new KeywordTagger(Collections.emptyList()).tag("binds"));
+    }
+}
@@ -0,0 +1,74 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class Neo4jCachePolicyTest {
+
+    @Test
+    void fixedClearsEveryGivenDocuments() {
+        Neo4jCachePolicy policy = Neo4jCachePolicy.parse("fixed:100");
+        int clears = 0;
+        for (int i = 0; i < 1000; i++) if (policy.afterDocument()) clears++;
+        Assertions.assertEquals(10, clears);
+        Assertions.assertTrue(policy.afterStage());
+        Assertions.assertEquals(11, policy.getClears());
+    }
+
+    @Test
+    void heapClearsOnlyUnderPressure() {
+        try (Neo4jCachePolicy.HeapPressure policy = (Neo4jCachePolicy.HeapPressure) Neo4jCachePolicy.parse(Neo4jCachePolicy.DEFAULT)) {
+            for (long i = 0; i < Neo4jCachePolicy.HeapPressure.MIN_DOCUMENTS; i++) policy.afterDocument();
+            Assertions.assertFalse(policy.afterStage());
+
+            // Once per collection leaving the heap above the threshold
+            policy.signal();
+            Assertions.assertTrue(policy.afterDocument());
+            Assertions.assertFalse(policy.afterDocument());
+            policy.signal();
+            Assertions.assertTrue(policy.afterStage());
+            Assertions.assertFalse(policy.afterStage());
+            Assertions.assertEquals(2, policy.getClears());
+        }
+    }
+
+    @Test
+    void closeRestoresTheHeapPools() {
+        Map<String, Long> thresholds = getCollectionUsageThresholds();
+        Neo4jCachePolicy.HeapPressure policy = (Neo4jCachePolicy.HeapPressure) Neo4jCachePolicy.parse("heap:50");
+        policy.close();
+        Assertions.assertFalse(policy.isListening());
+        Assertions.assertEquals(thresholds, getCollectionUsageThresholds());
+        // Closing twice is harmless
+        policy.close();
+    }
+
+    @Test
+    void defaultOfTheIndexersHasNoSideEffect() {
+        Map<String, Long> thresholds = getCollectionUsageThresholds();
+        Neo4jCachePolicy policy = Neo4jCachePolicy.fixed();
+        Assertions.assertEquals(thresholds, getCollectionUsageThresholds());
+        int clears = 0;
+        for (long i = 0; i < Neo4jCachePolicy.FALLBACK_INTERVAL; i++) if (policy.afterDocument()) clears++;
+        Assertions.assertEquals(1, clears);
+    }
+
+    private static Map<String, Long> getCollectionUsageThresholds() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(MemoryPoolMXBean::isCollectionUsageThresholdSupported)
+                .collect(Collectors.toMap(MemoryPoolMXBean::getName, MemoryPoolMXBean::getCollectionUsageThreshold));
+    }
+
+    @Test
+    void rejectsInvalidSpecifications() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Neo4jCachePolicy.parse("heap"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Neo4jCachePolicy.parse("heap:100"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Neo4jCachePolicy.parse("fixed:0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Neo4jCachePolicy.parse("always"));
+    }
+}
@@ -0,0 +1,125 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+class OfflineSolrClientTest {
+
+    private static final String COLLECTION = "reactome";
+
+    @TempDir
+    Path dir;
+
+    private Path conf;
+    private Path output;
+
+    @BeforeEach
+    void copyConfiguration() throws IOException {
+        conf = dir.resolve("conf");
+        output = dir.resolve("output");
+        Files.createDirectories(conf);
+        try (Stream<Path> files = Files.list(Paths.get("solr-conf", COLLECTION))) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.copy(file, conf.resolve(file.getFileName()));
+        }
+    }
+
+    @Test
+    void buildsAndMergesThePartitions() throws Exception {
+        try (OfflineSolrClient client = new OfflineSolrClient(conf, output, COLLECTION, 3)) {
+            client.add(COLLECTION, documents(0, 300));
+            client.deleteById(COLLECTION, List.of("10", "20", "30"));
+            client.commit(COLLECTION);
+
+            // Every partition gets its share and the deletes reach the partition of each id
+            long[] sizes = client.getPartitionSizes();
+            Assertions.assertEquals(297, Arrays.stream(sizes).sum());
+            for (long size : sizes) Assertions.assertTrue(size > 0, Arrays.toString(sizes));
+
+            Assertions.assertThrows(SolrServerException.class, () -> client.query(COLLECTION, new SolrQuery("*:*")));
+            Assertions.assertThrows(SolrServerException.class, () -> client.add("target", documents(0, 1)));
+
+            Assertions.assertEquals(output.resolve(COLLECTION), client.merge());
+            Assertions.assertThrows(IndexerException.class, client::merge);
+            Assertions.assertFalse(Files.exists(output.resolve("partitions").resolve(COLLECTION + "_0")));
+        }
+
+        // The merged core is served on its own, with the documents of all the partitions
+        try (EmbeddedSolrServer server = new EmbeddedSolrServer(CoreContainer.createAndLoad(output), COLLECTION)) {
+            QueryResponse response = server.query(new SolrQuery("*:*").setRows(0));
+            Assertions.assertEquals(297, response.getResults().getNumFound());
+            Assertions.assertEquals(1, server.query(new SolrQuery("dbId:299")).getResults().getNumFound());
+            Assertions.assertEquals(0, server.query(new SolrQuery("dbId:20")).getResults().getNumFound());
+        }
+        Assertions.assertThrows(IOException.class, () -> new OfflineSolrClient(conf, output, COLLECTION, 3));
+    }
+
+    @Test
+    void rejectedDocumentsAreReportedAsByARemoteSolr() throws Exception {
+        try (OfflineSolrClient client = new OfflineSolrClient(conf, output, COLLECTION, 2)) {
+            SolrInputDocument withoutName = new SolrInputDocument();
+            withoutName.setField("dbId", "1");
+            withoutName.setField("type", "Protein");
+            withoutName.setField("exactType", "Protein");
+            BaseHttpSolrClient.RemoteSolrException e = Assertions.assertThrows(BaseHttpSolrClient.RemoteSolrException.class,
+                    () -> client.add(COLLECTION, List.of(withoutName)));
+            Assertions.assertEquals(400, e.code());
+
+            // So the batch sender isolates it as with a remote SolR
+            List<SolrInputDocument> batch = documents(0, 10);
+            batch.add(withoutName);
+            Assertions.assertEquals(1, new SolrBatchSender(null, 0, 1).send(client, COLLECTION, batch, -1));
+            Assertions.assertEquals(10, Arrays.stream(client.getPartitionSizes()).sum());
+        }
+    }
+
+    @Test
+    void failedMergeCanBeRetried() throws Exception {
+        try (OfflineSolrClient client = new OfflineSolrClient(conf, output, COLLECTION, 2)) {
+            client.add(COLLECTION, documents(0, 50));
+
+            // The merged core cannot be created without a schema
+            Path schema = Files.move(conf.resolve("schema.xml"), dir.resolve("schema.xml"));
+            Assertions.assertThrows(IndexerException.class, client::merge);
+            Assertions.assertFalse(Files.exists(output.resolve(COLLECTION)));
+
+            Files.move(schema, conf.resolve("schema.xml"));
+            client.merge();
+        }
+        try (EmbeddedSolrServer server = new EmbeddedSolrServer(CoreContainer.createAndLoad(output), COLLECTION)) {
+            Assertions.assertEquals(50, server.query(new SolrQuery("*:*").setRows(0)).getResults().getNumFound());
+        }
+    }
+
+    private static List<SolrInputDocument> documents(int from, int count) {
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.setField("dbId", String.valueOf(i));
+            document.setField("stId", "R-HSA-" + i);
+            document.setField("name", "Entity " + i);
+            document.setField("type", "Protein");
+            document.setField("exactType", "Protein");
+            documents.add(document);
+        }
+        return documents;
+    }
+}
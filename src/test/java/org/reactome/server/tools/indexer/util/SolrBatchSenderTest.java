@@ -0,0 +1,122 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+class SolrBatchSenderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void bisectsToTheRejectedDocuments() throws Exception {
+        FakeSolrClient solrClient = new FakeSolrClient(0);
+        List<SolrInputDocument> documents = documents(1000, Set.of(17, 640));
+        Path file = dir.resolve("dead.ndjson");
+        List<Object> onRejected = new ArrayList<>();
+        SolrBatchSender sender;
+        try (DeadLetterFile deadLetterFile = new DeadLetterFile(file)) {
+            sender = new SolrBatchSender(deadLetterFile, 3, 1);
+            Assertions.assertEquals(2, sender.send(solrClient, "reactome", documents, -1, document -> onRejected.add(document.getFieldValue("dbId"))));
+        }
+        Assertions.assertEquals(998, solrClient.added.size());
+        Assertions.assertEquals(List.of("17", "640"), onRejected);
+        // Two bad documents in 1000, each one costs at most two requests per level of the split
+        Assertions.assertTrue(solrClient.requests <= 1 + 2 * 2 * 10, "Too many requests: " + solrClient.requests);
+
+        Assertions.assertEquals(2, Files.readAllLines(file).size());
+        List<SolrInputDocument> rejected = DeadLetterFile.read(file).get("reactome");
+        Assertions.assertEquals(List.of("17", "640"), List.of(rejected.get(0).getFieldValue("dbId"), rejected.get(1).getFieldValue("dbId")));
+        Assertions.assertEquals(List.of("a", "b"), new ArrayList<>(rejected.get(0).getFieldValues("synonyms")));
+    }
+
+    @Test
+    void retriesTransientErrors() {
+        FakeSolrClient solrClient = new FakeSolrClient(2);
+        SolrBatchSender sender = new SolrBatchSender(null, 3, 1);
+        Assertions.assertEquals(0, sender.send(solrClient, "reactome", documents(10, Set.of()), -1));
+        Assertions.assertEquals(3, solrClient.requests);
+        Assertions.assertEquals(10, solrClient.added.size());
+    }
+
+    @Test
+    void givesUpWithoutSplittingWhenSolrIsDown() {
+        FakeSolrClient solrClient = new FakeSolrClient(Integer.MAX_VALUE);
+        SolrBatchSender sender = new SolrBatchSender(null, 2, 1);
+        Assertions.assertEquals(10, sender.send(solrClient, "reactome", documents(10, Set.of()), -1));
+        Assertions.assertEquals(3, solrClient.requests);
+    }
+
+    @Test
+    void bisectsDocumentsFailingWithServerErrors() {
+        // Analysis or field conversion errors come back as a 500
+        FakeSolrClient solrClient = new FakeSolrClient(0, 500);
+        SolrBatchSender sender = new SolrBatchSender(null, 1, 1);
+        Assertions.assertEquals(1, sender.send(solrClient, "reactome", documents(100, Set.of(42)), -1));
+        Assertions.assertEquals(99, solrClient.added.size());
+    }
+
+        private static List<SolrInputDocument> documents(int n, Set<Integer> bad) {
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.setField("dbId", String.valueOf(i));
+            document.setField("synonyms", List.of("a", "b"));
+            if (bad.contains(i)) document.setField("bad", true);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * Rejects (400 by default) any batch containing a document with a "bad" field, after failing (503) the first
+     * requests
+     */
+    private static class FakeSolrClient extends SolrClient {
+        private int unavailable;
+        private final int badCode;
+        private int requests = 0;
+        private final List<SolrInputDocument> added = new ArrayList<>();
+
+        FakeSolrClient(int unavailable) {
+            this(unavailable, 400);
+        }
+
+        FakeSolrClient(int unavailable, int badCode) {
+            this.unavailable = unavailable;
+            this.badCode = badCode;
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) {
+            requests++;
+            if (unavailable > 0) {
+                unavailable--;
+                throw new BaseHttpSolrClient.RemoteSolrException("localhost", 503, "Service unavailable", null);
+            }
+            Collection<SolrInputDocument> documents = ((UpdateRequest) request).getDocuments();
+            for (SolrInputDocument document : documents) {
+                if (document.containsKey("bad")) {
+                    throw new BaseHttpSolrClient.RemoteSolrException("localhost", badCode, "Bad document " + document.getFieldValue("dbId"), null);
+                }
+            }
+            added.addAll(documents);
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
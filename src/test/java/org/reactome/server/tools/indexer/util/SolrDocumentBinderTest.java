@@ -0,0 +1,112 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.beans.Field;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.indexer.deleted.model.DeletedDocument;
+import org.reactome.server.tools.indexer.icon.model.IconDocument;
+import org.reactome.server.tools.indexer.model.IndexDocument;
+import org.reactome.server.tools.indexer.target.model.Target;
+
+import java.util.*;
+import java.util.function.Function;
+
+class SolrDocumentBinderTest {
+
+    private final DocumentObjectBinder binder = new DocumentObjectBinder();
+
+    @Test
+    void indexDocumentSameAsReflective() throws Exception {
+        IndexDocument document = fill(new IndexDocument());
+        assertSame(binder.toSolrInputDocument(document), SolrDocumentBinder.toSolrInputDocument(document));
+        IndexDocument sparse = new IndexDocument();
+        sparse.setDbId("1");
+        sparse.setName("sparse");
+        sparse.setSynonyms(new ArrayList<>());
+        assertSame(binder.toSolrInputDocument(sparse), SolrDocumentBinder.toSolrInputDocument(sparse));
+    }
+
+    @Test
+    void iconDocumentSameAsReflective() throws Exception {
+        IconDocument document = fill(new IconDocument());
+        assertSame(binder.toSolrInputDocument(document), SolrDocumentBinder.toSolrInputDocument(document));
+    }
+
+    @Test
+    void deletedDocumentSameAsReflective() throws Exception {
+        DeletedDocument document = fill(DeletedDocument.builder().build());
+        assertSame(binder.toSolrInputDocument(document), SolrDocumentBinder.toSolrInputDocument(document));
+    }
+
+    @Test
+    void targetSameAsReflective() throws Exception {
+        Target target = fill(new Target("UniProt"));
+        assertSame(binder.toSolrInputDocument(target), SolrDocumentBinder.toSolrInputDocument(target));
+    }
+
+    /**
+     * Not an assertion, prints the documents per second converted by both approaches. Excluded from the build, see the
+     * surefire.excludedGroups property of the pom
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmark() throws Exception {
+        List<IndexDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) documents.add(fill(new IndexDocument()));
+        for (int round = 0; round < 5; round++) {
+            double reflective = perSecond(documents, binder::toSolrInputDocument);
+            double direct = perSecond(documents, SolrDocumentBinder::toSolrInputDocument);
+            System.out.printf("Round %d: DocumentObjectBinder %.0f documents/s, SolrDocumentBinder %.0f documents/s%n", round, reflective, direct);
+        }
+    }
+
+    private static double perSecond(List<IndexDocument> documents, Function<IndexDocument, SolrInputDocument> convert) {
+        long start = System.nanoTime();
+        int fields = 0;
+        for (IndexDocument document : documents) fields += convert.apply(document).size();
+        long time = System.nanoTime() - start;
+        Assertions.assertTrue(fields > 0);
+        return documents.size() / (time / 1e9);
+    }
+
+    /**
+     * Null and empty values are not sent by SolrDocumentBinder, SolR does not store anything for them
+     */
+    private static void assertSame(SolrInputDocument expected, SolrInputDocument actual) {
+        Map<String, Object> expectedValues = new TreeMap<>();
+        for (SolrInputField field : expected) {
+            Object value = field.getValue();
+            if (value == null || (value instanceof Collection && ((Collection<?>) value).isEmpty())) continue;
+            expectedValues.put(field.getName(), value);
+        }
+        Map<String, Object> actualValues = new TreeMap<>();
+        for (SolrInputField field : actual) actualValues.put(field.getName(), field.getValue());
+        Assertions.assertEquals(expectedValues, actualValues);
+    }
+
+    /**
+     * Sets a different value in every member annotated with @Field, so a member missing in the binder is noticed
+     */
+    private static <T> T fill(T object) throws IllegalAccessException {
+        for (Class<?> clazz = object.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (java.lang.reflect.Field field : clazz.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(Field.class)) continue;
+                field.setAccessible(true);
+                String name = field.getName();
+                Class<?> type = field.getType();
+                if (type == String.class) field.set(object, name + "-value");
+                else if (type == Boolean.class) field.set(object, Boolean.TRUE);
+                else if (type == Long.class) field.set(object, (long) name.hashCode());
+                else if (type == Integer.class) field.set(object, name.hashCode());
+                else if (type == List.class) field.set(object, new ArrayList<>(List.of(name + "-1", name + "-2")));
+                else if (type == Set.class) field.set(object, new LinkedHashSet<>(List.of(name + "-1", name + "-2")));
+                else Assertions.fail("Unexpected type " + type + " of " + name);
+            }
+        }
+        return object;
+    }
+}
@@ -0,0 +1,65 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class StageSchedulerTest {
+
+    @Test
+    void dependenciesRunInOrder() throws IndexerException {
+        List<String> done = new CopyOnWriteArrayList<>();
+        new StageScheduler()
+                .add("index", () -> done.add("index"))
+                .add("icons", () -> done.add("icons"), "index")
+                .add("iconsMapping", () -> done.add("iconsMapping"), "icons")
+                .run();
+        Assertions.assertEquals(List.of("index", "icons", "iconsMapping"), done);
+    }
+
+    @Test
+    void independentStagesRunConcurrently() throws IndexerException {
+        // Each one waits for the other, it would time out if they ran one after the other
+        CountDownLatch latch = new CountDownLatch(2);
+        StageScheduler.Stage stage = () -> {
+            latch.countDown();
+            Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        };
+        new StageScheduler().add("sitemap", stage).add("index", stage).run();
+    }
+
+    @Test
+    void failureSkipsDependentsOnly() {
+        List<String> done = new CopyOnWriteArrayList<>();
+        StageScheduler scheduler = new StageScheduler()
+                .add("index", () -> {
+                    throw new IndexerException("failed");
+                })
+                .add("deleted", () -> done.add("deleted"), "index")
+                .add("sitemap", () -> done.add("sitemap"));
+        IndexerException e = Assertions.assertThrows(IndexerException.class, scheduler::run);
+        Assertions.assertEquals("failed", e.getMessage());
+        Assertions.assertEquals(List.of("sitemap"), done);
+    }
+
+    @Test
+    void criticalPathFollowsLongestChain() throws IndexerException {
+        StageScheduler scheduler = new StageScheduler()
+                .add("index", () -> Thread.sleep(200))
+                .add("sitemap", () -> Thread.sleep(50))
+                .add("deleted", () -> Thread.sleep(50), "index")
+                .add("target", () -> {}, "index");
+        scheduler.run();
+        Assertions.assertEquals(List.of("index", "deleted"), scheduler.getCriticalPath());
+    }
+
+    @Test
+    void unknownDependencyIsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new StageScheduler().add("icons", () -> {}, "index"));
+    }
+}
@@ -0,0 +1,52 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class StringPoolTest {
+
+    @Test
+    void sharesEqualValues() {
+        StringPool pool = new StringPool("test");
+        String first = pool.get(new String("Homo sapiens"));
+        Assertions.assertSame(first, pool.get(new String("Homo sapiens")));
+        Assertions.assertNull(pool.get((String) null));
+
+        List<String> list = pool.get(new ArrayList<>(List.of(new String("Homo sapiens"))));
+        Assertions.assertSame(list, pool.get(new ArrayList<>(List.of(new String("Homo sapiens")))));
+        Assertions.assertSame(list, pool.singleton("Homo sapiens"));
+        Assertions.assertSame(first, list.get(0));
+        Assertions.assertEquals("[Homo sapiens]", list.toString());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> list.add("Mus musculus"));
+        Assertions.assertTrue(pool.getSavedBytes() > 0);
+    }
+
+    @Test
+    void keepsTheOrder() {
+        StringPool pool = new StringPool("test");
+        Set<String> set = new LinkedHashSet<>(List.of("b", "a", "c"));
+        Set<String> shared = pool.get(set);
+        Assertions.assertEquals(new ArrayList<>(set), new ArrayList<>(shared));
+        Assertions.assertEquals(set.toString(), shared.toString());
+        Assertions.assertSame(shared, pool.get(new LinkedHashSet<>(List.of("b", "a", "c"))));
+        // Same values in another order are a different set, the iteration order is part of the document
+        Assertions.assertNotSame(shared, pool.get(new LinkedHashSet<>(List.of("a", "b", "c"))));
+
+        List<String> withNull = pool.get(Arrays.asList("x", null));
+        Assertions.assertSame(withNull, pool.get(Arrays.asList("x", null)));
+    }
+
+    @Test
+    void longListsAreNotShared() {
+        StringPool pool = new StringPool("test");
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i <= StringPool.MAX_SHARED_SIZE; i++) values.add("v" + i);
+        List<String> first = pool.get(values);
+        List<String> second = pool.get(new ArrayList<>(values));
+        Assertions.assertEquals(values, first);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertSame(first.get(0), second.get(0));
+    }
+}
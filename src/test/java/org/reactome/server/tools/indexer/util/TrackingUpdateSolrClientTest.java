@@ -0,0 +1,54 @@
+package org.reactome.server.tools.indexer.util;
+
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.indexer.exception.IndexerException;
+
+import java.io.IOException;
+
+class TrackingUpdateSolrClientTest {
+
+    // Nothing listens there, every update sent in the background fails
+    private static final String UNREACHABLE = "http://127.0.0.1:1/solr";
+
+    @Test
+    void reportsTheErrorsOfTheBackgroundUpdates() throws Exception {
+        try (TrackingUpdateSolrClient solrClient = client()) {
+            solrClient.checkErrors();
+
+            SolrInputDocument document = new SolrInputDocument();
+            document.setField("dbId", "199420");
+            solrClient.add("reactome", document);
+            IndexerException e = Assertions.assertThrows(IndexerException.class, solrClient::checkErrors);
+            Assertions.assertNotNull(e.getCause());
+            Assertions.assertEquals(1, solrClient.getErrorCount());
+        }
+    }
+
+    @Test
+    void errorsAreReportedOnce() throws Exception {
+        try (TrackingUpdateSolrClient solrClient = client()) {
+            IOException first = new IOException("first");
+            solrClient.handleError(first);
+            solrClient.handleError(new IOException("second"));
+            IndexerException e = Assertions.assertThrows(IndexerException.class, solrClient::checkErrors);
+            Assertions.assertTrue(e.getMessage().startsWith("2 "), e.getMessage());
+            Assertions.assertSame(first, e.getCause());
+
+            // The next indexer sharing the client only fails for its own updates
+            solrClient.checkErrors();
+            IOException third = new IOException("third");
+            solrClient.handleError(third);
+            e = Assertions.assertThrows(IndexerException.class, solrClient::checkErrors);
+            Assertions.assertTrue(e.getMessage().startsWith("1 "), e.getMessage());
+            Assertions.assertSame(third, e.getCause());
+            Assertions.assertEquals(3, solrClient.getErrorCount());
+        }
+    }
+
+    private static TrackingUpdateSolrClient client() {
+        return new TrackingUpdateSolrClient(new ConcurrentUpdateSolrClient.Builder(UNREACHABLE).withQueueSize(10).withThreadCount(1));
+    }
+}